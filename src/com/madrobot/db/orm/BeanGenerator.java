@@ -169,37 +169,6 @@ public class BeanGenerator {
 		return bean;
 	}
 
-	private static Object[] getMethodParamter(Method method, Cursor cursor,
-			int columnIndex) {
-		// method.get
-		Class[] paramTypes = method.getParameterTypes();
-		if (paramTypes != null) {
-			if (paramTypes.length > 0) {
-				Class type = paramTypes[0];
-				if (type.equals(int.class)) {
-					// if(cursor.getType(columnIndex) ==
-					// Cursor.FIELD_TYPE_INTEGER)
-					return new Object[] { cursor.getInt(columnIndex) };
-				} else if (type.equals(String.class)) {
-					return new Object[] { cursor.getString(columnIndex) };
-				} else if (type.equals(float.class)) {
-					return new Object[] { cursor.getFloat(columnIndex) };
-				} else if (type.equals(long.class)) {
-					return new Object[] { cursor.getLong(columnIndex) };
-				} else if (type.equals(double.class)) {
-					return new Object[] { cursor.getDouble(columnIndex) };
-				} else if (type.equals(byte[].class)) {
-					return new Object[] { cursor.getBlob(columnIndex) };
-				} else if (type.equals(short.class)) {
-					return new Object[] { cursor.getShort(columnIndex) };
-				}
-
-			}
-
-		}
-		return null;
-	}
-
 	/**
 	 * ResultSet.getObject() returns an Integer object for an INT column. The
 	 * setter method for the property might take an Integer or a primitive int.
@@ -292,26 +261,6 @@ public class BeanGenerator {
 		return columnToProperty;
 	}
 
-	private static void populateBean(Object bean, Cursor cursor,
-			String[] columns, PropertyDescriptor[] propDesc)
-			throws IllegalArgumentException, IllegalAccessException,
-			InvocationTargetException {
-		for (int i = 0; i < columns.length; i++) {
-			for (int j = 0; j < propDesc.length; j++) {
-				if (columns[i].equalsIgnoreCase(propDesc[j].getName())) {
-					Method method = propDesc[j].getWriteMethod();
-					if (method != null) {
-						int columnIndex = cursor.getColumnIndex(columns[i]);
-						Object[] params = getMethodParamter(method, cursor,
-								columnIndex);
-						if (params != null)
-							method.invoke(bean, params);
-					}
-				}
-			}
-		}
-	}
-
 	/**
 	 * Convert a <code>ResultSet</code> column into an object. Simple
 	 * implementations could just call <code>rs.getObject(index)</code> while
@@ -551,10 +500,11 @@ public class BeanGenerator {
 		if (columns == null || columns.length == 0)
 			return results;
 		cursor.moveToFirst();
-		PropertyDescriptor[] propDesc = propertyDescriptors(type);
-		for (int i = 0; i < cursor.getCount(); i++) {
+		BeanRowMapper mapper = BeanRowMapper.forCursor(type, cursor);
+		int count = cursor.getCount();
+		for (int i = 0; i < count; i++) {
 			Object bean = ClassUtils.newInstance(type);
-			populateBean(bean, cursor, columns, propDesc);
+			mapper.populate(bean, cursor);
 			results.add(bean);
 			cursor.moveToNext();
 		}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import android.database.Cursor;
+
+import com.madrobot.beans.BeanInfo;
+import com.madrobot.beans.IntrospectionException;
+import com.madrobot.beans.Introspector;
+import com.madrobot.beans.PropertyDescriptor;
+
+/**
+ * Reads the rows of a cursor into beans, through their setters.
+ * <p>
+ * Columns are matched to the bean properties once per bean class and cursor
+ * columns, with the setter and the cursor getter to use, so populating a row
+ * is a loop of index based cursor reads and setter calls.
+ * </p>
+ * 
+ * @see BeanGenerator#toBeanList(Cursor, Class)
+ */
+final class BeanRowMapper {
+
+	private static final int TYPE_BLOB = 6;
+	private static final int TYPE_DOUBLE = 5;
+	private static final int TYPE_FLOAT = 3;
+	private static final int TYPE_INT = 1;
+	private static final int TYPE_LONG = 4;
+	private static final int TYPE_SHORT = 7;
+	private static final int TYPE_STRING = 2;
+
+	private static final ConcurrentMap<CursorColumnsKey, BeanRowMapper> mappers = new ConcurrentHashMap<CursorColumnsKey, BeanRowMapper>();
+
+	/**
+	 * Returns the mapper of a bean class for the columns of a cursor, building
+	 * it on first use
+	 * 
+	 * @throws IntrospectionException
+	 *             If the bean properties cannot be read
+	 */
+	static BeanRowMapper forCursor(Class<?> type, Cursor cursor)
+			throws IntrospectionException {
+		String[] columns = cursor.getColumnNames();
+		CursorColumnsKey key = new CursorColumnsKey(type, columns);
+		BeanRowMapper mapper = mappers.get(key);
+		if (mapper == null) {
+			mapper = new BeanRowMapper(type, columns, cursor);
+			BeanRowMapper existing = mappers.putIfAbsent(key, mapper);
+			if (existing != null) {
+				mapper = existing;
+			}
+		}
+		return mapper;
+	}
+
+	private static int typeOf(Class<?> type) {
+		if (type.equals(int.class)) {
+			return TYPE_INT;
+		} else if (type.equals(String.class)) {
+			return TYPE_STRING;
+		} else if (type.equals(float.class)) {
+			return TYPE_FLOAT;
+		} else if (type.equals(long.class)) {
+			return TYPE_LONG;
+		} else if (type.equals(double.class)) {
+			return TYPE_DOUBLE;
+		} else if (type.equals(byte[].class)) {
+			return TYPE_BLOB;
+		} else if (type.equals(short.class)) {
+			return TYPE_SHORT;
+		}
+		return 0;
+	}
+
+	private final int[] columns;
+	private final Method[] setters;
+	private final int[] types;
+
+	private BeanRowMapper(Class<?> type, String[] columnNames, Cursor cursor)
+			throws IntrospectionException {
+		// Introspector caches BeanInfo classes for better performance
+		BeanInfo beanInfo = Introspector.getBeanInfo(type);
+		PropertyDescriptor[] props = beanInfo.getPropertyDescriptors();
+		List<Method> setterList = new ArrayList<Method>();
+		List<Integer> columnList = new ArrayList<Integer>();
+		List<Integer> typeList = new ArrayList<Integer>();
+		for (int i = 0; i < columnNames.length; i++) {
+			for (int j = 0; j < props.length; j++) {
+				if (columnNames[i].equalsIgnoreCase(props[j].getName())) {
+					Method method = props[j].getWriteMethod();
+					if (method == null) {
+						continue;
+					}
+					Class<?>[] paramTypes = method.getParameterTypes();
+					int paramType = paramTypes.length > 0 ? typeOf(paramTypes[0])
+							: 0;
+					if (paramType != 0) {
+						setterList.add(method);
+						columnList.add(cursor.getColumnIndex(columnNames[i]));
+						typeList.add(paramType);
+					}
+				}
+			}
+		}
+		int size = setterList.size();
+		setters = setterList.toArray(new Method[size]);
+		columns = new int[size];
+		types = new int[size];
+		for (int i = 0; i < size; i++) {
+			columns[i] = columnList.get(i);
+			types[i] = typeList.get(i);
+		}
+	}
+
+	/**
+	 * Sets the properties of a bean from the current row
+	 */
+	void populate(Object bean, Cursor cursor) throws IllegalArgumentException,
+			IllegalAccessException, InvocationTargetException {
+		Object[] args = new Object[1];
+		for (int i = 0; i < setters.length; i++) {
+			int column = columns[i];
+			switch (types[i]) {
+			case TYPE_INT:
+				args[0] = cursor.getInt(column);
+				break;
+			case TYPE_STRING:
+				args[0] = cursor.getString(column);
+				break;
+			case TYPE_FLOAT:
+				args[0] = cursor.getFloat(column);
+				break;
+			case TYPE_LONG:
+				args[0] = cursor.getLong(column);
+				break;
+			case TYPE_DOUBLE:
+				args[0] = cursor.getDouble(column);
+				break;
+			case TYPE_BLOB:
+				args[0] = cursor.getBlob(column);
+				break;
+			case TYPE_SHORT:
+				args[0] = cursor.getShort(column);
+				break;
+			}
+			setters[i].invoke(bean, args);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm;
+
+import java.util.Arrays;
+
+/**
+ * Cache key of a row mapper: a class and the columns of the cursors it reads.
+ */
+final class CursorColumnsKey {
+
+	private final String[] columns;
+	private final int hash;
+	private final Class<?> type;
+
+	CursorColumnsKey(Class<?> type, String[] columns) {
+		this.type = type;
+		this.columns = columns;
+		this.hash = 31 * type.hashCode() + Arrays.hashCode(columns);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof CursorColumnsKey)) {
+			return false;
+		}
+		CursorColumnsKey other = (CursorColumnsKey) o;
+		return type == other.type && Arrays.equals(columns, other.columns);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
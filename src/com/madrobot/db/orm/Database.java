@@ -11,6 +11,7 @@
 package com.madrobot.db.orm;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,7 +19,10 @@ import java.util.Map;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.madrobot.db.DBException;
@@ -167,10 +171,38 @@ public class Database {
 		_context = context;
 	}
 
+	/**
+	 * Returns the path of the database file, which identifies the database
+	 */
+	String getPath() {
+		return _path;
+	}
+
 	public void beginTransaction() {
 		_database.beginTransaction();
 	}
 
+	/**
+	 * Compiles a SQL statement, to be executed many times with different
+	 * bindings
+	 * 
+	 * @param sql
+	 *            Standard SQLite compatible SQL.
+	 * @return The compiled statement, to be closed after use
+	 * @throws DBException
+	 *             is database is null or closed
+	 */
+	public SQLiteStatement compileStatement(String sql) throws DBException {
+		if (null == _database || !_database.isOpen()) {
+			Log.e("MadRobot", CNAME
+					+ ".compileStatement(): ERROR - db object is null or closed");
+			throw new DBException(
+					"Database is closed. Did you forget to open database?");
+		}
+
+		return _database.compileStatement(sql);
+	}
+
 	public void close() {
 		String d = _database.toString();
 		if (_database != null)
@@ -208,6 +240,69 @@ public class Database {
 		_database.execSQL(sql);
 	}
 
+	/**
+	 * Explain how SQLite runs a query, to find the queries reading whole
+	 * tables.
+	 * 
+	 * @param distinct
+	 * @param table
+	 *            The table to query.
+	 * @param selectColumns
+	 *            The columns to select.
+	 * @param where
+	 *            The condition to match (Don't include "where").
+	 * @param whereArgs
+	 *            The arguments to replace "?" with.
+	 * @param groupBy
+	 * @param having
+	 * @param orderBy
+	 * @param limit
+	 * @return The plan of the query.
+	 * @throws DBException
+	 *             is database is null or closed
+	 */
+	public QueryPlan explainQuery(boolean distinct, String table,
+			String[] selectColumns, String where, String[] whereArgs,
+			String groupBy, String having, String orderBy, String limit)
+			throws DBException {
+		return explainQueryPlan(SQLiteQueryBuilder.buildQueryString(distinct,
+				table, selectColumns, where, groupBy, having, orderBy, limit),
+				whereArgs);
+	}
+
+	/**
+	 * Run EXPLAIN QUERY PLAN for a SQL query.
+	 * 
+	 * @param sql
+	 *            The query to explain.
+	 * @param params
+	 *            The values to replace "?" with.
+	 * @return The plan of the query.
+	 * @throws DBException
+	 *             is database is null or closed
+	 */
+	public QueryPlan explainQueryPlan(String sql, String[] params)
+			throws DBException {
+		if (null == _database || !_database.isOpen()) {
+			Log.e("MadRobot", CNAME
+					+ ".explainQueryPlan(): ERROR - db object is null or closed");
+			throw new DBException(
+					"Database is closed. Did you forget to open database?");
+		}
+
+		Cursor c = rawQuery("EXPLAIN QUERY PLAN " + sql, params);
+		List<String> steps = new ArrayList<String>();
+		try {
+			int detail = c.getColumnIndex("detail");
+			while (c.moveToNext()) {
+				steps.add(c.getString(detail));
+			}
+		} finally {
+			c.close();
+		}
+		return new QueryPlan(sql, steps);
+	}
+
 	public String[] getColumnsForTable(String table) {
 		Cursor c = rawQuery(String.format("PRAGMA table_info(%s)", table));
 		List<String> columns = new ArrayList<String>();
@@ -271,6 +366,81 @@ public class Database {
 		return _database.insert(table, null, parameters);
 	}
 
+	/**
+	 * Insert rows into a table with a single compiled statement, in one
+	 * transaction per batch. Values are bound with the SQLite type of their
+	 * class: integers, floating point numbers, byte arrays and nulls are
+	 * bound as such, other values as their String value. If an insert fails,
+	 * the batches before it are kept.
+	 * 
+	 * @param table
+	 *            The table to insert into.
+	 * @param columns
+	 *            The columns of the values.
+	 * @param rows
+	 *            The values of each row, in the order of the columns.
+	 * @param batchSize
+	 *            The number of rows per transaction.
+	 * @return The number of rows inserted.
+	 * @throws DBException
+	 *             is database is null or closed, or if an insert fails
+	 */
+	public int insertAll(String table, String[] columns,
+			Collection<Object[]> rows, int batchSize) throws DBException {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batchSize <= 0");
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+				.append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			sql.append(i == 0 ? "" : ", ").append(columns[i]);
+		}
+		sql.append(") VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			sql.append(i == 0 ? "?" : ",?");
+		}
+		sql.append(")");
+
+		SQLiteStatement statement = compileStatement(sql.toString());
+		int inserted = 0;
+		_database.beginTransaction();
+		try {
+			for (Object[] row : rows) {
+				statement.clearBindings();
+				for (int i = 0; i < columns.length; i++) {
+					bind(statement, i + 1, row[i]);
+				}
+				if (statement.executeInsert() != -1
+						&& ++inserted % batchSize == 0) {
+					_database.setTransactionSuccessful();
+					_database.endTransaction();
+					_database.beginTransaction();
+				}
+			}
+			_database.setTransactionSuccessful();
+		} catch (SQLException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} finally {
+			_database.endTransaction();
+			statement.close();
+		}
+		return inserted;
+	}
+
+	private static void bind(SQLiteStatement statement, int index,
+			Object value) {
+		if (value == null)
+			statement.bindNull(index);
+		else if (value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte)
+			statement.bindLong(index, ((Number) value).longValue());
+		else if (value instanceof Double || value instanceof Float)
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		else if (value instanceof byte[])
+			statement.bindBlob(index, (byte[]) value);
+		else
+			statement.bindString(index, value.toString());
+	}
+
 	public boolean isOpen() {
 		if (null != _database && _database.isOpen())
 			return true;
@@ -370,6 +540,14 @@ public class Database {
 		return _database.rawQuery(sql, params);
 	}
 
+	/**
+	 * Marks the current transaction as successful, so that endTransaction()
+	 * commits it.
+	 */
+	public void setTransactionSuccessful() {
+		_database.setTransactionSuccessful();
+	}
+
 	public void setVersion(int version) throws DBException {
 		if (null == _database || !_database.isOpen()) {
 			Log.e("MadRobot", CNAME
@@ -12,9 +12,12 @@ package com.madrobot.db.orm;
 
 import java.lang.reflect.Field;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import com.madrobot.db.DBException;
+import com.madrobot.db.orm.annotations.Index;
 import com.madrobot.text.WordUtils;
 
 /**
@@ -43,12 +46,19 @@ import com.madrobot.text.WordUtils;
  *  </code>
  * 
  * </pre>
+ * <br/><b>Indexes</b><br/>
+ * Columns are indexed with the {@link Index} annotation on their field, or
+ * with addIndex(). Each time the database is opened, the indexes of the
+ * tables that are no longer declared, or whose columns, column order or
+ * uniqueness changed, are dropped, and the missing ones are created.
  */
 public class DatabaseBuilder {
 
 	String _dbName;
 	@SuppressWarnings("unchecked")
 	Map<String, Class> classes = new HashMap<String, Class>();
+	/** CREATE INDEX statements of addIndex(), by table and index name */
+	Map<String, Map<String, String>> indexes = new HashMap<String, Map<String, String>>();
 
 	/**
 	 * Create a new DatabaseBuilder for a database.
@@ -70,6 +80,38 @@ public class DatabaseBuilder {
 		classes.put(c.getSimpleName(), c);
 	}
 
+	/**
+	 * Add an index on columns of the table of an entity.
+	 * 
+	 * @param <T>
+	 *            Any ActiveRecordBase type.
+	 * @param c
+	 *            The class of the table to index.
+	 * @param unique
+	 *            Whether the indexed values are unique.
+	 * @param columns
+	 *            The columns to index, in SQL notation. Several columns make a
+	 *            composite index.
+	 */
+	public <T extends DatabaseClient> void addIndex(Class<T> c,
+			boolean unique, String... columns) {
+		if (columns.length == 0)
+			throw new IllegalArgumentException("No column to index");
+		String table = WordUtils.toSQLName(c.getSimpleName());
+		Map<String, String> sqls = indexes.get(table);
+		if (sqls == null) {
+			sqls = new LinkedHashMap<String, String>();
+			indexes.put(table, sqls);
+		}
+		StringBuilder name = new StringBuilder(table);
+		for (String column : columns) {
+			name.append('_').append(column);
+		}
+		name.append("_idx");
+		sqls.put(name.toString(), getSQLCreateIndex(name.toString(), table,
+				unique, columns));
+	}
+
 	@SuppressWarnings("unchecked")
 	private Class getClassBySqlName(String table) {
 		String jName = WordUtils.toJavaClassName(table);
@@ -116,6 +158,102 @@ public class DatabaseBuilder {
 		return sb.toString();
 	}
 
+	private String getSQLCreateIndex(String name, String table,
+			boolean unique, String[] columns) {
+		StringBuilder sb = new StringBuilder("CREATE ");
+		if (unique)
+			sb.append("UNIQUE ");
+		sb.append("INDEX IF NOT EXISTS ").append(name).append(" ON ")
+				.append(table).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(columns[i]);
+		}
+		return sb.append(")").toString();
+	}
+
+	/**
+	 * Returns SQL create index statements for specified table, declared with
+	 * the {@link Index} annotation or with addIndex(). The statements do
+	 * nothing for the indexes that exist.
+	 * 
+	 * @param table
+	 *            name in SQL notation
+	 * @throws DBException
+	 */
+	public String[] getSQLCreateIndexes(String table) throws DBException {
+		Map<String, String> sqls = getIndexes(table);
+		return sqls.values().toArray(new String[sqls.size()]);
+	}
+
+	/**
+	 * Returns the SQL create statements of the indexes declared for specified
+	 * table, by index name.
+	 * 
+	 * @param table
+	 *            name in SQL notation
+	 * @throws DBException
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends DatabaseClient> Map<String, String> getIndexes(String table)
+			throws DBException {
+		Map<String, String> sqls = new LinkedHashMap<String, String>();
+		Class<T> c = getClassBySqlName(table);
+		if (null == c)
+			return sqls;
+		T e = null;
+		try {
+			e = c.newInstance();
+		} catch (IllegalAccessException e1) {
+			throw new DBException(e1.getLocalizedMessage());
+		} catch (InstantiationException e1) {
+			throw new DBException(e1.getLocalizedMessage());
+		}
+		// Columns of each annotated index, by their order in the index
+		Map<String, TreeMap<Integer, String>> columns = new TreeMap<String, TreeMap<Integer, String>>();
+		Map<String, Boolean> unique = new HashMap<String, Boolean>();
+		for (Field field : e.getColumnFieldsWithoutID()) {
+			Index index = field.getAnnotation(Index.class);
+			if (index == null)
+				continue;
+			String column = WordUtils.toSQLName(field.getName());
+			String name = index.name().length() > 0 ? index.name() : table
+					+ "_" + column + "_idx";
+			TreeMap<Integer, String> indexColumns = columns.get(name);
+			if (indexColumns == null) {
+				indexColumns = new TreeMap<Integer, String>();
+				columns.put(name, indexColumns);
+				unique.put(name, index.unique());
+			} else if (index.unique()) {
+				unique.put(name, true);
+			}
+			String other = indexColumns.put(index.order(), column);
+			if (other != null)
+				throw new DBException("Columns " + other + " and " + column
+						+ " of index " + name + " need different orders");
+		}
+		for (Map.Entry<String, TreeMap<Integer, String>> index : columns
+				.entrySet()) {
+			sqls.put(index.getKey(), getSQLCreateIndex(index.getKey(), table,
+					unique.get(index.getKey()), index.getValue().values()
+							.toArray(new String[index.getValue().size()])));
+		}
+		if (indexes.containsKey(table))
+			sqls.putAll(indexes.get(table));
+		return sqls;
+	}
+
+	/**
+	 * Returns SQL drop index statement for specified index
+	 * 
+	 * @param index
+	 *            name of the index
+	 */
+	public String getSQLDropIndex(String index) {
+		return "DROP INDEX IF EXISTS " + index;
+	}
+
 	/**
 	 * Returns SQL drop table statement for specified table
 	 * 
@@ -11,15 +11,18 @@
 package com.madrobot.db.orm;
 
 import java.lang.reflect.Field;
-import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteException;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteStatement;
 
 import com.madrobot.db.DBException;
 import com.madrobot.text.WordUtils;
@@ -33,6 +36,14 @@ public class DatabaseClient {
 
 	static EntitiesMap s_EntitiesMap = new EntitiesMap();
 
+	/**
+	 * Removes all the entities from the entity cache and resets its
+	 * statistics
+	 */
+	static public void clearEntityCache() {
+		s_EntitiesMap.clear();
+	}
+
 	/**
 	 * Creates new ActiveRecord instance. Returned instances is not initially
 	 * opened. Calling application must explicitly open it by calling open()
@@ -44,6 +55,26 @@ public class DatabaseClient {
 	static public DatabaseClient createInstance(Database db) {
 		return new DatabaseClient(db);
 	}
+
+	/**
+	 * Returns the number of entity lookups served by the entity cache, without
+	 * querying the database
+	 * 
+	 * @return
+	 */
+	static public long getEntityCacheHits() {
+		return s_EntitiesMap.getHits();
+	}
+
+	/**
+	 * Returns the number of entity lookups not found in the entity cache
+	 * 
+	 * @return
+	 */
+	static public long getEntityCacheMisses() {
+		return s_EntitiesMap.getMisses();
+	}
+
 	/**
 	 * Creates and opens new ActiveRecord object instance and underlying
 	 * database. Returned ActiveRecord object is fully ready for use.
@@ -60,12 +91,33 @@ public class DatabaseClient {
 		return DatabaseClient.createInstance(db);
 	}
 
+	/**
+	 * Sets the number of recently used entities of each class that the entity
+	 * cache holds strongly in each database, 100 by default. Other entities
+	 * are cached only as long as the application holds them. Entities are
+	 * cached per database file and never served for another database. The
+	 * cache is kept up to date by this class, changes made with direct SQL
+	 * are not seen: clear the cache after them.
+	 * 
+	 * @param size
+	 *            The number of entities, 0 to only hold them weakly
+	 * @see #clearEntityCache()
+	 */
+	static public void setEntityCacheSize(int size) {
+		s_EntitiesMap.setStrongSize(size);
+	}
+
 	protected long _id = 0;
 
 	Database m_Database;
 
+	boolean m_LazyReferences = false;
+
 	boolean m_NeedsInsert = true;
 
+	/** Ids of the lazy references not loaded yet */
+	Map<Field, Long> m_ReferenceIDs;
+
 	protected DatabaseClient() {
 	}
 
@@ -120,6 +172,7 @@ public class DatabaseClient {
 			throw new DBException("Set database first");
 		boolean toRet = m_Database.delete(getTableName(), "_id = ?",
 				new String[] { String.valueOf(_id) }) != 0;
+		s_EntitiesMap.remove(m_Database, getClass(), _id);
 		_id = 0;
 		m_NeedsInsert = true;
 		return toRet;
@@ -153,6 +206,8 @@ public class DatabaseClient {
 		} catch (InstantiationException e) {
 			throw new DBException(e.getLocalizedMessage());
 		}
+		// The deleted ids are unknown
+		s_EntitiesMap.remove(m_Database, type);
 		return m_Database.delete(entity.getTableName(), whereClause, whereArgs);
 	}
 
@@ -177,6 +232,38 @@ public class DatabaseClient {
 				new String[] { value });
 	}
 
+	/**
+	 * Explain how SQLite runs find() with the given criteria, to check that the
+	 * query uses an index.
+	 * 
+	 * @param <T>
+	 *            Any ActiveRecordBase class.
+	 * @param type
+	 *            The class of the entities to find.
+	 * @param whereClause
+	 *            The condition to match (Don't include "where").
+	 * @param whereArgs
+	 *            The arguments to replace "?" with.
+	 * @return The plan of the query.
+	 * @throws DBException
+	 * @see QueryPlan#hasFullScan()
+	 */
+	public <T extends DatabaseClient> QueryPlan explainFind(Class<T> type,
+			String whereClause, String[] whereArgs) throws DBException {
+		if (m_Database == null)
+			throw new DBException("Set database first");
+		T entity;
+		try {
+			entity = type.newInstance();
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (InstantiationException e) {
+			throw new DBException(e.getLocalizedMessage());
+		}
+		return m_Database.explainQuery(false, entity.getTableName(), null,
+				whereClause, whereArgs, null, null, null, null);
+	}
+
 	/**
 	 * Return all instances of an entity that match the given criteria.
 	 * 
@@ -212,30 +299,9 @@ public class DatabaseClient {
 		} catch (InstantiationException e) {
 			throw new DBException(e.getLocalizedMessage());
 		}
-		List<T> toRet = new ArrayList<T>();
 		Cursor c = m_Database.query(distinct, entity.getTableName(), null,
 				whereClause, whereArgs, groupBy, having, orderBy, limit);
-		try {
-			while (c.moveToNext()) {
-				entity = s_EntitiesMap.get(type,
-						c.getLong(c.getColumnIndex("_id")));
-				if (entity == null) {
-					entity = type.newInstance();
-					entity.m_NeedsInsert = false;
-					entity.inflate(c);
-					entity.m_Database = m_Database;
-
-				}
-				toRet.add(entity);
-			}
-		} catch (IllegalAccessException e) {
-			throw new DBException(e.getLocalizedMessage());
-		} catch (InstantiationException e) {
-			throw new DBException(e.getLocalizedMessage());
-		} finally {
-			c.close();
-		}
-		return toRet;
+		return read(type, c);
 	}
 
 	/**
@@ -274,30 +340,9 @@ public class DatabaseClient {
 		} catch (InstantiationException e1) {
 			throw new DBException(e1.getLocalizedMessage());
 		}
-		List<T> toRet = new ArrayList<T>();
 		Cursor c = m_Database.query(entity.getTableName(), null, whereClause,
 				whereArgs);
-		try {
-			while (c.moveToNext()) {
-				entity = s_EntitiesMap.get(type,
-						c.getLong(c.getColumnIndex("_id")));
-				if (entity == null) {
-					entity = type.newInstance();
-					entity.m_NeedsInsert = false;
-					entity.inflate(c);
-					entity.m_Database = m_Database;
-
-				}
-				toRet.add(entity);
-			}
-		} catch (IllegalAccessException e) {
-			throw new DBException(e.getLocalizedMessage());
-		} catch (InstantiationException e) {
-			throw new DBException(e.getLocalizedMessage());
-		} finally {
-			c.close();
-		}
-		return toRet;
+		return read(type, c);
 	}
 
 	/**
@@ -353,9 +398,12 @@ public class DatabaseClient {
 			throws DBException {
 		if (m_Database == null)
 			throw new DBException("Set database first");
-		T entity = s_EntitiesMap.get(type, id);
-		if (entity != null)
+		T entity = s_EntitiesMap.get(m_Database, type, id);
+		if (entity != null) {
+			if (!m_LazyReferences && entity.m_ReferenceIDs != null)
+				loadReferences(Collections.singletonList(entity));
 			return entity;
+		}
 
 		try {
 			entity = type.newInstance();
@@ -367,17 +415,21 @@ public class DatabaseClient {
 
 		Cursor c = m_Database.query(entity.getTableName(), null, "_id = ?",
 				new String[] { String.valueOf(id) });
+		ReferenceLoader references = m_LazyReferences ? null
+				: new ReferenceLoader();
 		try {
 			if (!c.moveToNext()) {
 				return null;
 			} else {
-				entity.inflate(c);
-				entity.m_NeedsInsert = false;
-				entity.m_Database = m_Database;
+				initEntity(entity);
+				entity.inflate(c, EntityRowMapper.forCursor(entity, c),
+						references);
 			}
 		} finally {
 			c.close();
 		}
+		if (references != null && !references.isEmpty())
+			references.load(this);
 		return entity;
 	}
 
@@ -476,81 +528,91 @@ public class DatabaseClient {
 	}
 
 	/**
-	 * Inflate this entity using the current row from the given cursor.
+	 * Returns the id stored in the column of a reference field: the id of the
+	 * referenced entity, or the id of the lazy reference not loaded yet.
 	 * 
-	 * @param cursor
-	 *            The cursor to get object data from.
-	 * @throws IllegalArgumentException
-	 * @throws IllegalAccessException
-	 * @throws InstantiationException
+	 * @return The id, null if the field references nothing
 	 */
-	@SuppressWarnings("unchecked")
-	void inflate(Cursor cursor) throws DBException {
-		HashMap<Field, Long> entities = new HashMap<Field, Long>();
-		for (Field field : getColumnFields()) {
-			try {
-				String typeString = field.getType().getName();
-				String colName = WordUtils.toSQLName(field.getName());
-				if (typeString.equals("long")) {
-					field.setLong(this,
-							cursor.getLong(cursor.getColumnIndex(colName)));
-				} else if (typeString.equals("java.lang.String")) {
-					String val = cursor.getString(cursor
-							.getColumnIndex(colName));
-					field.set(this, val.equals("null") ? null : val);
-				} else if (typeString.equals("double")) {
-					field.setDouble(this,
-							cursor.getDouble(cursor.getColumnIndex(colName)));
-				} else if (typeString.equals("boolean")) {
-					field.setBoolean(this,
-							cursor.getString(cursor.getColumnIndex(colName))
-									.equals("true"));
-				} else if (typeString.equals("[B")) {
-					field.set(this,
-							cursor.getBlob(cursor.getColumnIndex(colName)));
-				} else if (typeString.equals("int")) {
-					field.setInt(this,
-							cursor.getInt(cursor.getColumnIndex(colName)));
-				} else if (typeString.equals("float")) {
-					field.setFloat(this,
-							cursor.getFloat(cursor.getColumnIndex(colName)));
-				} else if (typeString.equals("short")) {
-					field.setShort(this,
-							cursor.getShort(cursor.getColumnIndex(colName)));
-				} else if (typeString.equals("java.sql.Timestamp")) {
-					long l = cursor.getLong(cursor.getColumnIndex(colName));
-					field.set(this, new Timestamp(l));
-				} else if (field.getType().getSuperclass() == DatabaseClient.class) {
-					long id = cursor.getLong(cursor.getColumnIndex(colName));
-					if (id > 0)
-						entities.put(field, id);
-					else
-						field.set(this, null);
-				} else
-					throw new DBException(
-							"Class cannot be read from Sqlite3 database.");
-			} catch (IllegalArgumentException e) {
-				throw new DBException(e.getLocalizedMessage());
-			} catch (IllegalAccessException e) {
-				throw new DBException(e.getLocalizedMessage());
-			}
+	Long getReferenceID(Field field) throws IllegalAccessException {
+		DatabaseClient reference = (DatabaseClient) field.get(this);
+		if (reference != null)
+			return reference._id;
+		return m_ReferenceIDs != null ? m_ReferenceIDs.get(field) : null;
+	}
 
+	/**
+	 * Returns the entity referenced by a field, loading it on first access if
+	 * references are lazy.
+	 * 
+	 * @param <T>
+	 *            Any ActiveRecordBase class.
+	 * @param fieldName
+	 *            The name of the reference field.
+	 * @return The referenced entity, null if there is none
+	 * @throws DBException
+	 * @see #setLazyReferences(boolean)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends DatabaseClient> T getReference(String fieldName)
+			throws DBException {
+		try {
+			Field field = getClass().getDeclaredField(fieldName);
+			Long id = m_ReferenceIDs != null ? m_ReferenceIDs.remove(field)
+					: null;
+			if (id != null)
+				field.set(this, findByID(
+						(Class<? extends DatabaseClient>) field.getType(), id));
+			return (T) field.get(this);
+		} catch (NoSuchFieldException e) {
+			throw new DBException("No field " + fieldName);
+		} catch (IllegalArgumentException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
 		}
+	}
 
-		s_EntitiesMap.set(this);
-		for (Field f : entities.keySet()) {
-			try {
-				f.set(this, this.findByID(
-						(Class<? extends DatabaseClient>) f.getType(),
-						entities.get(f)));
-			} catch (SQLiteException e) {
-				throw new DBException(e.getLocalizedMessage());
-			} catch (IllegalArgumentException e) {
-				throw new DBException(e.getLocalizedMessage());
-			} catch (IllegalAccessException e) {
-				throw new DBException(e.getLocalizedMessage());
-			}
+	/**
+	 * Inflate this entity using the current row from the given cursor, with
+	 * the mapper of its columns.
+	 * 
+	 * @param cursor
+	 *            The cursor to get object data from.
+	 * @param mapper
+	 *            The mapper of this class for the cursor columns.
+	 * @param references
+	 *            Collects the references to load, or null to keep them for
+	 *            {@link #getReference(String)}
+	 * @throws DBException
+	 */
+	void inflate(Cursor cursor, EntityRowMapper mapper,
+			ReferenceLoader references) throws DBException {
+		HashMap<Field, Long> entities = mapper.hasReferences ? new HashMap<Field, Long>()
+				: null;
+		try {
+			mapper.inflate(this, cursor, entities);
+		} catch (IllegalArgumentException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
 		}
+
+		s_EntitiesMap.set(m_Database, this);
+		if (entities == null || entities.isEmpty())
+			return;
+		if (references != null)
+			references.add(this, entities);
+		else
+			m_ReferenceIDs = entities;
+	}
+
+	/**
+	 * Sets up an entity read from the database of this object
+	 */
+	void initEntity(DatabaseClient entity) {
+		entity.m_NeedsInsert = false;
+		entity.m_Database = m_Database;
+		entity.m_LazyReferences = m_LazyReferences;
 	}
 
 	/**
@@ -566,11 +628,7 @@ public class DatabaseClient {
 		for (Field column : columns) {
 			try {
 				if (column.getType().getSuperclass() == DatabaseClient.class)
-					values.put(
-							WordUtils.toSQLName(column.getName()),
-							column.get(this) != null ? String
-									.valueOf(((DatabaseClient) column
-											.get(this))._id) : "0");
+					putReference(values, column);
 				else
 					values.put(WordUtils.toSQLName(column.getName()),
 							String.valueOf(column.get(this)));
@@ -585,6 +643,89 @@ public class DatabaseClient {
 		return _id;
 	}
 
+	/**
+	 * Insert entities into the database in a single transaction, with one
+	 * compiled statement per entity class. Entities with an id are inserted
+	 * with it.
+	 * 
+	 * @param entities
+	 *            The entities to insert.
+	 * @return The number of entities inserted
+	 * @throws DBException
+	 *             If an insert fails, nothing is inserted
+	 */
+	public int insertAll(Collection<? extends DatabaseClient> entities)
+			throws DBException {
+		return writeAll(entities, Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * Insert entities into the database with one compiled statement per entity
+	 * class, in one transaction per batch. Entities with an id are inserted
+	 * with it.
+	 * 
+	 * @param entities
+	 *            The entities to insert.
+	 * @param batchSize
+	 *            The number of entities per transaction.
+	 * @return The number of entities inserted
+	 * @throws DBException
+	 *             If an insert fails, the batches before it are kept
+	 */
+	public int insertAll(Collection<? extends DatabaseClient> entities,
+			int batchSize) throws DBException {
+		return writeAll(entities, batchSize, false);
+	}
+
+	/**
+	 * Iterate over the instances of an entity that match the given criteria,
+	 * with a single cursor. Entities are inflated by chunks of rows, as the
+	 * iteration goes.
+	 * 
+	 * @param <T>
+	 *            Any ActiveRecordBase class.
+	 * @param type
+	 *            The class of the entities to return.
+	 * @param whereClause
+	 *            The condition to match (Don't include "where").
+	 * @param whereArgs
+	 *            The arguments to replace "?" with.
+	 * @return An iterator to close after use.
+	 * @throws DBException
+	 */
+	public <T extends DatabaseClient> EntityIterator<T> iterate(Class<T> type,
+			String whereClause, String[] whereArgs) throws DBException {
+		return iterate(type, whereClause, whereArgs, 0);
+	}
+
+	/**
+	 * Iterate over the instances of an entity that match the given criteria,
+	 * in <code>_id</code> order, reading them by pages. Each page resumes after
+	 * the last id read, so huge tables are walked with constant memory.
+	 * 
+	 * @param <T>
+	 *            Any ActiveRecordBase class.
+	 * @param type
+	 *            The class of the entities to return.
+	 * @param whereClause
+	 *            The condition to match (Don't include "where").
+	 * @param whereArgs
+	 *            The arguments to replace "?" with.
+	 * @param pageSize
+	 *            The number of rows per query, 0 to read all the rows with a
+	 *            single query.
+	 * @return An iterator to close after use.
+	 * @throws DBException
+	 */
+	public <T extends DatabaseClient> EntityIterator<T> iterate(Class<T> type,
+			String whereClause, String[] whereArgs, int pageSize)
+			throws DBException {
+		if (m_Database == null)
+			throw new DBException("Set database first");
+		return new EntityIterator<T>(this, type, whereClause, whereArgs,
+				pageSize);
+	}
+
 	/**
 	 * Returns true is underlying database object is open
 	 * 
@@ -594,6 +735,38 @@ public class DatabaseClient {
 		return m_Database.isOpen();
 	}
 
+	/**
+	 * Whether the entities read through this object load their references on
+	 * first access
+	 * 
+	 * @return
+	 * @see #setLazyReferences(boolean)
+	 */
+	public boolean isLazyReferences() {
+		return m_LazyReferences;
+	}
+
+	/**
+	 * Loads the pending lazy references of a list of entities, in one query
+	 * per referenced class.
+	 * 
+	 * @param entities
+	 *            Entities read with lazy references
+	 * @throws DBException
+	 * @see #setLazyReferences(boolean)
+	 */
+	public void loadReferences(List<? extends DatabaseClient> entities)
+			throws DBException {
+		if (m_Database == null)
+			throw new DBException("Set database first");
+		ReferenceLoader references = new ReferenceLoader();
+		for (DatabaseClient entity : entities) {
+			references.addPending(entity);
+		}
+		if (!references.isEmpty())
+			references.load(this);
+	}
+
 	/**
 	 * Creates new entity instance connected with opened database
 	 * 
@@ -627,6 +800,58 @@ public class DatabaseClient {
 		m_Database.open();
 	}
 
+	/**
+	 * Puts the id of a reference field in the values to write, or NULL if the
+	 * field references nothing
+	 */
+	private void putReference(ContentValues values, Field column)
+			throws IllegalAccessException {
+		Long id = getReferenceID(column);
+		String name = WordUtils.toSQLName(column.getName());
+		if (id != null)
+			values.put(name, String.valueOf(id));
+		else
+			values.putNull(name);
+	}
+
+	/**
+	 * Reads the entities of a cursor, then loads the entities they reference
+	 * with one query per referenced class, unless references are lazy.
+	 */
+	private <T extends DatabaseClient> List<T> read(Class<T> type, Cursor c)
+			throws DBException {
+		List<T> toRet = new ArrayList<T>();
+		ReferenceLoader references = m_LazyReferences ? null
+				: new ReferenceLoader();
+		try {
+			EntityRowMapper mapper = null;
+			int idColumn = c.getColumnIndex("_id");
+			while (c.moveToNext()) {
+				T entity = s_EntitiesMap.get(m_Database, type,
+						c.getLong(idColumn));
+				if (entity == null) {
+					entity = type.newInstance();
+					if (mapper == null)
+						mapper = EntityRowMapper.forCursor(entity, c);
+					initEntity(entity);
+					entity.inflate(c, mapper, references);
+				} else if (references != null) {
+					references.addPending(entity);
+				}
+				toRet.add(entity);
+			}
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (InstantiationException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} finally {
+			c.close();
+		}
+		if (references != null && !references.isEmpty())
+			references.load(this);
+		return toRet;
+	}
+
 	/**
 	 * Saves this entity to the database, inserts or updates as needed.
 	 * 
@@ -643,11 +868,46 @@ public class DatabaseClient {
 			r = insert();
 		else
 			r = update();
-		s_EntitiesMap.set(this);
+		s_EntitiesMap.set(m_Database, this);
 
 		return r;
 	}
 
+	/**
+	 * Saves entities to the database in a single transaction, with compiled
+	 * statements per entity class. Entities without an id are inserted, the
+	 * rows of the others are updated, or inserted with the id if missing.
+	 * 
+	 * @param entities
+	 *            The entities to save.
+	 * @return The number of entities saved
+	 * @throws DBException
+	 *             If a save fails, nothing is saved
+	 */
+	public int saveAll(Collection<? extends DatabaseClient> entities)
+			throws DBException {
+		return writeAll(entities, Integer.MAX_VALUE, true);
+	}
+
+	/**
+	 * Saves entities to the database with compiled statements per entity
+	 * class, in one transaction per batch. Entities without an id are
+	 * inserted, the rows of the others are updated, or inserted with the id
+	 * if missing.
+	 * 
+	 * @param entities
+	 *            The entities to save.
+	 * @param batchSize
+	 *            The number of entities per transaction.
+	 * @return The number of entities saved
+	 * @throws DBException
+	 *             If a save fails, the batches before it are kept
+	 */
+	public int saveAll(Collection<? extends DatabaseClient> entities,
+			int batchSize) throws DBException {
+		return writeAll(entities, batchSize, true);
+	}
+
 	/**
 	 * Call this once at application launch, sets the database to use for
 	 * AREntities.
@@ -659,6 +919,22 @@ public class DatabaseClient {
 		m_Database = database;
 	}
 
+	/**
+	 * Sets whether the entities read through this object load their references
+	 * on first access, with {@link #getReference(String)} or
+	 * {@link #loadReferences(List)}, instead of when they are read. Lazy
+	 * reference fields stay null until loaded, saving the entity keeps the
+	 * references not loaded yet. An entity read lazily is shared with the
+	 * clients reading eagerly, which load its pending references when they
+	 * read it.
+	 * 
+	 * @param lazy
+	 *            true to load references on demand
+	 */
+	public void setLazyReferences(boolean lazy) {
+		m_LazyReferences = lazy;
+	}
+
 	/**
 	 * Update this entity in the database.
 	 * 
@@ -671,11 +947,7 @@ public class DatabaseClient {
 		for (Field column : columns) {
 			try {
 				if (column.getType().getSuperclass() == DatabaseClient.class)
-					values.put(
-							WordUtils.toSQLName(column.getName()),
-							column.get(this) != null ? String
-									.valueOf(((DatabaseClient) column
-											.get(this))._id) : "0");
+					putReference(values, column);
 				else
 					values.put(WordUtils.toSQLName(column.getName()),
 							String.valueOf(column.get(this)));
@@ -687,6 +959,106 @@ public class DatabaseClient {
 		}
 		int r = m_Database.update(getTableName(), values, "_id = ?",
 				new String[] { String.valueOf(_id) });
+		if (r > 0)
+			s_EntitiesMap.set(m_Database, this);
+		else
+			s_EntitiesMap.remove(m_Database, getClass(), _id);
 		return r;
 	}
+
+	/**
+	 * Returns the compiled statement of a SQL string, compiling it on first use
+	 */
+	private SQLiteStatement getStatement(
+			Map<String, SQLiteStatement> statements, String sql)
+			throws DBException {
+		SQLiteStatement statement = statements.get(sql);
+		if (statement == null) {
+			statement = m_Database.compileStatement(sql);
+			statements.put(sql, statement);
+		}
+		return statement;
+	}
+
+	/**
+	 * Marks the entities written by a committed transaction as saved
+	 */
+	private void setWritten(List<DatabaseClient> written, List<Long> ids) {
+		for (int i = 0; i < written.size(); i++) {
+			DatabaseClient entity = written.get(i);
+			entity._id = ids.get(i);
+			entity.m_NeedsInsert = false;
+			if (entity.m_Database == null)
+				entity.m_Database = m_Database;
+			s_EntitiesMap.set(m_Database, entity);
+		}
+		written.clear();
+		ids.clear();
+	}
+
+	private int writeAll(Collection<? extends DatabaseClient> entities,
+			int batchSize, boolean save) throws DBException {
+		if (m_Database == null)
+			throw new DBException("Set database first");
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batchSize <= 0");
+		// One statement per entity class and kind of write
+		Map<String, SQLiteStatement> statements = new HashMap<String, SQLiteStatement>();
+		// The entities are changed only once their transaction is committed
+		List<DatabaseClient> written = new ArrayList<DatabaseClient>();
+		List<Long> ids = new ArrayList<Long>();
+		int count = 0;
+		boolean inTransaction = true;
+		m_Database.beginTransaction();
+		try {
+			for (DatabaseClient entity : entities) {
+				EntityBinder binder = EntityBinder.forEntity(entity);
+				boolean withID = entity._id > 0;
+				long id = -1;
+				if (save && withID) {
+					SQLiteStatement update = getStatement(statements,
+							binder.getUpdateSQL());
+					binder.bindUpdate(update, entity);
+					update.execute();
+					if (getStatement(statements, "SELECT changes()")
+							.simpleQueryForLong() > 0)
+						id = entity._id;
+				}
+				if (id == -1) {
+					SQLiteStatement insert = getStatement(statements,
+							binder.getInsertSQL(withID));
+					binder.bind(insert, entity, withID);
+					id = insert.executeInsert();
+					if (id == -1)
+						throw new DBException("Could not insert into "
+								+ entity.getTableName());
+				}
+				written.add(entity);
+				ids.add(id);
+				if (++count % batchSize == 0) {
+					m_Database.setTransactionSuccessful();
+					inTransaction = false;
+					m_Database.endTransaction();
+					setWritten(written, ids);
+					m_Database.beginTransaction();
+					inTransaction = true;
+				}
+			}
+			m_Database.setTransactionSuccessful();
+			inTransaction = false;
+			m_Database.endTransaction();
+			setWritten(written, ids);
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (SQLException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} finally {
+			if (inTransaction)
+				m_Database.endTransaction();
+			for (SQLiteStatement statement : statements.values()) {
+				statement.close();
+			}
+		}
+		return count;
+	}
 }
@@ -10,7 +10,12 @@
  ******************************************************************************/
 package com.madrobot.db.orm;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
@@ -54,11 +59,92 @@ class DatabaseOpenHelper extends SQLiteOpenHelper {
 			if (sqlStr != null)
 				db.execSQL(sqlStr);
 		}
+		migrateIndexes(db);
 		db.setVersion(_version);
 	}
 
+	/**
+	 * Brings the indexes of each table in line with the declared ones: drops
+	 * the indexes no longer declared or declared differently, then creates
+	 * the missing ones. The indexes SQLite creates for its constraints are
+	 * left alone. A table whose indexes cannot be migrated keeps its previous
+	 * indexes.
+	 */
+	private void migrateIndexes(SQLiteDatabase db) {
+		for (String table : _builder.getTables()) {
+			db.beginTransaction();
+			try {
+				// Index names are case insensitive
+				Map<String, String> declared = new HashMap<String, String>();
+				for (Map.Entry<String, String> index : _builder.getIndexes(
+						table).entrySet()) {
+					declared.put(index.getKey().toLowerCase(), index.getValue());
+				}
+				for (Map.Entry<String, String> index : getIndexes(db, table)
+						.entrySet()) {
+					String sqlStr = declared.get(index.getKey().toLowerCase());
+					if (sqlStr == null || !isSameIndex(index.getValue(), sqlStr))
+						db.execSQL(_builder.getSQLDropIndex(index.getKey()));
+				}
+				for (String sqlStr : declared.values()) {
+					db.execSQL(sqlStr);
+				}
+				db.setTransactionSuccessful();
+			} catch (DBException e) {
+				Log.e(this.getClass().getName(), e.getMessage(), e);
+			} catch (SQLException e) {
+				Log.e(this.getClass().getName(), e.getMessage(), e);
+			} finally {
+				db.endTransaction();
+			}
+		}
+	}
+
+	/**
+	 * Returns the SQL create statements of the existing indexes of a table, by
+	 * index name, except the ones SQLite creates for its constraints
+	 */
+	private static Map<String, String> getIndexes(SQLiteDatabase db,
+			String table) {
+		Map<String, String> indexes = new HashMap<String, String>();
+		Cursor c = db.rawQuery(
+				"SELECT name, sql FROM sqlite_master WHERE type = 'index'"
+						+ " AND tbl_name = ? COLLATE NOCASE"
+						+ " AND sql IS NOT NULL", new String[] { table });
+		try {
+			while (c.moveToNext()) {
+				indexes.put(c.getString(0), c.getString(1));
+			}
+		} finally {
+			c.close();
+		}
+		return indexes;
+	}
+
+	/**
+	 * Whether an existing index matches a declared one. SQLite stores
+	 * "CREATE [UNIQUE] INDEX" followed by the statement text from the index
+	 * name on, so the declared statement is compared without its
+	 * "IF NOT EXISTS".
+	 */
+	private static boolean isSameIndex(String existing, String declared) {
+		int start = declared.indexOf(" IF NOT EXISTS ");
+		if (start >= 0)
+			declared = declared.substring(0, start)
+					+ declared.substring(start + " IF NOT EXISTS".length());
+		return existing.equalsIgnoreCase(declared);
+	}
+
+	@Override
+	public void onOpen(SQLiteDatabase db) {
+		// Indexes declared, removed or changed since the database was created
+		if (!db.isReadOnly())
+			migrateIndexes(db);
+	}
+
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		// Dropping the tables drops their indexes too
 		for (String table : _builder.getTables()) {
 			String sqlStr = _builder.getSQLDrop(table);
 			db.execSQL(sqlStr);
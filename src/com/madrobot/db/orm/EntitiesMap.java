@@ -10,37 +10,212 @@
  ******************************************************************************/
 package com.madrobot.db.orm;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 
+ * Identity map of the entities read or written, by database, class and id.
+ * <p>
+ * The most recently used entities of each class are held strongly, up to the
+ * strong size, so that hot rows are served without querying the database. The
+ * others are held weakly and stay mapped as long as the application uses
+ * them. Safe for concurrent use.
+ * </p>
  */
 class EntitiesMap {
-	WeakHashMap<DatabaseClient, String> _map = new WeakHashMap<DatabaseClient, String>();
-	private Map<String, WeakReference<DatabaseClient>> map = new HashMap<String, WeakReference<DatabaseClient>>(); 
 
-	@SuppressWarnings("unchecked")
-	<T extends DatabaseClient> T get(Class<T> c, long id) {
-		String key = makeKey(c, id);
-		WeakReference<DatabaseClient> i = map.get(key);
-		if (i == null)
-			return null;
-		return (T) i.get();
+	/**
+	 * The entities of one class
+	 */
+	private class Entities {
+
+		private final ReferenceQueue<DatabaseClient> queue = new ReferenceQueue<DatabaseClient>();
+
+		@SuppressWarnings("serial")
+		private final LinkedHashMap<Long, DatabaseClient> strong = new LinkedHashMap<Long, DatabaseClient>(
+				16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Long, DatabaseClient> eldest) {
+				return size() > strongSize;
+			}
+		};
+
+		private final Map<Long, IdReference> weak = new HashMap<Long, IdReference>();
+
+		synchronized void clear() {
+			strong.clear();
+			weak.clear();
+		}
+
+		synchronized DatabaseClient get(long id) {
+			Long key = id;
+			DatabaseClient entity = strong.get(key);
+			if (entity != null)
+				return entity;
+			IdReference reference = weak.get(key);
+			if (reference == null)
+				return null;
+			entity = reference.get();
+			if (entity != null && strongSize > 0)
+				strong.put(key, entity);
+			return entity;
+		}
+
+		/**
+		 * Drops the weak references cleared by the garbage collector
+		 */
+		private void purge() {
+			IdReference reference;
+			while ((reference = (IdReference) queue.poll()) != null) {
+				if (weak.get(reference.id) == reference)
+					weak.remove(reference.id);
+			}
+		}
+
+		synchronized void remove(long id) {
+			Long key = id;
+			strong.remove(key);
+			weak.remove(key);
+		}
+
+		synchronized void set(DatabaseClient e) {
+			purge();
+			Long key = e.getID();
+			IdReference reference = weak.get(key);
+			if (reference == null || reference.get() != e)
+				weak.put(key, new IdReference(e, queue));
+			if (strongSize > 0)
+				strong.put(key, e);
+			else
+				strong.remove(key);
+		}
+	}
+
+	private static class IdReference extends WeakReference<DatabaseClient> {
+		final long id;
+
+		IdReference(DatabaseClient e, ReferenceQueue<DatabaseClient> queue) {
+			super(e, queue);
+			this.id = e.getID();
+		}
+	}
+
+	/**
+	 * Key of the entities of one class in one database
+	 */
+	private static final class TableKey {
+		private final String database;
+		private final Class<?> type;
+
+		TableKey(Database database, Class<?> type) {
+			this.database = database != null ? database.getPath() : null;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof TableKey))
+				return false;
+			TableKey other = (TableKey) o;
+			return type == other.type
+					&& (database == null ? other.database == null
+							: database.equals(other.database));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * type.hashCode()
+					+ (database == null ? 0 : database.hashCode());
+		}
+	}
+
+	/** Default number of entities held strongly per class */
+	static final int DEFAULT_STRONG_SIZE = 100;
+
+	private final ConcurrentMap<TableKey, Entities> classes = new ConcurrentHashMap<TableKey, Entities>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile int strongSize = DEFAULT_STRONG_SIZE;
+
+	void clear() {
+		for (Entities entities : classes.values()) {
+			entities.clear();
+		}
+		hits.set(0);
+		misses.set(0);
 	}
 
 	@SuppressWarnings("unchecked")
-	private String makeKey(Class entityType, long id) {
-		StringBuilder sb = new StringBuilder();
-		sb	.append(entityType.getName())
-			.append(id);
-		return sb.toString();
-	}
-	
-	void set(DatabaseClient e) {
-		String key = makeKey(e.getClass(), e.getID());
-		map.put(key, new WeakReference<DatabaseClient>(e));
+	<T extends DatabaseClient> T get(Database database, Class<T> c, long id) {
+		Entities entities = classes.get(new TableKey(database, c));
+		T entity = entities != null ? (T) entities.get(id) : null;
+		if (entity != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return entity;
+	}
+
+	private Entities getEntities(TableKey key) {
+		Entities entities = classes.get(key);
+		if (entities == null) {
+			entities = new Entities();
+			Entities existing = classes.putIfAbsent(key, entities);
+			if (existing != null)
+				entities = existing;
+		}
+		return entities;
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	int getStrongSize() {
+		return strongSize;
+	}
+
+	/**
+	 * Removes all the entities of a class in a database
+	 */
+	void remove(Database database, Class<?> c) {
+		Entities entities = classes.get(new TableKey(database, c));
+		if (entities != null)
+			entities.clear();
+	}
+
+	void remove(Database database, Class<?> c, long id) {
+		Entities entities = classes.get(new TableKey(database, c));
+		if (entities != null)
+			entities.remove(id);
+	}
+
+	/**
+	 * Maps an entity read from or written to a database
+	 */
+	void set(Database database, DatabaseClient e) {
+		if (e.getID() > 0)
+			getEntities(new TableKey(database, e.getClass())).set(e);
+	}
+
+	/**
+	 * Sets the number of entities held strongly per class. Takes effect as
+	 * entities are added.
+	 */
+	void setStrongSize(int strongSize) {
+		if (strongSize < 0)
+			throw new IllegalArgumentException("strongSize < 0");
+		this.strongSize = strongSize;
 	}
 }
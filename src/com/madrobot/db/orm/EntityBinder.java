@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm;
+
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import android.database.sqlite.SQLiteStatement;
+
+import com.madrobot.db.DBException;
+import com.madrobot.text.WordUtils;
+
+/**
+ * Binds the fields of {@link DatabaseClient} entities to compiled insert and
+ * update statements.
+ * <p>
+ * The columns and the type of every field are resolved once per entity class.
+ * Values are bound with the SQLite type of their field, and read back as
+ * {@link EntityRowMapper} expects them: booleans as "true" or "false",
+ * timestamps as milliseconds and references as the referenced id, or NULL.
+ * </p>
+ */
+final class EntityBinder {
+
+	private static final ConcurrentMap<Class<?>, EntityBinder> binders = new ConcurrentHashMap<Class<?>, EntityBinder>();
+
+	/**
+	 * Returns the binder of an entity class, building it on first use
+	 * 
+	 * @param entity
+	 *            An entity of the class to bind
+	 * @throws DBException
+	 *             If a field has a type that cannot be stored
+	 */
+	static EntityBinder forEntity(DatabaseClient entity) throws DBException {
+		EntityBinder binder = binders.get(entity.getClass());
+		if (binder == null) {
+			binder = new EntityBinder(entity);
+			EntityBinder existing = binders.putIfAbsent(entity.getClass(),
+					binder);
+			if (existing != null) {
+				binder = existing;
+			}
+		}
+		return binder;
+	}
+
+	private final Field[] fields;
+	private final String insertSQL;
+	private final int[] types;
+	private final String updateSQL;
+	private final String withIDSQL;
+
+	private EntityBinder(DatabaseClient entity) throws DBException {
+		List<Field> columnFields = entity.getColumnFieldsWithoutID();
+		int size = columnFields.size();
+		fields = new Field[size];
+		types = new int[size];
+		StringBuilder columns = new StringBuilder();
+		StringBuilder setters = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			Field field = columnFields.get(i);
+			fields[i] = field;
+			types[i] = EntityRowMapper.typeOf(field.getType());
+			String column = WordUtils.toSQLName(field.getName());
+			columns.append(", ").append(column);
+			setters.append(", ").append(column).append(" = ?");
+			values.append(",?");
+		}
+		String table = entity.getTableName();
+		insertSQL = size == 0 ? "INSERT INTO " + table + " DEFAULT VALUES"
+				: "INSERT INTO " + table + " (" + columns.substring(2)
+						+ ") VALUES (" + values.substring(1) + ")";
+		withIDSQL = "INSERT INTO " + table + " (_id" + columns + ") VALUES (?"
+				+ values + ")";
+		updateSQL = "UPDATE " + table + " SET "
+				+ (size == 0 ? "_id = _id" : setters.substring(2))
+				+ " WHERE _id = ?";
+	}
+
+	/**
+	 * Binds the fields of an entity to a statement compiled from
+	 * {@link #getInsertSQL(boolean)}
+	 * 
+	 * @param withID
+	 *            Whether the statement is the one with the id
+	 */
+	void bind(SQLiteStatement statement, DatabaseClient entity, boolean withID)
+			throws IllegalAccessException {
+		statement.clearBindings();
+		int index = 1;
+		if (withID) {
+			statement.bindLong(index++, entity._id);
+		}
+		bindFields(statement, entity, index);
+	}
+
+	/**
+	 * Binds the fields of an entity to a statement compiled from
+	 * {@link #getUpdateSQL()}
+	 */
+	void bindUpdate(SQLiteStatement statement, DatabaseClient entity)
+			throws IllegalAccessException {
+		statement.clearBindings();
+		bindFields(statement, entity, 1);
+		statement.bindLong(fields.length + 1, entity._id);
+	}
+
+	/**
+	 * Binds the fields, from the parameter <code>index</code>
+	 */
+	private void bindFields(SQLiteStatement statement, DatabaseClient entity,
+			int index) throws IllegalAccessException {
+		for (int i = 0; i < fields.length; i++, index++) {
+			Field field = fields[i];
+			switch (types[i]) {
+			case EntityRowMapper.TYPE_LONG:
+				statement.bindLong(index, field.getLong(entity));
+				break;
+			case EntityRowMapper.TYPE_INT:
+				statement.bindLong(index, field.getInt(entity));
+				break;
+			case EntityRowMapper.TYPE_SHORT:
+				statement.bindLong(index, field.getShort(entity));
+				break;
+			case EntityRowMapper.TYPE_DOUBLE:
+				statement.bindDouble(index, field.getDouble(entity));
+				break;
+			case EntityRowMapper.TYPE_FLOAT:
+				statement.bindDouble(index, field.getFloat(entity));
+				break;
+			case EntityRowMapper.TYPE_BOOLEAN:
+				statement.bindString(index,
+						field.getBoolean(entity) ? "true" : "false");
+				break;
+			case EntityRowMapper.TYPE_STRING:
+				Object string = field.get(entity);
+				if (string == null)
+					statement.bindNull(index);
+				else
+					statement.bindString(index, (String) string);
+				break;
+			case EntityRowMapper.TYPE_BLOB:
+				Object blob = field.get(entity);
+				if (blob == null)
+					statement.bindNull(index);
+				else
+					statement.bindBlob(index, (byte[]) blob);
+				break;
+			case EntityRowMapper.TYPE_TIMESTAMP:
+				Object timestamp = field.get(entity);
+				if (timestamp == null)
+					statement.bindNull(index);
+				else
+					statement.bindLong(index, ((Timestamp) timestamp).getTime());
+				break;
+			case EntityRowMapper.TYPE_ENTITY:
+				Long id = entity.getReferenceID(field);
+				if (id == null)
+					statement.bindNull(index);
+				else
+					statement.bindLong(index, id);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the statement inserting an entity
+	 * 
+	 * @param withID
+	 *            true for the statement inserting the entity id, false for the
+	 *            statement inserting a new row
+	 */
+	String getInsertSQL(boolean withID) {
+		return withID ? withIDSQL : insertSQL;
+	}
+
+	/**
+	 * Returns the statement updating the row of an entity, by id
+	 */
+	String getUpdateSQL() {
+		return updateSQL;
+	}
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+
+import com.madrobot.db.DBException;
+
+/**
+ * Iterates over the entities matching a query, inflating the entities as the
+ * iteration goes.
+ * <p>
+ * With a page size, the table is walked by pages in <code>_id</code> order,
+ * with <code>WHERE _id > ? ORDER BY _id LIMIT n</code> queries resuming after
+ * the last id read, so only one page of rows is held at a time. Without a page
+ * size, a single cursor is used, in the natural order of the query, and its
+ * rows are inflated by chunks of {@link #CHUNK_SIZE}.
+ * </p>
+ * <p>
+ * The cursor is closed when the iteration ends; close the iterator to stop
+ * earlier.
+ * 
+ * <pre>
+ * EntityIterator&lt;Order&gt; orders = client.iterate(Order.class, null, null, 500);
+ * try {
+ * 	for (Order order : orders) {
+ * 		total += order.amount;
+ * 	}
+ * } finally {
+ * 	orders.close();
+ * }
+ * </pre>
+ * 
+ * </p>
+ * <p>
+ * Unless references are lazy, the references of the entities of a page or
+ * chunk are loaded together, with one query per referenced class. Already
+ * cached entities are returned from the entity cache.
+ * </p>
+ * 
+ * @param <T>
+ *            The entity class
+ * @see DatabaseClient#iterate(Class, String, String[], int)
+ * @see DatabaseClient#setLazyReferences(boolean)
+ */
+public class EntityIterator<T extends DatabaseClient> implements Iterator<T>,
+		Iterable<T>, Closeable {
+
+	/** Number of rows inflated at a time without a page size */
+	static final int CHUNK_SIZE = 100;
+
+	private final DatabaseClient client;
+	private Cursor cursor;
+	private int idColumn;
+	private boolean iterated;
+	private long lastID = Long.MIN_VALUE;
+	private EntityRowMapper mapper;
+	/** Entities of the current page or chunk */
+	private final List<T> page = new ArrayList<T>();
+	private int pagePosition;
+	private int pageRows;
+	private final int pageSize;
+	private final String table;
+	private final Class<T> type;
+	private final String where;
+	private final String[] whereArgs;
+
+	EntityIterator(DatabaseClient client, Class<T> type, String where,
+			String[] whereArgs, int pageSize) throws DBException {
+		this.client = client;
+		this.type = type;
+		this.where = where;
+		this.whereArgs = whereArgs;
+		this.pageSize = pageSize;
+		table = newEntity().getTableName();
+		cursor = query();
+	}
+
+	/**
+	 * Closes the underlying cursor. Does nothing if the iteration has ended.
+	 */
+	@Override
+	public void close() {
+		closeCursor();
+		page.clear();
+		pagePosition = 0;
+	}
+
+	private void closeCursor() {
+		if (cursor != null) {
+			cursor.close();
+			cursor = null;
+		}
+	}
+
+	/**
+	 * Inflates the entities of the next page or chunk, then loads their
+	 * references
+	 */
+	private void fetch() throws DBException {
+		page.clear();
+		pagePosition = 0;
+		ReferenceLoader references = client.m_LazyReferences ? null
+				: new ReferenceLoader();
+		int rows = pageSize > 0 ? pageSize : CHUNK_SIZE;
+		while (page.size() < rows) {
+			if (!cursor.moveToNext()) {
+				if (pageSize <= 0 || pageRows < pageSize) {
+					closeCursor();
+					break;
+				}
+				// Next page, after the last id read
+				closeCursor();
+				cursor = query();
+				if (!cursor.moveToNext()) {
+					closeCursor();
+					break;
+				}
+			}
+			pageRows++;
+			page.add(inflate(references));
+		}
+		if (references != null && !references.isEmpty())
+			references.load(client);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (pagePosition < page.size())
+			return true;
+		if (cursor == null)
+			return false;
+		try {
+			fetch();
+		} catch (DBException e) {
+			close();
+			throw new IllegalStateException("Could not read " + table, e);
+		}
+		return pagePosition < page.size();
+	}
+
+	/**
+	 * Returns the entity of the current row
+	 * 
+	 * @param references
+	 *            Collects the references to load, or null if they are lazy
+	 */
+	private T inflate(ReferenceLoader references) throws DBException {
+		long id = cursor.getLong(idColumn);
+		lastID = id;
+		T entity = DatabaseClient.s_EntitiesMap.get(client.m_Database, type,
+				id);
+		if (entity != null) {
+			if (references != null)
+				references.addPending(entity);
+			return entity;
+		}
+		entity = newEntity();
+		if (mapper == null)
+			mapper = EntityRowMapper.forCursor(entity, cursor);
+		client.initEntity(entity);
+		entity.inflate(cursor, mapper, references);
+		return entity;
+	}
+
+	/**
+	 * Returns this iterator, to be used in a for-each loop. Can be called only
+	 * once.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		if (iterated)
+			throw new IllegalStateException("Already iterated");
+		iterated = true;
+		return this;
+	}
+
+	private T newEntity() throws DBException {
+		try {
+			return type.newInstance();
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (InstantiationException e) {
+			throw new DBException(e.getLocalizedMessage());
+		}
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		// Not held by the page once returned
+		return page.set(pagePosition++, null);
+	}
+
+	private Cursor query() throws DBException {
+		pageRows = 0;
+		Cursor c;
+		if (pageSize <= 0) {
+			c = client.m_Database.query(table, null, where, whereArgs);
+		} else {
+			String[] args;
+			if (whereArgs == null) {
+				args = new String[1];
+			} else {
+				args = new String[whereArgs.length + 1];
+				System.arraycopy(whereArgs, 0, args, 0, whereArgs.length);
+			}
+			args[args.length - 1] = String.valueOf(lastID);
+			c = client.m_Database.query(false, table, null,
+					where == null ? "_id > ?" : "(" + where + ") AND _id > ?",
+					args, null, null, "_id", String.valueOf(pageSize));
+		}
+		idColumn = c.getColumnIndex("_id");
+		return c;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm;
+
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import android.database.Cursor;
+
+import com.madrobot.db.DBException;
+import com.madrobot.text.WordUtils;
+
+/**
+ * Reads the rows of a cursor into {@link DatabaseClient} entities.
+ * <p>
+ * The column index and the type of every field are resolved once per entity
+ * class and cursor columns, so inflating a row is a loop of typed cursor reads
+ * and field writes.
+ * </p>
+ */
+final class EntityRowMapper {
+
+	static final int TYPE_BLOB = 5;
+	static final int TYPE_BOOLEAN = 4;
+	static final int TYPE_DOUBLE = 3;
+	static final int TYPE_ENTITY = 10;
+	static final int TYPE_FLOAT = 7;
+	static final int TYPE_INT = 6;
+	static final int TYPE_LONG = 1;
+	static final int TYPE_SHORT = 8;
+	static final int TYPE_STRING = 2;
+	static final int TYPE_TIMESTAMP = 9;
+
+	private static final ConcurrentMap<CursorColumnsKey, EntityRowMapper> mappers = new ConcurrentHashMap<CursorColumnsKey, EntityRowMapper>();
+
+	/**
+	 * Returns the mapper of an entity class for the columns of a cursor,
+	 * building it on first use
+	 * 
+	 * @param entity
+	 *            An entity of the class to map
+	 * @param cursor
+	 *            The cursor to read
+	 * @throws DBException
+	 *             If a field has no column or a type that cannot be read
+	 */
+	static EntityRowMapper forCursor(DatabaseClient entity, Cursor cursor)
+			throws DBException {
+		CursorColumnsKey key = new CursorColumnsKey(entity.getClass(),
+				cursor.getColumnNames());
+		EntityRowMapper mapper = mappers.get(key);
+		if (mapper == null) {
+			mapper = new EntityRowMapper(entity.getColumnFields(), cursor);
+			EntityRowMapper existing = mappers.putIfAbsent(key, mapper);
+			if (existing != null) {
+				mapper = existing;
+			}
+		}
+		return mapper;
+	}
+
+	/**
+	 * Returns the type code of a field type
+	 * 
+	 * @throws DBException
+	 *             If the type cannot be stored
+	 */
+	static int typeOf(Class<?> type) throws DBException {
+		if (type == long.class) {
+			return TYPE_LONG;
+		} else if (type == String.class) {
+			return TYPE_STRING;
+		} else if (type == double.class) {
+			return TYPE_DOUBLE;
+		} else if (type == boolean.class) {
+			return TYPE_BOOLEAN;
+		} else if (type == byte[].class) {
+			return TYPE_BLOB;
+		} else if (type == int.class) {
+			return TYPE_INT;
+		} else if (type == float.class) {
+			return TYPE_FLOAT;
+		} else if (type == short.class) {
+			return TYPE_SHORT;
+		} else if (type == Timestamp.class) {
+			return TYPE_TIMESTAMP;
+		} else if (type.getSuperclass() == DatabaseClient.class) {
+			return TYPE_ENTITY;
+		}
+		throw new DBException("Class cannot be read from Sqlite3 database.");
+	}
+
+	private final int[] columns;
+	private final Field[] fields;
+	/** Whether some fields reference other entities */
+	final boolean hasReferences;
+	private final int[] types;
+
+	private EntityRowMapper(List<Field> columnFields, Cursor cursor)
+			throws DBException {
+		int size = columnFields.size();
+		fields = new Field[size];
+		columns = new int[size];
+		types = new int[size];
+		boolean references = false;
+		for (int i = 0; i < size; i++) {
+			Field field = columnFields.get(i);
+			String colName = WordUtils.toSQLName(field.getName());
+			int column = cursor.getColumnIndex(colName);
+			if (column < 0) {
+				throw new DBException("No column " + colName);
+			}
+			int type = typeOf(field.getType());
+			references |= type == TYPE_ENTITY;
+			fields[i] = field;
+			columns[i] = column;
+			types[i] = type;
+		}
+		hasReferences = references;
+	}
+
+	/**
+	 * Sets the fields of an entity from the current row
+	 * 
+	 * @param references
+	 *            Receives the ids of the referenced entities, to be loaded by
+	 *            the caller
+	 */
+	void inflate(DatabaseClient entity, Cursor cursor,
+			Map<Field, Long> references) throws IllegalAccessException {
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			int column = columns[i];
+			switch (types[i]) {
+			case TYPE_LONG:
+				field.setLong(entity, cursor.getLong(column));
+				break;
+			case TYPE_STRING:
+				String val = cursor.getString(column);
+				field.set(entity, "null".equals(val) ? null : val);
+				break;
+			case TYPE_DOUBLE:
+				field.setDouble(entity, cursor.getDouble(column));
+				break;
+			case TYPE_BOOLEAN:
+				field.setBoolean(entity, "true".equals(cursor.getString(column)));
+				break;
+			case TYPE_BLOB:
+				field.set(entity, cursor.getBlob(column));
+				break;
+			case TYPE_INT:
+				field.setInt(entity, cursor.getInt(column));
+				break;
+			case TYPE_FLOAT:
+				field.setFloat(entity, cursor.getFloat(column));
+				break;
+			case TYPE_SHORT:
+				field.setShort(entity, cursor.getShort(column));
+				break;
+			case TYPE_TIMESTAMP:
+				field.set(entity, new Timestamp(cursor.getLong(column)));
+				break;
+			case TYPE_ENTITY:
+				long id = cursor.getLong(column);
+				if (id > 0)
+					references.put(field, id);
+				else
+					field.set(entity, null);
+				break;
+			}
+		}
+	}
+}
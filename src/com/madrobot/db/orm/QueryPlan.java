@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The plan of a query, as reported by SQLite <code>EXPLAIN QUERY PLAN</code>.
+ * <p>
+ * A step reading a whole table, or a whole index, is a full scan: the query
+ * time grows with the size of the table. Use it to catch queries missing an
+ * index in tests:
+ * 
+ * <pre>
+ * QueryPlan plan = client.explainFind(Order.class, &quot;customer = ?&quot;,
+ * 		new String[] { &quot;1&quot; });
+ * assertFalse(plan.toString(), plan.hasFullScan());
+ * </pre>
+ * 
+ * </p>
+ * 
+ * @see Database#explainQueryPlan(String, String[])
+ */
+public final class QueryPlan {
+
+	private final List<String> fullScans;
+	private final String sql;
+	private final List<String> steps;
+
+	QueryPlan(String sql, List<String> steps) {
+		this.sql = sql;
+		this.steps = Collections.unmodifiableList(steps);
+		List<String> scans = new ArrayList<String>();
+		for (String step : steps) {
+			if (isFullScan(step))
+				scans.add(step);
+		}
+		this.fullScans = Collections.unmodifiableList(scans);
+	}
+
+	/**
+	 * Whether a step reads a whole table or index, as "SCAN TABLE orders" or
+	 * "SCAN orders" depending on the SQLite version, unlike the searches
+	 * ("SEARCH orders USING INDEX ..."). SQLite before 3.7.6 (Android API 8
+	 * to 15) reports a full scan as a bare "TABLE orders" and a search as
+	 * "TABLE orders WITH INDEX ...", "TABLE orders USING PRIMARY KEY" or
+	 * "TABLE orders VIA MULTI-INDEX UNION".
+	 */
+	private static boolean isFullScan(String step) {
+		if (step.startsWith("SCAN "))
+			return true;
+		return step.startsWith("TABLE ") && step.indexOf(" WITH INDEX ") < 0
+				&& step.indexOf(" WITH AUTOMATIC INDEX") < 0
+				&& step.indexOf("PRIMARY KEY") < 0
+				&& step.indexOf(" VIA ") < 0;
+	}
+
+	/**
+	 * Returns the steps reading a whole table or index
+	 * 
+	 * @return the full scan steps, empty if there is none
+	 */
+	public List<String> getFullScans() {
+		return fullScans;
+	}
+
+	/**
+	 * Returns the explained query
+	 * 
+	 * @return the SQL of the query
+	 */
+	public String getSQL() {
+		return sql;
+	}
+
+	/**
+	 * Returns the steps of the plan
+	 * 
+	 * @return the detail of each step, in the order of the plan
+	 */
+	public List<String> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Whether the query reads a whole table or index
+	 * 
+	 * @return true if a step is a full scan
+	 */
+	public boolean hasFullScan() {
+		return !fullScans.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(sql);
+		for (String step : steps) {
+			sb.append("\n  ").append(step);
+		}
+		return sb.toString();
+	}
+}
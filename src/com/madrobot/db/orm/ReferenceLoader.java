@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+
+import com.madrobot.db.DBException;
+
+/**
+ * Loads the entities referenced by a set of entities in one query per
+ * referenced class, instead of one query per reference.
+ * <p>
+ * References are collected while the rows are read, then {@link #load}
+ * fetches the missing entities with <code>_id IN (...)</code> queries and sets
+ * the reference fields. The references of the loaded entities are loaded the
+ * same way, one level at a time.
+ * </p>
+ */
+final class ReferenceLoader {
+
+	/** Ids per IN query, below the 999 parameters limit of SQLite */
+	private static final int MAX_IDS_PER_QUERY = 500;
+
+	private final Map<Class<? extends DatabaseClient>, Set<Long>> ids = new LinkedHashMap<Class<? extends DatabaseClient>, Set<Long>>();
+	private final List<Field> fields = new ArrayList<Field>();
+	private final List<Long> referencedIds = new ArrayList<Long>();
+	private final List<DatabaseClient> entities = new ArrayList<DatabaseClient>();
+
+	/**
+	 * Adds the references of an entity
+	 * 
+	 * @param entity
+	 *            The entity
+	 * @param references
+	 *            The id referenced by each field
+	 */
+	@SuppressWarnings("unchecked")
+	void add(DatabaseClient entity, Map<Field, Long> references) {
+		for (Map.Entry<Field, Long> reference : references.entrySet()) {
+			Field field = reference.getKey();
+			Long id = reference.getValue();
+			Class<? extends DatabaseClient> type = (Class<? extends DatabaseClient>) field
+					.getType();
+			Set<Long> typeIds = ids.get(type);
+			if (typeIds == null) {
+				typeIds = new LinkedHashSet<Long>();
+				ids.put(type, typeIds);
+			}
+			typeIds.add(id);
+			entities.add(entity);
+			fields.add(field);
+			referencedIds.add(id);
+		}
+	}
+
+	/**
+	 * Adds the lazy references of an entity that are not loaded yet, if any,
+	 * and clears them from the entity
+	 */
+	void addPending(DatabaseClient entity) {
+		if (entity.m_ReferenceIDs != null) {
+			add(entity, entity.m_ReferenceIDs);
+			entity.m_ReferenceIDs = null;
+		}
+	}
+
+	boolean isEmpty() {
+		return fields.isEmpty();
+	}
+
+	/**
+	 * Loads the referenced entities that are not in memory yet and sets the
+	 * reference fields
+	 * 
+	 * @param client
+	 *            The client whose database and settings are used
+	 * @throws DBException
+	 */
+	void load(DatabaseClient client) throws DBException {
+		// Strong references to the loaded entities, the entities map is weak
+		Map<Class<? extends DatabaseClient>, Map<Long, DatabaseClient>> loaded = new HashMap<Class<? extends DatabaseClient>, Map<Long, DatabaseClient>>();
+		ReferenceLoader next = new ReferenceLoader();
+		for (Map.Entry<Class<? extends DatabaseClient>, Set<Long>> entry : ids
+				.entrySet()) {
+			Class<? extends DatabaseClient> type = entry.getKey();
+			Map<Long, DatabaseClient> typeEntities = new HashMap<Long, DatabaseClient>();
+			loaded.put(type, typeEntities);
+			List<Long> missing = new ArrayList<Long>();
+			for (Long id : entry.getValue()) {
+				DatabaseClient entity = DatabaseClient.s_EntitiesMap.get(
+						client.m_Database, type, id);
+				if (entity != null) {
+					typeEntities.put(id, entity);
+					// Read lazily by another client
+					next.addPending(entity);
+				} else
+					missing.add(id);
+			}
+			for (int i = 0; i < missing.size(); i += MAX_IDS_PER_QUERY) {
+				query(client, type,
+						missing.subList(i,
+								Math.min(missing.size(), i + MAX_IDS_PER_QUERY)),
+						typeEntities, next);
+			}
+		}
+
+		if (!next.isEmpty())
+			next.load(client);
+
+		try {
+			for (int i = 0; i < fields.size(); i++) {
+				Field field = fields.get(i);
+				field.set(entities.get(i), loaded.get(field.getType()).get(
+						referencedIds.get(i)));
+			}
+		} catch (IllegalArgumentException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
+		}
+	}
+
+	private void query(DatabaseClient client,
+			Class<? extends DatabaseClient> type, List<Long> typeIds,
+			Map<Long, DatabaseClient> typeEntities, ReferenceLoader next)
+			throws DBException {
+		DatabaseClient entity;
+		try {
+			entity = type.newInstance();
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (InstantiationException e) {
+			throw new DBException(e.getLocalizedMessage());
+		}
+		StringBuilder where = new StringBuilder("_id IN (");
+		String[] args = new String[typeIds.size()];
+		Iterator<Long> it = typeIds.iterator();
+		for (int i = 0; i < args.length; i++) {
+			where.append(i == 0 ? "?" : ",?");
+			args[i] = String.valueOf(it.next());
+		}
+		where.append(')');
+
+		Cursor c = client.m_Database.query(entity.getTableName(), null,
+				where.toString(), args);
+		try {
+			EntityRowMapper mapper = null;
+			while (c.moveToNext()) {
+				entity = type.newInstance();
+				if (mapper == null)
+					mapper = EntityRowMapper.forCursor(entity, c);
+				client.initEntity(entity);
+				entity.inflate(c, mapper, next);
+				typeEntities.put(entity._id, entity);
+			}
+		} catch (IllegalAccessException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} catch (InstantiationException e) {
+			throw new DBException(e.getLocalizedMessage());
+		} finally {
+			c.close();
+		}
+	}
+}
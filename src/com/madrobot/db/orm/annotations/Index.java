@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.db.orm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.madrobot.db.orm.DatabaseBuilder;
+
+/**
+ * Annotation to index the column of an entity field. <br/>
+ * Fields annotated with the same index name form a composite index, with the
+ * columns sorted by {@link #order()}, which must differ between the columns
+ * of a composite index. Indexes are created with the tables by
+ * {@link DatabaseBuilder}, and the missing ones when the database is opened.
+ * 
+ * <pre>
+ * public class Order extends DatabaseClient {
+ * 	&#064;Index
+ * 	public Customer customer;
+ * 	&#064;Index(name = &quot;order_date_status&quot;, order = 0)
+ * 	public long date;
+ * 	&#064;Index(name = &quot;order_date_status&quot;, order = 1)
+ * 	public String status;
+ * }
+ * </pre>
+ * 
+ * @see DatabaseBuilder#addIndex(Class, boolean, String...)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD })
+public @interface Index {
+
+	/**
+	 * Represent the index name, by default &lt;table&gt;_&lt;column&gt;_idx
+	 * 
+	 * @return index name
+	 */
+	String name() default "";
+
+	/**
+	 * Position of the column in a composite index. The order of the declared
+	 * fields is not defined by the virtual machine, so the columns of a
+	 * composite index are sorted by this value.
+	 * 
+	 * @return the position of the column, from 0
+	 */
+	int order() default 0;
+
+	/**
+	 * Whether the indexed values are unique
+	 * 
+	 * @return true for a unique index
+	 */
+	boolean unique() default false;
+}
@@ -60,41 +60,69 @@ public final class Converter {
 	}
 
 	public static Object convertTo(final JSONObject jsonObject, final String fieldName, final Class<?> clz, final Field field) {
+		return convertTo(jsonObject.opt(fieldName), clz, field);
+	}
+
+	/**
+	 * Converts a JSON value to the type of a field, with the same rules as the
+	 * <code>opt</code> methods of {@link JSONObject}.
+	 * 
+	 * @param jsonValue
+	 *            {@link String}, {@link Number}, {@link Boolean}, {@link JSONObject#NULL} or null if the value is
+	 *            missing
+	 * @param clz
+	 *            Target type to be converted to
+	 * @param field
+	 *            Field whose annotations describe the format of the value
+	 * @return Converted value, if converstion was possible, null otherwise
+	 */
+	public static Object convertTo(final Object jsonValue, final Class<?> clz, final Field field) {
 
 		Object value = null;
 
 		if (clzTypeKeyMap.containsKey(clz)) {
+			String stringValue = jsonValue == null ? "" : jsonValue.toString();
 			try {
 				final int code = clzTypeKeyMap.get(clz);
 				switch (code) {
 				case TYPE_STRING:
-					value = jsonObject.optString(fieldName);
+					value = stringValue;
 					break;
 				case TYPE_SHORT:
-					value = Short.parseShort(jsonObject.optString(fieldName, "0"));
+					value = Short.parseShort(jsonValue == null ? "0" : stringValue);
 					break;
 				case TYPE_INT:
-					value = jsonObject.optInt(fieldName);
+					if (jsonValue instanceof Number) {
+						value = ((Number) jsonValue).intValue();
+					} else {
+						value = (int) toDouble(jsonValue, 0);
+					}
 					break;
 				case TYPE_LONG:
-					value = jsonObject.optLong(fieldName);
+					if (jsonValue instanceof Number) {
+						value = ((Number) jsonValue).longValue();
+					} else if (jsonValue instanceof String && isIntegral((String) jsonValue)) {
+						// Avoid the precision loss of the double conversion
+						value = Long.parseLong((String) jsonValue);
+					} else {
+						value = (long) toDouble(jsonValue, 0);
+					}
 					break;
 				case TYPE_CHAR:
-					String chatValue = jsonObject.optString(fieldName);
-					if (chatValue.length() > 0) {
-						value = chatValue.charAt(0);
+					if (stringValue.length() > 0) {
+						value = stringValue.charAt(0);
 					} else {
 						value = '\0';
 					}
 					break;
 				case TYPE_FLOAT:
-					value = Float.parseFloat(jsonObject.optString(fieldName, "0.0f"));
+					value = Float.parseFloat(jsonValue == null ? "0.0f" : stringValue);
 					break;
 				case TYPE_DOUBLE:
-					value = jsonObject.optDouble(fieldName);
+					value = toDouble(jsonValue, Double.NaN);
 					break;
 				case TYPE_BOOLEAN:
-					value = jsonObject.optString(fieldName);
+					value = stringValue;
 					if (field.isAnnotationPresent(BooleanFormat.class)) {
 						BooleanFormat formatAnnotation = field.getAnnotation(BooleanFormat.class);
 						String trueFormat = formatAnnotation.trueFormat();
@@ -112,7 +140,7 @@ public final class Converter {
 					}
 					break;
 				case TYPE_DATE:
-					value = DateFormat.getDateInstance().parse(jsonObject.optString(fieldName));
+					value = DateFormat.getDateInstance().parse(stringValue);
 					break;
 				}
 			} catch (NumberFormatException e) {
@@ -180,6 +208,20 @@ public final class Converter {
 		return value;
 	}
 
+	private static boolean isIntegral(String value) {
+		int length = value.length();
+		if (length == 0 || length > 18) {
+			return false;
+		}
+		for (int i = value.charAt(0) == '-' ? 1 : 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return length > 1 || value.charAt(0) != '-';
+	}
+
 	public static boolean isBoolean(final Class<?> clz) {
 		Integer type = clzTypeKeyMap.get(clz);
 		if (type != null && type == TYPE_BOOLEAN)
@@ -245,6 +287,20 @@ public final class Converter {
 		}
 	}
 
+	private static double toDouble(final Object jsonValue, final double fallback) {
+		if (jsonValue instanceof Number) {
+			return ((Number) jsonValue).doubleValue();
+		}
+		if (jsonValue instanceof String) {
+			try {
+				return Double.parseDouble((String) jsonValue);
+			} catch (NumberFormatException e) {
+				return fallback;
+			}
+		}
+		return fallback;
+	}
+
 	private Converter() {
 	}
 }
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.madrobot.di.csv.annotations.CSVColumn;
+import com.madrobot.reflect.ClassUtils;
+
+/**
+ * Reads CSV rows into beans.
+ * <p>
+ * The columns are matched to the fields of the bean once, from the header row or from the given header: a column
+ * binds to the field annotated with {@link CSVColumn} of the same name, or else to the field of the same name,
+ * ignoring case if there is no exact match. Unmatched columns are ignored. Fields are set directly, without setters,
+ * and primitive fields without boxing. The field types are those of {@link com.madrobot.di.Converter}.
+ * </p>
+ * <p>
+ * Values that cannot be converted are logged and, like the columns missing from a row, leave their field unchanged.
+ * </p>
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * CSVBeanReader&lt;Trade&gt; reader = new CSVBeanReader&lt;Trade&gt;(Trade.class, new FileReader(&quot;trades.csv&quot;));
+ * Trade trade = new Trade();
+ * while (reader.read(trade)) {
+ * 	total += trade.amount;
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * </p>
+ *
+ * @param <T>
+ *            Type of the beans
+ */
+public class CSVBeanReader<T> implements Closeable {
+
+	public static final String TAG = "MadRobot -> CSVBeanReader";
+
+	/** Binding of each column, null for the unmatched columns */
+	private CSVColumnBinding[] columns;
+	private String[] header;
+	private final CSVRowReader reader;
+	private final Class<T> type;
+
+	/**
+	 * Constructs CSVBeanReader reading the header from the first row, with the default CSV options.
+	 *
+	 * @param type
+	 *            the bean class
+	 * @param reader
+	 *            the reader to an underlying CSV source.
+	 */
+	public CSVBeanReader(Class<T> type, Reader reader) {
+		this(type, new CSVRowReader(reader), null);
+	}
+
+	/**
+	 * Constructs CSVBeanReader.
+	 *
+	 * @param type
+	 *            the bean class
+	 * @param reader
+	 *            the CSV reader
+	 * @param header
+	 *            the names of the columns, or null to read them from the first row
+	 */
+	public CSVBeanReader(Class<T> type, CSVRowReader reader, String[] header) {
+		this.type = type;
+		this.reader = reader;
+		this.header = header;
+	}
+
+	/**
+	 * Closes the underlying reader.
+	 *
+	 * @throws IOException
+	 *             if the close fails
+	 */
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Returns the names of the columns
+	 *
+	 * @return the header, or null if the source is empty
+	 * @throws IOException
+	 *             if bad things happen while reading the header
+	 */
+	public String[] getHeader() throws IOException {
+		resolveColumns();
+		return header;
+	}
+
+	/**
+	 * Inserts the rows in a table, without creating beans. The table columns are named after the CSV columns bound
+	 * to a field, and the values are bound with the SQLite type of the field. Rows are inserted with a single
+	 * compiled statement, in one transaction per batch: if an insert fails, the batches before it are kept.
+	 *
+	 * @param db
+	 *            the database
+	 * @param table
+	 *            the table
+	 * @param batchSize
+	 *            the number of rows per transaction
+	 * @return the number of rows inserted
+	 * @throws IOException
+	 *             if bad things happen during the read
+	 */
+	public long insertInto(SQLiteDatabase db, String table, int batchSize) throws IOException {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize <= 0");
+		}
+		resolveColumns();
+		int[] indexes = new int[columns.length];
+		int count = 0;
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] != null) {
+				if (count > 0) {
+					sql.append(',');
+				}
+				sql.append(header[i].trim());
+				indexes[count++] = i;
+			}
+		}
+		if (count == 0) {
+			return 0;
+		}
+		sql.append(") VALUES (?");
+		for (int i = 1; i < count; i++) {
+			sql.append(",?");
+		}
+		sql.append(')');
+
+		SQLiteStatement statement = db.compileStatement(sql.toString());
+		long inserted = 0;
+		db.beginTransaction();
+		try {
+			CSVRow row;
+			while ((row = reader.readRow()) != null) {
+				statement.clearBindings();
+				for (int i = 0; i < count; i++) {
+					int index = indexes[i];
+					if (index >= row.size()) {
+						statement.bindNull(i + 1);
+						continue;
+					}
+					try {
+						columns[index].bind(statement, i + 1, row, index);
+					} catch (NumberFormatException e) {
+						logError(row, index, e);
+						statement.bindNull(i + 1);
+					} catch (ParseException e) {
+						logError(row, index, e);
+						statement.bindNull(i + 1);
+					}
+				}
+				statement.executeInsert();
+				if (++inserted % batchSize == 0) {
+					db.setTransactionSuccessful();
+					db.endTransaction();
+					db.beginTransaction();
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+			statement.close();
+		}
+		return inserted;
+	}
+
+	private void logError(CSVRow row, int index, Exception e) {
+		Log.e(TAG, "Row " + row.getLineNumber() + ", column " + header[index] + ": " + e.getMessage());
+	}
+
+	/**
+	 * Reads the next row into a new bean.
+	 *
+	 * @return the bean, or null at the end of the source
+	 * @throws IOException
+	 *             if bad things happen during the read
+	 */
+	public T read() throws IOException {
+		T bean = ClassUtils.newInstance(type);
+		return read(bean) ? bean : null;
+	}
+
+	/**
+	 * Reads the next row into an existing bean. Reusing a bean saves one allocation per row.
+	 *
+	 * @param bean
+	 *            the bean to set
+	 * @return false at the end of the source
+	 * @throws IOException
+	 *             if bad things happen during the read
+	 */
+	public boolean read(T bean) throws IOException {
+		resolveColumns();
+		CSVRow row = reader.readRow();
+		if (row == null) {
+			return false;
+		}
+		int size = Math.min(row.size(), columns.length);
+		for (int i = 0; i < size; i++) {
+			CSVColumnBinding column = columns[i];
+			if (column == null) {
+				continue;
+			}
+			try {
+				column.set(bean, row, i);
+			} catch (NumberFormatException e) {
+				logError(row, i, e);
+			} catch (ParseException e) {
+				logError(row, i, e);
+			} catch (IllegalAccessException e) {
+				logError(row, i, e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the entire source into a List of beans.
+	 *
+	 * @return the beans, one per row
+	 * @throws IOException
+	 *             if bad things happen during the read
+	 */
+	public List<T> readAll() throws IOException {
+		List<T> beans = new ArrayList<T>();
+		T bean;
+		while ((bean = read()) != null) {
+			beans.add(bean);
+		}
+		return beans;
+	}
+
+	private void resolveColumns() throws IOException {
+		if (columns != null) {
+			return;
+		}
+		if (header == null) {
+			CSVRow row = reader.readRow();
+			if (row == null) {
+				columns = new CSVColumnBinding[0];
+				return;
+			}
+			header = row.toArray();
+		}
+
+		Field[] fields = type.getDeclaredFields();
+		Map<String, CSVColumnBinding> bindings = new HashMap<String, CSVColumnBinding>();
+		Map<String, CSVColumnBinding> lowerCaseBindings = new HashMap<String, CSVColumnBinding>();
+		for (Field field : fields) {
+			CSVColumnBinding binding = CSVColumnBinding.forField(field);
+			if (binding != null) {
+				// A header resolves to the first field named or annotated with it
+				if (!bindings.containsKey(binding.key)) {
+					bindings.put(binding.key, binding);
+				}
+				String lowerCaseKey = binding.key.toLowerCase(Locale.US);
+				if (!lowerCaseBindings.containsKey(lowerCaseKey)) {
+					lowerCaseBindings.put(lowerCaseKey, binding);
+				}
+			}
+		}
+
+		CSVColumnBinding[] resolved = new CSVColumnBinding[header.length];
+		for (int i = 0; i < header.length; i++) {
+			String name = header[i].trim();
+			CSVColumnBinding binding = bindings.get(name);
+			if (binding == null) {
+				binding = lowerCaseBindings.get(name.toLowerCase(Locale.US));
+			}
+			if (binding == null) {
+				Log.d(TAG, "No field for column " + name);
+			}
+			resolved[i] = binding;
+		}
+		columns = resolved;
+	}
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.csv;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import android.database.sqlite.SQLiteStatement;
+
+import com.madrobot.di.Converter;
+import com.madrobot.di.csv.annotations.CSVColumn;
+import com.madrobot.di.wizard.json.annotations.BooleanFormat;
+
+/**
+ * Converter of one CSV column to a bean field, resolved once per reader.
+ * <p>
+ * Supports the types of {@link Converter}. Primitive fields are set with the typed {@link Field} setters so values
+ * are never boxed, and numbers are parsed from the row buffer when possible. Booleans and dates honor
+ * {@link BooleanFormat} and {@link com.madrobot.di.wizard.json.annotations.DateFormat} as JSON binding does.
+ * </p>
+ */
+final class CSVColumnBinding {
+
+	private static final int TYPE_BOOLEAN = 8;
+	private static final int TYPE_CHAR = 5;
+	private static final int TYPE_DATE = 9;
+	private static final int TYPE_DOUBLE = 7;
+	private static final int TYPE_FLOAT = 6;
+	private static final int TYPE_INT = 3;
+	private static final int TYPE_LONG = 4;
+	private static final int TYPE_SHORT = 2;
+	private static final int TYPE_STRING = 1;
+
+	/**
+	 * Creates the binding of a field
+	 *
+	 * @return the binding, or null if the field cannot be bound
+	 */
+	static CSVColumnBinding forField(Field field) {
+		int modifiers = field.getModifiers();
+		if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+			return null;
+		}
+		Class<?> type = field.getType();
+		if (!Converter.isPseudoPrimitive(type)) {
+			return null;
+		}
+		int code;
+		if (type == String.class) {
+			code = TYPE_STRING;
+		} else if (type == short.class) {
+			code = TYPE_SHORT;
+		} else if (type == int.class) {
+			code = TYPE_INT;
+		} else if (type == long.class) {
+			code = TYPE_LONG;
+		} else if (type == char.class) {
+			code = TYPE_CHAR;
+		} else if (type == float.class) {
+			code = TYPE_FLOAT;
+		} else if (type == double.class) {
+			code = TYPE_DOUBLE;
+		} else if (type == boolean.class) {
+			code = TYPE_BOOLEAN;
+		} else {
+			code = TYPE_DATE;
+		}
+		field.setAccessible(true);
+		return new CSVColumnBinding(field, code);
+	}
+
+	private final DateFormat dateFormat;
+	private final String falseFormat;
+	private final Field field;
+	/** CSV header of the field */
+	final String key;
+	private final String trueFormat;
+	private final int type;
+
+	private CSVColumnBinding(Field field, int type) {
+		this.field = field;
+		this.type = type;
+		CSVColumn column = field.getAnnotation(CSVColumn.class);
+		this.key = column != null ? column.value() : field.getName();
+
+		BooleanFormat booleanFormat = field.getAnnotation(BooleanFormat.class);
+		this.trueFormat = booleanFormat != null ? booleanFormat.trueFormat() : null;
+		this.falseFormat = booleanFormat != null ? booleanFormat.falseFormat() : null;
+
+		if (type == TYPE_DATE) {
+			com.madrobot.di.wizard.json.annotations.DateFormat format = field
+					.getAnnotation(com.madrobot.di.wizard.json.annotations.DateFormat.class);
+			this.dateFormat = format != null ? new SimpleDateFormat(format.format()) : DateFormat.getDateInstance();
+		} else {
+			this.dateFormat = null;
+		}
+	}
+
+	/**
+	 * Binds the value of a column to an insert statement, with the SQLite type matching the field type
+	 *
+	 * @throws NumberFormatException
+	 *             if a number cannot be parsed
+	 * @throws ParseException
+	 *             if a date cannot be parsed
+	 */
+	void bind(SQLiteStatement statement, int parameter, CSVRow row, int index) throws ParseException {
+		if (row.getLength(index) == 0 && type != TYPE_STRING) {
+			statement.bindNull(parameter);
+			return;
+		}
+		switch (type) {
+		case TYPE_STRING:
+		case TYPE_CHAR:
+			statement.bindString(parameter, type == TYPE_STRING ? row.getString(index) : String.valueOf(row.get(index)
+					.charAt(0)));
+			break;
+		case TYPE_SHORT:
+			statement.bindLong(parameter, toShort(row, index));
+			break;
+		case TYPE_INT:
+			statement.bindLong(parameter, row.getInt(index));
+			break;
+		case TYPE_LONG:
+			statement.bindLong(parameter, row.getLong(index));
+			break;
+		case TYPE_FLOAT:
+		case TYPE_DOUBLE:
+			statement.bindDouble(parameter, row.getDouble(index));
+			break;
+		case TYPE_BOOLEAN:
+			statement.bindLong(parameter, toBoolean(row, index) ? 1 : 0);
+			break;
+		case TYPE_DATE:
+			statement.bindLong(parameter, dateFormat.parse(row.getString(index)).getTime());
+			break;
+		}
+	}
+
+	/**
+	 * Sets the field of a bean from a column. An empty column resets the field to its default value, except for
+	 * Strings that are set to the empty String.
+	 *
+	 * @throws NumberFormatException
+	 *             if a number cannot be parsed
+	 * @throws ParseException
+	 *             if a date cannot be parsed
+	 */
+	void set(Object bean, CSVRow row, int index) throws IllegalAccessException, ParseException {
+		boolean empty = row.getLength(index) == 0;
+		switch (type) {
+		case TYPE_STRING:
+			field.set(bean, row.getString(index));
+			break;
+		case TYPE_SHORT:
+			field.setShort(bean, empty ? 0 : toShort(row, index));
+			break;
+		case TYPE_INT:
+			field.setInt(bean, empty ? 0 : row.getInt(index));
+			break;
+		case TYPE_LONG:
+			field.setLong(bean, empty ? 0L : row.getLong(index));
+			break;
+		case TYPE_CHAR:
+			field.setChar(bean, empty ? '\0' : row.get(index).charAt(0));
+			break;
+		case TYPE_FLOAT:
+			field.setFloat(bean, empty ? 0f : Float.parseFloat(row.getString(index)));
+			break;
+		case TYPE_DOUBLE:
+			field.setDouble(bean, empty ? 0d : row.getDouble(index));
+			break;
+		case TYPE_BOOLEAN:
+			field.setBoolean(bean, !empty && toBoolean(row, index));
+			break;
+		case TYPE_DATE:
+			field.set(bean, empty ? null : dateFormat.parse(row.getString(index)));
+			break;
+		}
+	}
+
+	private boolean toBoolean(CSVRow row, int index) throws ParseException {
+		if (trueFormat == null) {
+			return row.getLength(index) == 4 && "true".equalsIgnoreCase(row.getString(index));
+		}
+		if (row.contentEquals(index, trueFormat)) {
+			return true;
+		} else if (row.contentEquals(index, falseFormat)) {
+			return false;
+		}
+		throw new ParseException("Expecting " + trueFormat + " / " + falseFormat + " but its " + row.getString(index), 0);
+	}
+
+	private short toShort(CSVRow row, int index) {
+		int value = row.getInt(index);
+		if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+			throw new NumberFormatException("Value out of range: " + row.getString(index));
+		}
+		return (short) value;
+	}
+}
@@ -0,0 +1,556 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CSV reader parsing large sources on several threads.
+ * <p>
+ * The calling thread reads the source in chunks of bytes and cuts each chunk at the last record boundary, following
+ * quotes so that line breaks inside quoted fields never split a record. The chunks are parsed by a pool of worker
+ * threads with {@link CSVRowReader}. Only a few chunks are in flight at once, so the memory used does not grow with
+ * the size of the source.
+ * </p>
+ * <p>
+ * In ordered mode the rows come out in the order of the source. In unordered mode the rows of each chunk stay
+ * together but the chunks come out as soon as they are parsed.
+ * </p>
+ * <p>
+ * The charset must encode line breaks, the separator, the quote and the escape characters as single ASCII bytes, like
+ * UTF-8 or ISO-8859-1 do.
+ * </p>
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * CSVParallelReader reader = new CSVParallelReader(new File(&quot;data.csv&quot;), false);
+ * try {
+ * 	for (String[] row : reader) {
+ * 		insert(row);
+ * 	}
+ * } finally {
+ * 	reader.close();
+ * }
+ * </pre>
+ *
+ * </p>
+ */
+public class CSVParallelReader implements Closeable, Iterable<String[]> {
+
+	/**
+	 * Parses one chunk on a worker thread
+	 */
+	private final class ChunkParser implements Callable<List<String[]>> {
+
+		private final byte[] bytes;
+		private final int length;
+		private final int offset;
+
+		ChunkParser(byte[] bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public List<String[]> call() throws IOException {
+			CharBuffer chars = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE).decode(ByteBuffer.wrap(bytes, offset, length));
+			CSVRowReader reader = new CSVRowReader(chars.array(), chars.arrayOffset() + chars.position(),
+					chars.remaining(), separator, quotechar, escape, strictQuotes, ignoreLeadingWhiteSpace);
+			List<String[]> rows = new ArrayList<String[]>();
+			CSVRow row;
+			while ((row = reader.readRow()) != null) {
+				rows.add(row.toArray());
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * Iterator over the rows, reading the source as it goes
+	 */
+	private final class RowIterator implements Iterator<String[]> {
+
+		private Iterator<String[]> current;
+
+		@Override
+		public boolean hasNext() {
+			while (current == null || !current.hasNext()) {
+				try {
+					List<String[]> rows = nextChunk();
+					if (rows == null) {
+						return false;
+					}
+					current = rows.iterator();
+				} catch (IOException e) {
+					throw new IllegalStateException("Could not read the CSV source", e);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String[] next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return current.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * The default size of the chunks handed to the worker threads.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+	/** Start of the last record found in the current chunk */
+	private int boundary;
+	private final Charset charset;
+	private byte[] chunk;
+	private int chunkLength;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private final CompletionService<List<String[]>> completionService;
+	/** Start of the data in the current chunk, after the skipped lines */
+	private int dataStart;
+	/** Whether nothing was added to the field being scanned */
+	private boolean emptyField;
+	private final char escape;
+	private final ExecutorService executor;
+	private final boolean ignoreLeadingWhiteSpace;
+	private final InputStream in;
+	private boolean inputDone;
+	private boolean inQuotes;
+	private boolean iterated;
+	private final int maxInFlight;
+	private int inFlight;
+	private boolean onlyWhiteSpace;
+	private final boolean ordered;
+	private boolean pendingEscape;
+	private boolean pendingLineFeed;
+	private boolean pendingQuote;
+	/** Chunks being parsed, in source order */
+	private final LinkedList<Future<List<String[]>>> pending = new LinkedList<Future<List<String[]>>>();
+	private final char quotechar;
+	/** End of the bytes of the current chunk already scanned */
+	private int scanned;
+	private final char separator;
+	private int skipRemaining;
+	private final boolean strictQuotes;
+
+	/**
+	 * Constructs CSVParallelReader reading a UTF-8 file with the default CSV options.
+	 *
+	 * @param file
+	 *            the CSV file
+	 * @param ordered
+	 *            if true, the rows are returned in the order of the file
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public CSVParallelReader(File file, boolean ordered) throws IOException {
+		this(new FileInputStream(file), Charset.forName("UTF-8"), ordered);
+	}
+
+	/**
+	 * Constructs CSVParallelReader with the default CSV options.
+	 *
+	 * @param in
+	 *            the CSV source
+	 * @param charset
+	 *            the charset of the source
+	 * @param ordered
+	 *            if true, the rows are returned in the order of the source
+	 */
+	public CSVParallelReader(InputStream in, Charset charset, boolean ordered) {
+		this(in, charset, CSVParser.DEFAULT_SEPARATOR, CSVParser.DEFAULT_QUOTE_CHARACTER,
+				CSVParser.DEFAULT_ESCAPE_CHARACTER, CSVReader.DEFAULT_SKIP_LINES, CSVParser.DEFAULT_STRICT_QUOTES,
+				CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE, ordered, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs CSVParallelReader with the options of {@link CSVReader}.
+	 *
+	 * @param in
+	 *            the CSV source
+	 * @param charset
+	 *            the charset of the source
+	 * @param separator
+	 *            the delimiter to use for separating entries
+	 * @param quotechar
+	 *            the character to use for quoted elements
+	 * @param escape
+	 *            the character to use for escaping a quote or itself, {@link CSVParser#NULL_CHARACTER} for none
+	 * @param line
+	 *            the line number to skip for start reading
+	 * @param strictQuotes
+	 *            sets if characters outside the quotes are ignored
+	 * @param ignoreLeadingWhiteSpace
+	 *            it true, parser should ignore white space before a quote in a field
+	 * @param ordered
+	 *            if true, the rows are returned in the order of the source
+	 * @param threads
+	 *            the number of worker threads
+	 */
+	public CSVParallelReader(
+			InputStream in,
+			Charset charset,
+			char separator,
+			char quotechar,
+			char escape,
+			int line,
+			boolean strictQuotes,
+			boolean ignoreLeadingWhiteSpace,
+			boolean ordered,
+			int threads) {
+		if (separator == quotechar || separator == escape || (quotechar == escape && escape != CSVParser.NULL_CHARACTER)) {
+			throw new UnsupportedOperationException("The separator, quote, and escape characters must be different!");
+		}
+		if (separator > 127 || quotechar > 127 || escape > 127 || "\r\n".getBytes(charset).length != 2) {
+			throw new IllegalArgumentException("The CSV special characters must be single bytes in " + charset.name());
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads <= 0");
+		}
+		this.in = in;
+		this.charset = charset;
+		this.separator = separator;
+		this.quotechar = quotechar;
+		this.escape = escape;
+		this.skipRemaining = line;
+		this.strictQuotes = strictQuotes;
+		this.ignoreLeadingWhiteSpace = ignoreLeadingWhiteSpace;
+		this.ordered = ordered;
+		this.maxInFlight = threads * 2;
+		this.emptyField = true;
+		this.onlyWhiteSpace = true;
+
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "CSVParallelReader #" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.completionService = ordered ? null : new ExecutorCompletionService<List<String[]>>(executor);
+	}
+
+	/**
+	 * Stops the worker threads and closes the source.
+	 *
+	 * @throws IOException
+	 *             if the close fails
+	 */
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		in.close();
+	}
+
+	/**
+	 * Ends a line at <code>end</code>
+	 */
+	private void endLine(int end) {
+		if (skipRemaining > 0) {
+			skipRemaining--;
+			dataStart = end;
+		} else {
+			boundary = end;
+		}
+		emptyField = true;
+		onlyWhiteSpace = true;
+	}
+
+	/**
+	 * Returns whether the rows are returned in the order of the source
+	 *
+	 * @return true in ordered mode
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Returns the rows, reading the source as they are iterated. Can only be called once.
+	 *
+	 * @return an iterator throwing {@link IllegalStateException} if the source cannot be read or parsed
+	 */
+	@Override
+	public Iterator<String[]> iterator() {
+		if (iterated) {
+			throw new IllegalStateException("The rows were already read");
+		}
+		iterated = true;
+		return new RowIterator();
+	}
+
+	/**
+	 * Returns the rows of the next parsed chunk, submitting chunks as needed
+	 *
+	 * @return the rows, or null at the end of the source
+	 */
+	private List<String[]> nextChunk() throws IOException {
+		while (inFlight < maxInFlight && !inputDone) {
+			submitChunk();
+		}
+		if (inFlight == 0) {
+			return null;
+		}
+		Future<List<String[]>> future;
+		try {
+			future = ordered ? pending.removeFirst() : completionService.take();
+			inFlight--;
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Reads the whole source, passing each row to a handler on the calling thread.
+	 *
+	 * @param handler
+	 *            the row handler
+	 * @return the number of rows passed to the handler
+	 * @throws IOException
+	 *             if bad things happen during the read
+	 */
+	public long read(CSVRowHandler handler) throws IOException {
+		if (iterated) {
+			throw new IllegalStateException("The rows were already read");
+		}
+		iterated = true;
+		long count = 0;
+		List<String[]> rows;
+		while ((rows = nextChunk()) != null) {
+			for (String[] row : rows) {
+				count++;
+				if (!handler.onRow(row)) {
+					return count;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the entire source into a List with each element being a String[] of tokens.
+	 *
+	 * @return a List of String[], with each String[] representing a line of the source.
+	 * @throws IOException
+	 *             if bad things happen during the read
+	 */
+	public List<String[]> readAll() throws IOException {
+		final List<String[]> allElements = new ArrayList<String[]>();
+		read(new CSVRowHandler() {
+
+			@Override
+			public boolean onRow(String[] row) {
+				allElements.add(row);
+				return true;
+			}
+		});
+		return allElements;
+	}
+
+	/**
+	 * Follows the quotes of the bytes read since the last call, the same way {@link CSVRowReader} does, to find the
+	 * record boundaries.
+	 */
+	private void scan() {
+		byte[] bytes = chunk;
+		for (int i = scanned; i < chunkLength; i++) {
+			int c = bytes[i] & 0xff;
+			if (pendingLineFeed) {
+				pendingLineFeed = false;
+				if (c == '\n') {
+					endLine(i + 1);
+					continue;
+				}
+				endLine(i);
+			}
+			if (skipRemaining > 0) {
+				if (c == '\n') {
+					endLine(i + 1);
+				} else if (c == '\r') {
+					pendingLineFeed = true;
+				}
+				continue;
+			}
+			if (pendingQuote) {
+				pendingQuote = false;
+				if (c == quotechar) {
+					// Embedded "" quote
+					emptyField = false;
+					continue;
+				}
+				inQuotes = false;
+			}
+			if (pendingEscape) {
+				pendingEscape = false;
+				if (c == quotechar || c == escape) {
+					if (inQuotes || !strictQuotes) {
+						emptyField = false;
+					}
+					continue;
+				}
+			}
+			if (c == quotechar) {
+				if (inQuotes) {
+					pendingQuote = true;
+				} else if (emptyField || (onlyWhiteSpace && ignoreLeadingWhiteSpace)) {
+					emptyField = true;
+					inQuotes = true;
+				} else if (!strictQuotes) {
+					emptyField = false;
+				}
+				onlyWhiteSpace = false;
+			} else if (c == escape) {
+				pendingEscape = true;
+				onlyWhiteSpace = false;
+			} else if (c == separator && !inQuotes) {
+				emptyField = true;
+				onlyWhiteSpace = true;
+			} else if ((c == '\n' || c == '\r') && !inQuotes) {
+				if (c == '\n') {
+					endLine(i + 1);
+				} else {
+					pendingLineFeed = true;
+				}
+			} else if (inQuotes || !strictQuotes) {
+				emptyField = false;
+				if (c != ' ' && c != '\t') {
+					onlyWhiteSpace = false;
+				}
+			}
+		}
+		scanned = chunkLength;
+	}
+
+	/**
+	 * Sets the size of the chunks handed to the worker threads. Must be called before reading.
+	 *
+	 * @param chunkSize
+	 *            the chunk size in bytes
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize <= 0");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Reads the source up to the next chunk of whole records and submits it for parsing
+	 */
+	private void submitChunk() throws IOException {
+		if (chunk == null) {
+			chunk = new byte[chunkSize];
+		}
+		int end;
+		while (true) {
+			if (chunkLength == chunk.length) {
+				if (boundary > dataStart) {
+					end = boundary;
+					break;
+				}
+				if (dataStart > 0) {
+					// Drop the skipped lines
+					System.arraycopy(chunk, dataStart, chunk, 0, chunkLength - dataStart);
+					chunkLength -= dataStart;
+					scanned -= dataStart;
+					boundary = 0;
+					dataStart = 0;
+				} else {
+					// The record does not fit
+					byte[] newChunk = new byte[chunk.length * 2];
+					System.arraycopy(chunk, 0, newChunk, 0, chunkLength);
+					chunk = newChunk;
+				}
+			}
+			int count = in.read(chunk, chunkLength, chunk.length - chunkLength);
+			if (count < 0) {
+				inputDone = true;
+				if (pendingLineFeed) {
+					pendingLineFeed = false;
+					endLine(chunkLength);
+				}
+				end = skipRemaining > 0 ? dataStart : chunkLength;
+				break;
+			}
+			chunkLength += count;
+			scan();
+		}
+
+		if (end > dataStart) {
+			Callable<List<String[]>> parser = new ChunkParser(chunk, dataStart, end - dataStart);
+			if (ordered) {
+				pending.add(executor.submit(parser));
+			} else {
+				completionService.submit(parser);
+			}
+			inFlight++;
+		}
+
+		// The rest of the bytes start the next chunk, the parsed chunk is not reused
+		int rest = chunkLength - end;
+		byte[] next = new byte[Math.max(chunkSize, rest * 2)];
+		System.arraycopy(chunk, end, next, 0, rest);
+		chunk = next;
+		chunkLength = rest;
+		scanned -= end;
+		boundary = 0;
+		dataStart = 0;
+	}
+}
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.csv;
+
+/**
+ * A row read by {@link CSVRowReader}.
+ * <p>
+ * The fields are slices of the reader's buffer: no String is created unless one is asked for with
+ * {@link #getString(int)} or {@link #toArray()}. The row object, and the {@link CharSequence} views returned by
+ * {@link #get(int)}, are reused: they are only valid until the next call to {@link CSVRowReader#readRow()}.
+ * </p>
+ */
+public final class CSVRow {
+
+	/**
+	 * Read-only view of one field
+	 */
+	private static final class Field implements CharSequence {
+
+		private final int index;
+		private final CSVRow row;
+
+		Field(CSVRow row, int index) {
+			this.row = row;
+			this.index = index;
+		}
+
+		@Override
+		public char charAt(int i) {
+			if (i < 0 || i >= length()) {
+				throw new IndexOutOfBoundsException("Index: " + i + ", length: " + length());
+			}
+			return row.buffer[row.starts[index] + i];
+		}
+
+		@Override
+		public int length() {
+			return row.ends[index] - row.starts[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return row.getString(index);
+		}
+	}
+
+	char[] buffer;
+	private int[] ends = new int[16];
+	private long lineNumber;
+	private int size;
+	private int[] starts = new int[16];
+	private Field[] views = new Field[16];
+
+	CSVRow() {
+	}
+
+	/**
+	 * Adds a field whose characters are at <code>[start, end)</code> in the reader's buffer
+	 */
+	void add(int start, int end) {
+		if (size == starts.length) {
+			int[] newStarts = new int[size * 2];
+			int[] newEnds = new int[size * 2];
+			Field[] newViews = new Field[size * 2];
+			System.arraycopy(starts, 0, newStarts, 0, size);
+			System.arraycopy(ends, 0, newEnds, 0, size);
+			System.arraycopy(views, 0, newViews, 0, size);
+			starts = newStarts;
+			ends = newEnds;
+			views = newViews;
+		}
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+	void clear(long lineNumber) {
+		this.lineNumber = lineNumber;
+		size = 0;
+	}
+
+	/**
+	 * Compares a field with a String without creating a String
+	 *
+	 * @param index
+	 *            the field index
+	 * @param value
+	 *            the value to compare with
+	 * @return true if the field has the same characters as the value
+	 */
+	public boolean contentEquals(int index, String value) {
+		checkIndex(index);
+		int start = starts[index];
+		int length = ends[index] - start;
+		if (length != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer[start + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a view of a field. The view is reused by the next rows.
+	 *
+	 * @param index
+	 *            the field index
+	 * @return the field characters
+	 */
+	public CharSequence get(int index) {
+		checkIndex(index);
+		Field view = views[index];
+		if (view == null) {
+			view = new Field(this, index);
+			views[index] = view;
+		}
+		return view;
+	}
+
+	/**
+	 * Parses a field as a decimal number
+	 *
+	 * @param index
+	 *            the field index
+	 * @return the value of the field
+	 * @throws NumberFormatException
+	 *             if the field is not a number
+	 */
+	public double getDouble(int index) {
+		return Double.parseDouble(getString(index));
+	}
+
+	/**
+	 * Parses a field as an int without creating a String
+	 *
+	 * @param index
+	 *            the field index
+	 * @return the value of the field
+	 * @throws NumberFormatException
+	 *             if the field is not an int
+	 */
+	public int getInt(int index) {
+		long value = getLong(index);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Value out of range: " + getString(index));
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Returns the number of characters of a field
+	 *
+	 * @param index
+	 *            the field index
+	 * @return the field length
+	 */
+	public int getLength(int index) {
+		checkIndex(index);
+		return ends[index] - starts[index];
+	}
+
+	/**
+	 * Returns the number of the row, counting from 1 after the skipped lines
+	 *
+	 * @return the row number
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Parses a field as a long without creating a String
+	 *
+	 * @param index
+	 *            the field index
+	 * @return the value of the field
+	 * @throws NumberFormatException
+	 *             if the field is not a long
+	 */
+	public long getLong(int index) {
+		checkIndex(index);
+		int start = starts[index];
+		int end = ends[index];
+		if (start == end) {
+			throw new NumberFormatException("Empty field " + index);
+		}
+		boolean negative = buffer[start] == '-';
+		int i = negative || buffer[start] == '+' ? start + 1 : start;
+		if (i == end || end - i > 18) {
+			// Let Long report the error, or parse the values near the limits
+			return Long.parseLong(getString(index));
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("For input string: \"" + getString(index) + "\"");
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Creates a String with the content of a field
+	 *
+	 * @param index
+	 *            the field index
+	 * @return the field value
+	 */
+	public String getString(int index) {
+		checkIndex(index);
+		return new String(buffer, starts[index], ends[index] - starts[index]);
+	}
+
+	/**
+	 * Moves the fields after the reader compacted its buffer
+	 */
+	void shift(int delta) {
+		for (int i = 0; i < size; i++) {
+			starts[i] -= delta;
+			ends[i] -= delta;
+		}
+	}
+
+	/**
+	 * Returns the number of fields
+	 *
+	 * @return the number of fields in the row
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates the String array {@link CSVReader#readNext()} would return for this row
+	 *
+	 * @return the field values
+	 */
+	public String[] toArray() {
+		String[] result = new String[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = getString(i);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(buffer, starts[i], ends[i] - starts[i]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.csv;
+
+/**
+ * Receives the rows of a CSV source one by one.
+ *
+ * @see CSVParallelReader#read(CSVRowHandler)
+ */
+public interface CSVRowHandler {
+
+	/**
+	 * Called for each row
+	 *
+	 * @param row
+	 *            the fields of the row
+	 * @return false to stop reading
+	 */
+	boolean onRow(String[] row);
+}
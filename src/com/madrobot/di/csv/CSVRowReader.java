@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * CSV reader scanning a reusable character buffer.
+ * <p>
+ * Unlike {@link CSVReader}, no line String, token list or String array is created per row: fields are unquoted in
+ * place in the buffer and handed out as a reused {@link CSVRow}. Strings are only created for the fields the caller
+ * asks for. Quoted fields may span several lines; line breaks inside them are read as <code>'\n'</code>.
+ * </p>
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * CSVRowReader reader = new CSVRowReader(new FileReader(&quot;data.csv&quot;));
+ * CSVRow row;
+ * while ((row = reader.readRow()) != null) {
+ * 	if (row.contentEquals(0, &quot;total&quot;)) {
+ * 		sum += row.getLong(1);
+ * 	}
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * </p>
+ */
+public class CSVRowReader implements Closeable {
+
+	/**
+	 * The default size of the character buffer. The buffer grows if a row does not fit in it.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+	private static final int END_OF_FIELD = 0;
+	private static final int END_OF_FILE = 2;
+	private static final int END_OF_ROW = 1;
+
+	private char[] buffer;
+	private boolean eof;
+	private final char escape;
+	/** Start of the field being read */
+	private int fieldStart;
+	private final boolean ignoreLeadingWhiteSpace;
+	private int limit;
+	private long lineNumber;
+	private boolean linesSkiped;
+	private int pos;
+	private final char quotechar;
+	private final Reader reader;
+	private final CSVRow row = new CSVRow();
+	/** Start of the row being read, the characters before it can be discarded */
+	private int rowStart;
+	private final char separator;
+	private final int skipLines;
+	private final boolean strictQuotes;
+	/** End of the unquoted content of the field being read, never after pos */
+	private int write;
+
+	/**
+	 * Constructs CSVRowReader using a comma for the separator.
+	 *
+	 * @param reader
+	 *            the reader to an underlying CSV source.
+	 */
+	public CSVRowReader(Reader reader) {
+		this(reader, CSVParser.DEFAULT_SEPARATOR);
+	}
+
+	/**
+	 * Constructs CSVRowReader with supplied separator.
+	 *
+	 * @param reader
+	 *            the reader to an underlying CSV source.
+	 * @param separator
+	 *            the delimiter to use for separating entries.
+	 */
+	public CSVRowReader(Reader reader, char separator) {
+		this(reader, separator, CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.DEFAULT_ESCAPE_CHARACTER,
+				CSVReader.DEFAULT_SKIP_LINES, CSVParser.DEFAULT_STRICT_QUOTES, CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE,
+				DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs CSVRowReader with the options of {@link CSVReader}.
+	 *
+	 * @param reader
+	 *            the reader to an underlying CSV source.
+	 * @param separator
+	 *            the delimiter to use for separating entries
+	 * @param quotechar
+	 *            the character to use for quoted elements
+	 * @param escape
+	 *            the character to use for escaping a quote or itself, {@link CSVParser#NULL_CHARACTER} for none
+	 * @param line
+	 *            the line number to skip for start reading
+	 * @param strictQuotes
+	 *            sets if characters outside the quotes are ignored
+	 * @param ignoreLeadingWhiteSpace
+	 *            it true, parser should ignore white space before a quote in a field
+	 * @param bufferSize
+	 *            the initial size of the character buffer
+	 */
+	public CSVRowReader(
+			Reader reader,
+			char separator,
+			char quotechar,
+			char escape,
+			int line,
+			boolean strictQuotes,
+			boolean ignoreLeadingWhiteSpace,
+			int bufferSize) {
+		if (separator == quotechar || separator == escape || (quotechar == escape && escape != CSVParser.NULL_CHARACTER)) {
+			throw new UnsupportedOperationException("The separator, quote, and escape characters must be different!");
+		}
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize <= 0");
+		}
+		this.reader = reader;
+		this.separator = separator;
+		this.quotechar = quotechar;
+		this.escape = escape;
+		this.skipLines = line;
+		this.strictQuotes = strictQuotes;
+		this.ignoreLeadingWhiteSpace = ignoreLeadingWhiteSpace;
+		this.buffer = new char[bufferSize];
+	}
+
+	/**
+	 * Constructs CSVRowReader scanning characters already in memory. The characters are unquoted in place.
+	 */
+	CSVRowReader(
+			char[] chars,
+			int offset,
+			int length,
+			char separator,
+			char quotechar,
+			char escape,
+			boolean strictQuotes,
+			boolean ignoreLeadingWhiteSpace) {
+		this.reader = null;
+		this.separator = separator;
+		this.quotechar = quotechar;
+		this.escape = escape;
+		this.skipLines = 0;
+		this.strictQuotes = strictQuotes;
+		this.ignoreLeadingWhiteSpace = ignoreLeadingWhiteSpace;
+		this.buffer = chars;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.eof = true;
+	}
+
+	/**
+	 * Closes the underlying reader.
+	 *
+	 * @throws IOException
+	 *             if the close fails
+	 */
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads more characters, keeping the current row at the start of the buffer
+	 *
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (rowStart > 0) {
+			int delta = rowStart;
+			System.arraycopy(buffer, delta, buffer, 0, limit - delta);
+			limit -= delta;
+			pos -= delta;
+			write -= delta;
+			fieldStart -= delta;
+			rowStart = 0;
+			row.shift(delta);
+		} else if (limit == buffer.length) {
+			// The row does not fit
+			char[] newBuffer = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, limit);
+			buffer = newBuffer;
+		}
+		int count;
+		while ((count = reader.read(buffer, limit, buffer.length - limit)) == 0) {
+			// Keep reading
+		}
+		if (count < 0) {
+			eof = true;
+			return false;
+		}
+		limit += count;
+		return true;
+	}
+
+	/**
+	 * Consumes the '\n' of a "\r\n" line break
+	 */
+	private void skipLineFeed() throws IOException {
+		if ((pos < limit || fill()) && buffer[pos] == '\n') {
+			pos++;
+		}
+	}
+
+	/**
+	 * Reads the next field. Its unquoted content is written over its raw characters, at
+	 * <code>[fieldStart, write)</code>.
+	 *
+	 * @return how the field ended
+	 */
+	private int readField() throws IOException {
+		boolean inQuotes = false;
+		boolean onlyWhiteSpace = true;
+		while (true) {
+			if (pos == limit && !fill()) {
+				return END_OF_FILE;
+			}
+			char c = buffer[pos++];
+			if (c == quotechar) {
+				if (inQuotes) {
+					if ((pos < limit || fill()) && buffer[pos] == quotechar) {
+						// Embedded "" quote
+						buffer[write++] = quotechar;
+						pos++;
+					} else {
+						inQuotes = false;
+					}
+				} else if (write == fieldStart || (onlyWhiteSpace && ignoreLeadingWhiteSpace)) {
+					write = fieldStart;
+					inQuotes = true;
+				} else if (!strictQuotes) {
+					buffer[write++] = c;
+				}
+				onlyWhiteSpace = false;
+			} else if (c == escape) {
+				if ((pos < limit || fill()) && (buffer[pos] == quotechar || buffer[pos] == escape)) {
+					if (inQuotes || !strictQuotes) {
+						buffer[write++] = buffer[pos];
+					}
+					pos++;
+				}
+				// An escape before any other character is dropped, as CSVParser does
+				onlyWhiteSpace = false;
+			} else if (c == separator && !inQuotes) {
+				return END_OF_FIELD;
+			} else if (c == '\n' || c == '\r') {
+				if (c == '\r') {
+					skipLineFeed();
+				}
+				if (!inQuotes) {
+					return END_OF_ROW;
+				}
+				buffer[write++] = '\n';
+			} else if (inQuotes || !strictQuotes) {
+				buffer[write++] = c;
+				if (c != ' ' && c != '\t') {
+					onlyWhiteSpace = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the next row.
+	 *
+	 * @return the row, reused by the next call, or null at the end of the input
+	 * @throws IOException
+	 *             if bad things happen during the read
+	 */
+	public CSVRow readRow() throws IOException {
+		if (!linesSkiped) {
+			for (int i = 0; i < skipLines; i++) {
+				skipLine();
+			}
+			linesSkiped = true;
+		}
+		rowStart = pos;
+		if (pos == limit && !fill()) {
+			return null;
+		}
+		row.clear(++lineNumber);
+		int end;
+		do {
+			fieldStart = pos;
+			write = pos;
+			end = readField();
+			row.add(fieldStart, write);
+		} while (end == END_OF_FIELD);
+		row.buffer = buffer;
+		return row;
+	}
+
+	private void skipLine() throws IOException {
+		while (true) {
+			if (pos == limit) {
+				rowStart = pos;
+				if (!fill()) {
+					return;
+				}
+			}
+			char c = buffer[pos++];
+			if (c == '\n') {
+				return;
+			} else if (c == '\r') {
+				skipLineFeed();
+				return;
+			}
+		}
+	}
+}
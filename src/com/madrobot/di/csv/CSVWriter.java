@@ -13,20 +13,38 @@ package com.madrobot.di.csv;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A very simple CSV writer released under a commercial-friendly license.
+ * <p>
+ * Rows are escaped straight into a reusable character buffer that is written to the underlying writer in large
+ * blocks. Rows can also be written field by field with the <code>writeField</code> methods, which do not need a
+ * String array and write numbers without creating Strings. Use {@link #gzipWriter(OutputStream, Charset)} to
+ * compress the output as it is written.
+ * </p>
+ * <p>
+ * Written rows stay in the buffer until it is full, so they only reach the underlying writer when {@link #flush()} or
+ * {@link #close()} is called, or when the buffer fills up. Subclasses overriding {@link #processLine(String)} are
+ * still used to escape the elements that contain the quote or escape character, but without the buffer fast path.
+ * </p>
  * 
  * @author Glen Smith
  * 
  */
 public class CSVWriter implements Closeable {
 
+	/** The size of the character buffer. */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
 	/** The character used for escaping quotes. */
 	public static final char DEFAULT_ESCAPE_CHARACTER = '"';
 
@@ -49,8 +67,49 @@ public class CSVWriter implements Closeable {
 	/** The quote constant to use when you wish to suppress all quoting. */
 	public static final char NO_QUOTE_CHARACTER = '\u0000';
 
+	/**
+	 * Creates a writer compressing its output with gzip, to pass to a CSVWriter. Closing the CSVWriter finishes the
+	 * compressed stream.
+	 * 
+	 * @param out
+	 *            the stream receiving the compressed CSV
+	 * @param charset
+	 *            the charset of the CSV
+	 * @return the writer
+	 * @throws IOException
+	 *             if the gzip header cannot be written
+	 */
+	public static Writer gzipWriter(OutputStream out, Charset charset) throws IOException {
+		return new OutputStreamWriter(new GZIPOutputStream(out, BUFFER_SIZE), charset);
+	}
+
+	/**
+	 * Returns true if a subclass overrides {@link #processLine(String)}
+	 */
+	private static boolean overridesProcessLine(Class<?> type) {
+		for (Class<?> c = type; c != CSVWriter.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("processLine", String.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// Look in the superclass
+			}
+		}
+		return false;
+	}
+
+	private final char[] buffer = new char[BUFFER_SIZE];
+
+	private int count;
+
+	/** Whether elements are escaped by an overridden {@link #processLine(String)} */
+	private final boolean customProcessLine;
+
 	private char escapechar;
 
+	/** Number of fields written on the current line */
+	private int fields;
+
 	private String lineEnd;
 
 	private PrintWriter pw;
@@ -136,6 +195,7 @@ public class CSVWriter implements Closeable {
 		this.quotechar = quotechar;
 		this.escapechar = escapechar;
 		this.lineEnd = lineEnd;
+		this.customProcessLine = overridesProcessLine(getClass());
 	}
 
 	/**
@@ -154,10 +214,72 @@ public class CSVWriter implements Closeable {
 		this(writer, separator, quotechar, DEFAULT_ESCAPE_CHARACTER, lineEnd);
 	}
 
+	private void append(char c) {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = c;
+	}
+
+	private void append(String s) {
+		int length = s.length();
+		int offset = 0;
+		while (offset < length) {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(length - offset, buffer.length - count);
+			s.getChars(offset, offset + n, buffer, count);
+			count += n;
+			offset += n;
+		}
+	}
+
+	private void append(StringBuilder s) {
+		int length = s.length();
+		int offset = 0;
+		while (offset < length) {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(length - offset, buffer.length - count);
+			s.getChars(offset, offset + n, buffer, count);
+			count += n;
+			offset += n;
+		}
+	}
+
+	private void appendElement(String nextElement) {
+		if (quotechar != NO_QUOTE_CHARACTER)
+			append(quotechar);
+
+		if (customProcessLine) {
+			if (stringContainsSpecialCharacters(nextElement)) {
+				append(processLine(nextElement));
+			} else {
+				append(nextElement);
+			}
+		} else if (escapechar != NO_ESCAPE_CHARACTER && stringContainsSpecialCharacters(nextElement)) {
+			for (int j = 0; j < nextElement.length(); j++) {
+				char nextChar = nextElement.charAt(j);
+				if (nextChar == quotechar || nextChar == escapechar) {
+					append(escapechar);
+				}
+				append(nextChar);
+			}
+		} else {
+			append(nextElement);
+		}
+
+		if (quotechar != NO_QUOTE_CHARACTER)
+			append(quotechar);
+	}
+
 	/**
 	 * Checks to see if the there has been an error in the printstream.
 	 */
 	public boolean checkError() {
+		flushBuffer();
 		return pw.checkError();
 	}
 
@@ -175,6 +297,14 @@ public class CSVWriter implements Closeable {
 		rawWriter.close();
 	}
 
+	/**
+	 * Ends the line started with the <code>writeField</code> methods.
+	 */
+	public void endLine() {
+		append(lineEnd);
+		fields = 0;
+	}
+
 	/**
 	 * Flush underlying stream to writer.
 	 * 
@@ -182,11 +312,24 @@ public class CSVWriter implements Closeable {
 	 *             if bad things happen
 	 */
 	public void flush() throws IOException {
-
+		flushBuffer();
 		pw.flush();
 
 	}
 
+	private void flushBuffer() {
+		if (count > 0) {
+			pw.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void nextField() {
+		if (fields++ != 0) {
+			append(separator);
+		}
+	}
+
 	protected StringBuilder processLine(String nextElement) {
 		StringBuilder sb = new StringBuilder(INITIAL_STRING_SIZE);
 		for (int j = 0; j < nextElement.length(); j++) {
@@ -232,6 +375,12 @@ public class CSVWriter implements Closeable {
 			writeColumnNames(rs);
 		}
 
+		if (resultService.getClass() == ResultSetHelperService.class) {
+			// Write the typed values directly, without a String[] per row
+			((ResultSetHelperService) resultService).writeRows(rs, this);
+			return;
+		}
+
 		while (rs.next()) {
 			writeNext(resultService.getColumnValues(rs));
 		}
@@ -254,6 +403,67 @@ public class CSVWriter implements Closeable {
 		writeNext(resultService.getColumnNames(rs));
 	}
 
+	/**
+	 * Writes a decimal field on the current line.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	public void writeField(double value) {
+		writeField(Double.toString(value));
+	}
+
+	/**
+	 * Writes an integer field on the current line, without creating a String.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	public void writeField(long value) {
+		if (value == Long.MIN_VALUE) {
+			writeField(Long.toString(value));
+			return;
+		}
+		nextField();
+		if (quotechar != NO_QUOTE_CHARACTER)
+			append(quotechar);
+		// Longest long is 20 characters with its sign
+		if (buffer.length - count < 20) {
+			flushBuffer();
+		}
+		boolean negative = value < 0;
+		long remaining = negative ? -value : value;
+		int digits = 1;
+		for (long bound = 10; digits < 19 && remaining >= bound; bound *= 10) {
+			digits++;
+		}
+		int end = count + digits + (negative ? 1 : 0);
+		int position = end;
+		do {
+			buffer[--position] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		} while (remaining != 0);
+		if (negative) {
+			buffer[--position] = '-';
+		}
+		count = end;
+		if (quotechar != NO_QUOTE_CHARACTER)
+			append(quotechar);
+	}
+
+	/**
+	 * Writes a field on the current line. A null value leaves the field empty, as {@link #writeNext(String[])} does.
+	 * 
+	 * @param value
+	 *            the value, or null
+	 */
+	public void writeField(String value) {
+		nextField();
+		if (value != null) {
+			appendElement(value);
+		}
+	}
+
 	/**
 	 * Writes the next line to the file.
 	 * 
@@ -265,27 +475,10 @@ public class CSVWriter implements Closeable {
 		if (nextLine == null)
 			return;
 
-		StringBuilder sb = new StringBuilder(INITIAL_STRING_SIZE);
 		for (int i = 0; i < nextLine.length; i++) {
-
-			if (i != 0) {
-				sb.append(separator);
-			}
-
-			String nextElement = nextLine[i];
-			if (nextElement == null)
-				continue;
-			if (quotechar != NO_QUOTE_CHARACTER)
-				sb.append(quotechar);
-
-			sb.append(stringContainsSpecialCharacters(nextElement) ? processLine(nextElement) : nextElement);
-
-			if (quotechar != NO_QUOTE_CHARACTER)
-				sb.append(quotechar);
+			writeField(nextLine[i]);
 		}
-
-		sb.append(lineEnd);
-		pw.write(sb.toString());
+		endLine();
 
 	}
 
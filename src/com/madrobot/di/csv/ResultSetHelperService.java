@@ -180,4 +180,57 @@ public class ResultSetHelperService implements ResultSetHelper {
 		SimpleDateFormat timeFormat = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss");
 		return timestamp == null ? null : timeFormat.format(timestamp);
 	}
+
+	/**
+	 * Writes the remaining rows with the same formatting as {@link #getColumnValues(ResultSet)}, reading the typed
+	 * column values straight into the writer. The metadata is read and the date formats are created once.
+	 */
+	void writeRows(ResultSet rs, CSVWriter writer) throws SQLException, IOException {
+		ResultSetMetaData metadata = rs.getMetaData();
+		int[] types = new int[metadata.getColumnCount()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = metadata.getColumnType(i + 1);
+		}
+		SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MMM-yyyy");
+		SimpleDateFormat timeFormat = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss");
+
+		while (rs.next()) {
+			for (int i = 0; i < types.length; i++) {
+				int colIndex = i + 1;
+				switch (types[i]) {
+				case Types.BIGINT:
+					long lv = rs.getLong(colIndex);
+					if (rs.wasNull()) {
+						writer.writeField("");
+					} else {
+						writer.writeField(lv);
+					}
+					break;
+				case Types.INTEGER:
+				case Types.TINYINT:
+				case Types.SMALLINT:
+					int iv = rs.getInt(colIndex);
+					if (rs.wasNull()) {
+						writer.writeField("");
+					} else {
+						writer.writeField(iv);
+					}
+					break;
+				case Types.DATE:
+					java.sql.Date date = rs.getDate(colIndex);
+					writer.writeField(date == null ? "" : dateFormat.format(date));
+					break;
+				case Types.TIMESTAMP:
+					Timestamp timestamp = rs.getTimestamp(colIndex);
+					writer.writeField(timestamp == null ? "" : timeFormat.format(timestamp));
+					break;
+				default:
+					String value = getColumnValue(rs, types[i], colIndex);
+					writer.writeField(value);
+					break;
+				}
+			}
+			writer.endLine();
+		}
+	}
 }
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.csv.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.madrobot.di.csv.CSVBeanReader;
+
+/**
+ * Annotation to specify the CSV header of a field. <br/>
+ * See {@link CSVBeanReader} for usage
+ * 
+ * @see {@link CSVBeanReader}
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD })
+public @interface CSVColumn {
+
+	/**
+	 * Represent the CSV header
+	 * 
+	 * @return CSV header
+	 */
+	String value();
+}
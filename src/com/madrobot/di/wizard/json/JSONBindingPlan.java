@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.wizard.json;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.madrobot.di.Converter;
+import com.madrobot.di.wizard.json.annotations.ItemType;
+import com.madrobot.di.wizard.json.annotations.SerializedName;
+
+/**
+ * Reflection data of a bean class, resolved once and shared by {@link JSONSerializer} and {@link JSONDeserializer}.
+ * <p>
+ * Holds the declared fields in declaration order with their JSON keys, accessors and annotation values. Plans are
+ * cached per class and never change once built.
+ * </p>
+ */
+final class JSONBindingPlan {
+
+	/**
+	 * Binding of one declared field
+	 */
+	static final class FieldBinding {
+
+		/** Method adding one item to a collection field, from {@link ItemType} */
+		final Method adder;
+		final String adderError;
+		/** Whether an empty collection is written, from {@link ItemType} */
+		final boolean canEmpty;
+		final boolean collection;
+		final Field field;
+		final Method getter;
+		final String getterError;
+		/** Item type of a collection field, null without {@link ItemType} */
+		final Class<?> itemType;
+		final int itemSize;
+		final String key;
+		final String name;
+		final boolean pseudoPrimitive;
+		final Method setter;
+		final String setterError;
+		final Class<?> type;
+
+		FieldBinding(Class<?> userClass, Field field) {
+			this.field = field;
+			this.name = field.getName();
+			this.type = field.getType();
+			this.pseudoPrimitive = Converter.isPseudoPrimitive(type);
+			this.collection = Converter.isCollectionType(type);
+
+			SerializedName serializedName = field.getAnnotation(SerializedName.class);
+			this.key = serializedName != null ? serializedName.value() : name;
+
+			String error = null;
+			Method method = null;
+			try {
+				method = userClass.getDeclaredMethod(getGetMethodName(name, type));
+			} catch (NoSuchMethodException e) {
+				error = e.getMessage();
+			}
+			this.getter = method;
+			this.getterError = error;
+
+			error = null;
+			method = null;
+			try {
+				method = userClass.getDeclaredMethod(getSetMethodName(name, type), type);
+			} catch (NoSuchMethodException e) {
+				error = e.getMessage();
+			}
+			this.setter = method;
+			this.setterError = error;
+
+			ItemType itemTypeAnnotation = field.getAnnotation(ItemType.class);
+			error = null;
+			method = null;
+			if (itemTypeAnnotation != null) {
+				this.itemType = itemTypeAnnotation.value();
+				this.itemSize = itemTypeAnnotation.size();
+				this.canEmpty = itemTypeAnnotation.canEmpty();
+				try {
+					method = userClass.getDeclaredMethod(getAddMethodName(name), itemType);
+				} catch (NoSuchMethodException e) {
+					error = e.getMessage();
+				}
+			} else {
+				this.itemType = null;
+				this.itemSize = JSONDeserializer.DEFAULT_ITEM_COLLECTION_SIZE;
+				this.canEmpty = true;
+			}
+			this.adder = method;
+			this.adderError = error;
+		}
+
+		Method requireAdder() throws NoSuchMethodException {
+			if (adder == null) {
+				throw new NoSuchMethodException(adderError);
+			}
+			return adder;
+		}
+
+		Method requireGetter() throws NoSuchMethodException {
+			if (getter == null) {
+				throw new NoSuchMethodException(getterError);
+			}
+			return getter;
+		}
+
+		Method requireSetter() throws NoSuchMethodException {
+			if (setter == null) {
+				throw new NoSuchMethodException(setterError);
+			}
+			return setter;
+		}
+	}
+
+	private static final ConcurrentMap<Class<?>, JSONBindingPlan> plans = new ConcurrentHashMap<Class<?>, JSONBindingPlan>();
+
+	/**
+	 * Returns the plan of a class, building it on first use
+	 */
+	static JSONBindingPlan forClass(Class<?> userClass) {
+		JSONBindingPlan plan = plans.get(userClass);
+		if (plan == null) {
+			plan = new JSONBindingPlan(userClass);
+			JSONBindingPlan existing = plans.putIfAbsent(userClass, plan);
+			if (existing != null) {
+				plan = existing;
+			}
+		}
+		return plan;
+	}
+
+	private static String getAddMethodName(String fieldName) {
+		return "add" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+	}
+
+	private static String getGetMethodName(String fieldName, final Class<?> classType) {
+		String methodName = "";
+		if (Converter.isBoolean(classType)) {
+			if (fieldName.startsWith("is")) {
+				methodName = fieldName;
+			} else {
+				methodName = "is" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+			}
+		} else {
+			methodName = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+		}
+		return methodName;
+	}
+
+	private static String getSetMethodName(final String fieldName, final Class<?> classType) {
+		String methodName = null;
+		if (Converter.isBoolean(classType) && fieldName.startsWith("is") && fieldName.length() > 2) {
+			methodName = "set" + Character.toUpperCase(fieldName.charAt(2)) + fieldName.substring(3);
+		} else {
+			methodName = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+		}
+		return methodName;
+	}
+
+	private final Map<String, FieldBinding> bindingsByKey;
+
+	/** Declared fields, in declaration order */
+	final FieldBinding[] fields;
+
+	private JSONBindingPlan(Class<?> userClass) {
+		Field[] declaredFields = userClass.getDeclaredFields();
+		fields = new FieldBinding[declaredFields.length];
+		bindingsByKey = new HashMap<String, FieldBinding>(declaredFields.length * 4 / 3 + 1);
+		for (int i = 0; i < declaredFields.length; i++) {
+			FieldBinding binding = new FieldBinding(userClass, declaredFields[i]);
+			fields[i] = binding;
+			// A key resolves to the first field named or annotated with it
+			if (!bindingsByKey.containsKey(binding.name)) {
+				bindingsByKey.put(binding.name, binding);
+			}
+			if (!bindingsByKey.containsKey(binding.key)) {
+				bindingsByKey.put(binding.key, binding);
+			}
+		}
+	}
+
+	/**
+	 * Returns the binding of the field matching a JSON key
+	 *
+	 * @throws NoSuchFieldException
+	 *             If no field has this name or serialized name
+	 */
+	FieldBinding getField(String jsonKey) throws NoSuchFieldException {
+		FieldBinding binding = bindingsByKey.get(jsonKey);
+		if (binding == null) {
+			throw new NoSuchFieldException("NoSuchFieldException : " + jsonKey);
+		}
+		return binding;
+	}
+}
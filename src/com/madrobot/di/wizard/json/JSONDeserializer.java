@@ -10,11 +10,10 @@
  ******************************************************************************/
 package com.madrobot.di.wizard.json;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.Field;
+import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Iterator;
@@ -25,13 +24,16 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.madrobot.di.Converter;
-import com.madrobot.di.wizard.json.annotations.ItemType;
-import com.madrobot.di.wizard.json.annotations.SerializedName;
 
 import android.util.Log;
 
 /**
  * Utility class for json deserializer , by using this utility you can convert json into predefined java object
+ * <p>
+ * Streams and strings are read with a pull parser that binds each value to its field as it is read, without building
+ * a {@link JSONObject} tree. Large arrays can be consumed item by item with
+ * {@link #deserializeItems(Class, InputStream, String, JSONItemHandler)}.
+ * </p>
  * 
  * @author n.ayyanar
  * 
@@ -58,17 +60,6 @@ public final class JSONDeserializer {
 
 	}
 
-	private String convertStreamToString(final InputStream is) throws IOException {
-		BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-		StringBuilder sb = new StringBuilder();
-		String line = null;
-		while ((line = reader.readLine()) != null) {
-			sb.append(line + "\n");
-		}
-		is.close();
-		return sb.toString();
-	}
-
 	/**
 	 * Deserialize the json data from the input to the corresponding entity type <br/>
 	 * If there is an error while parsing, if possible it will try to ignore it, otherwise returns a null value.
@@ -90,7 +81,27 @@ public final class JSONDeserializer {
 	 */
 	public <T> T deserialize(final Class<T> objType, final InputStream jsonContentStream) throws JSONException,
 			IOException {
-		return deserialize(objType, new JSONObject(convertStreamToString(jsonContentStream)));
+		JSONReader reader = new JSONReader(new InputStreamReader(jsonContentStream, "UTF-8"));
+		try {
+			return deserialize(objType, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Binds the JSON object read by the parser to a new instance of the entity type
+	 */
+	private <T> T deserialize(final Class<T> objType, final JSONReader reader) throws JSONException, IOException {
+		T resultObject = newInstance(objType);
+		if (resultObject == null) {
+			reader.skipValue();
+			return null;
+		}
+		Stack<Class<?>> stack = new Stack<Class<?>>();
+		stack.push(objType);
+		deserialize(resultObject, reader, stack);
+		return resultObject;
 	}
 
 	/**
@@ -143,7 +154,73 @@ public final class JSONDeserializer {
 	 *             If an exception occurs during parsing
 	 */
 	public <T> T deserialize(final Class<T> objType, final String jsonContent) throws JSONException {
-		return deserialize(objType, new JSONObject(jsonContent));
+		try {
+			return deserialize(objType, new JSONReader(new StringReader(jsonContent)));
+		} catch (IOException e) {
+			// Not thrown by StringReader
+			throw new JSONException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Deserializes the items of a JSON array one by one, without holding the array in memory. <br/>
+	 * Every item is bound to a new instance of the item type and handed to the handler as soon as it is read.
+	 * 
+	 * @param itemType
+	 *            Type of the entity to deserialize each item to
+	 * @param jsonContentStream
+	 *            Input stream to read data from. It is closed when this method returns
+	 * @param arrayKey
+	 *            Key of the array in the root JSON object, or null if the root is the array
+	 * @param handler
+	 *            Handler receiving the items
+	 * @return Number of items handed to the handler
+	 * 
+	 * @throws JSONException
+	 *             If an exception occurs during parsing
+	 * @throws IOException
+	 *             If an exception occurs during reading
+	 */
+	public <T> int deserializeItems(final Class<T> itemType, final InputStream jsonContentStream, final String arrayKey,
+			final JSONItemHandler<? super T> handler) throws JSONException, IOException {
+		JSONReader reader = new JSONReader(new InputStreamReader(jsonContentStream, "UTF-8"));
+		try {
+			return deserializeItems(itemType, reader, arrayKey, handler);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private <T> int deserializeItems(final Class<T> itemType, final JSONReader reader, final String arrayKey,
+			final JSONItemHandler<? super T> handler) throws JSONException, IOException {
+		if (arrayKey != null) {
+			reader.beginObject();
+			while (true) {
+				if (!reader.hasNext()) {
+					return 0;
+				}
+				if (arrayKey.equals(reader.nextName()) && reader.peek() == JSONReader.BEGIN_ARRAY) {
+					break;
+				}
+				reader.skipValue();
+			}
+		}
+		int count = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			T item = null;
+			if (reader.peek() == JSONReader.BEGIN_OBJECT) {
+				item = deserialize(itemType, reader);
+			} else {
+				Log.e(TAG, "Expecting composite type for array item " + count);
+				reader.skipValue();
+			}
+			if (!handler.onItem(item, count++)) {
+				// The rest of the document is left unread
+				break;
+			}
+		}
+		return count;
 	}
 
 	/**
@@ -161,7 +238,7 @@ public final class JSONDeserializer {
 	private void deserialize(Object obj, JSONObject jsonObject, Stack<Class<?>> stack) throws JSONException {
 
 		Iterator<?> iterator = jsonObject.keys();
-		Class<?> userClass = stack.peek();
+		JSONBindingPlan plan = JSONBindingPlan.forClass(stack.peek());
 
 		while (iterator.hasNext()) {
 			Object jsonKey = iterator.next();
@@ -172,15 +249,14 @@ public final class JSONDeserializer {
 
 				try {
 
-					Field field = getField(userClass, key);
-					String fieldName = field.getName();
-					Class<?> classType = field.getType();
+					JSONBindingPlan.FieldBinding binding = plan.getField(key);
+					String fieldName = binding.name;
+					Class<?> classType = binding.type;
 
 					if (jsonElement instanceof JSONObject) {
-						if (!Converter.isPseudoPrimitive(classType)) {
+						if (!binding.pseudoPrimitive) {
 
-							String setMethodName = getSetMethodName(fieldName, classType);
-							Method setMethod = userClass.getDeclaredMethod(setMethodName, classType);
+							Method setMethod = binding.requireSetter();
 
 							JSONObject fieldObject = (JSONObject) jsonElement;
 
@@ -193,11 +269,10 @@ public final class JSONDeserializer {
 							Log.e(TAG, "Expecting composite type for " + fieldName);
 						}
 					} else if (jsonElement instanceof JSONArray) {
-						if (Converter.isCollectionType(classType)) {
-							if (field.isAnnotationPresent(ItemType.class)) {
-								ItemType itemType = field.getAnnotation(ItemType.class);
-								Class<?> itemValueType = itemType.value();
-								int size = itemType.size();
+						if (binding.collection) {
+							if (binding.itemType != null) {
+								Class<?> itemValueType = binding.itemType;
+								int size = binding.itemSize;
 
 								JSONArray fieldArrayObject = (JSONArray) jsonElement;
 
@@ -213,8 +288,7 @@ public final class JSONDeserializer {
 										Object itemObj = itemValueType.newInstance();
 										deserialize(itemObj, (JSONObject) value, stack);
 
-										String addMethodName = getAddMethodName(fieldName);
-										Method addMethod = userClass.getDeclaredMethod(addMethodName, itemValueType);
+										Method addMethod = binding.requireAdder();
 										addMethod.invoke(obj, itemObj);
 									}
 								}
@@ -222,12 +296,11 @@ public final class JSONDeserializer {
 						} else {
 							Log.e(TAG, "Expecting collection type for " + fieldName);
 						}
-					} else if (Converter.isPseudoPrimitive(classType)) {
+					} else if (binding.pseudoPrimitive) {
 
-						Object value = Converter.convertTo(jsonObject, key, classType, field);
+						Object value = Converter.convertTo(jsonObject, key, classType, binding.field);
 
-						String setMethodName = getSetMethodName(fieldName, classType);
-						Method setMethod = userClass.getDeclaredMethod(setMethodName, classType);
+						Method setMethod = binding.requireSetter();
 						setMethod.invoke(obj, value);
 					} else {
 						Log.e(TAG, "Unknown datatype");
@@ -248,39 +321,127 @@ public final class JSONDeserializer {
 		}
 	}
 
-	private String getAddMethodName(String fieldName) {
-		return "add" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
-	}
+	/**
+	 * Deserialize a specific element read by the pull parser, recursively. The fields are bound as the values
+	 * arrive, unknown and malformed values are skipped.
+	 * 
+	 * @param obj
+	 *            Object whose fields need to be set
+	 * @param reader
+	 *            JSON pull parser positioned on the object
+	 * @param stack
+	 *            Stack of entity types under consideration
+	 * @throws JSONException
+	 *             If an exception occurs during parsing
+	 * @throws IOException
+	 *             If an exception occurs during reading
+	 */
+	private void deserialize(Object obj, JSONReader reader, Stack<Class<?>> stack) throws JSONException, IOException {
 
-	private Field getField(final Class<?> userClass, final String jsonKey) throws NoSuchFieldException {
+		JSONBindingPlan plan = JSONBindingPlan.forClass(stack.peek());
+		reader.beginObject();
 
-		Field targetField = null;
-		for (Field field : userClass.getDeclaredFields()) {
-			if (field.getName().equals(jsonKey)) {
-				targetField = field;
-				break;
-			} else if (field.isAnnotationPresent(SerializedName.class)) {
-				SerializedName serializedNameObj = field.getAnnotation(SerializedName.class);
-				if (serializedNameObj.value().equals(jsonKey)) {
-					targetField = field;
-					break;
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			boolean consumed = false;
+
+			try {
+
+				JSONBindingPlan.FieldBinding binding = plan.getField(key);
+				String fieldName = binding.name;
+				Class<?> classType = binding.type;
+				int token = reader.peek();
+
+				if (token == JSONReader.BEGIN_OBJECT) {
+					if (!binding.pseudoPrimitive) {
+
+						Method setMethod = binding.requireSetter();
+
+						Object itemObj = classType.newInstance();
+						stack.push(classType);
+						consumed = true;
+						deserialize(itemObj, reader, stack);
+						stack.pop();
+
+						setMethod.invoke(obj, itemObj);
+					} else {
+						Log.e(TAG, "Expecting composite type for " + fieldName);
+					}
+				} else if (token == JSONReader.BEGIN_ARRAY) {
+					if (binding.collection) {
+						if (binding.itemType != null) {
+							Class<?> itemValueType = binding.itemType;
+							int size = binding.itemSize;
+
+							Method addMethod = binding.requireAdder();
+
+							consumed = true;
+							reader.beginArray();
+							for (int index = 0; reader.hasNext(); index++) {
+								Object itemObj = null;
+								if ((size == JSONDeserializer.DEFAULT_ITEM_COLLECTION_SIZE || index < size)
+										&& reader.peek() == JSONReader.BEGIN_OBJECT) {
+									itemObj = newInstance(itemValueType);
+								}
+								if (itemObj == null) {
+									reader.skipValue();
+									continue;
+								}
+								stack.push(itemValueType);
+								deserialize(itemObj, reader, stack);
+								stack.pop();
+
+								// Keep reading the array if an item is rejected
+								try {
+									addMethod.invoke(obj, itemObj);
+								} catch (InvocationTargetException e) {
+									Log.e(TAG, e.getMessage());
+								}
+							}
+							reader.endArray();
+						}
+					} else {
+						Log.e(TAG, "Expecting collection type for " + fieldName);
+					}
+				} else if (binding.pseudoPrimitive) {
+
+					Method setMethod = binding.requireSetter();
+
+					consumed = true;
+					Object value = Converter.convertTo(reader.nextValue(), classType, binding.field);
+					setMethod.invoke(obj, value);
+				} else {
+					Log.e(TAG, "Unknown datatype");
 				}
+
+			} catch (NoSuchFieldException e) {
+				Log.e(TAG, e.getMessage());
+			} catch (NoSuchMethodException e) {
+				Log.e(TAG, e.getMessage());
+			} catch (IllegalAccessException e) {
+				Log.e(TAG, e.getMessage());
+			} catch (InvocationTargetException e) {
+				Log.e(TAG, e.getMessage());
+			} catch (InstantiationException e) {
+				Log.e(TAG, e.getMessage());
 			}
-		}
 
-		if (targetField == null)
-			throw new NoSuchFieldException("NoSuchFieldException : " + jsonKey);
+			if (!consumed) {
+				reader.skipValue();
+			}
+		}
 
-		return targetField;
+		reader.endObject();
 	}
 
-	private String getSetMethodName(final String fieldName, final Class<?> classType) {
-		String methodName = null;
-		if (Converter.isBoolean(classType) && fieldName.startsWith("is")) {
-			methodName = "set" + Character.toUpperCase(fieldName.charAt(2)) + fieldName.substring(3);
-		} else {
-			methodName = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+	private <T> T newInstance(final Class<T> objType) {
+		try {
+			return objType.newInstance();
+		} catch (IllegalAccessException e) {
+			Log.e(TAG, e.getMessage());
+		} catch (InstantiationException e) {
+			Log.e(TAG, e.getMessage());
 		}
-		return methodName;
+		return null;
 	}
 }
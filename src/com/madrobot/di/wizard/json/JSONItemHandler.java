@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.wizard.json;
+
+/**
+ * Receives the items of a JSON array one by one, as they are deserialized.
+ *
+ * @see JSONDeserializer#deserializeItems(Class, java.io.InputStream, String, JSONItemHandler)
+ *
+ * @param <T>
+ *            Type of the items
+ */
+public interface JSONItemHandler<T> {
+
+	/**
+	 * Called for each deserialized item
+	 *
+	 * @param item
+	 *            The item, or null if it could not be instantiated
+	 * @param index
+	 *            Position of the item in the array
+	 * @return false to stop reading the array
+	 */
+	boolean onItem(T item, int index);
+}
@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.di.wizard.json;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Pull parser reading a JSON document one token at a time.
+ * <p>
+ * No tree is built: values are handed to the caller as they are read and
+ * skipped values are scanned without being copied. Strings that fit in the
+ * read buffer are created directly from it.
+ * </p>
+ *
+ * @see JSONDeserializer
+ */
+final class JSONReader {
+
+	static final int BEGIN_ARRAY = 1;
+	static final int BEGIN_OBJECT = 2;
+	static final int BOOLEAN = 3;
+	static final int END_ARRAY = 4;
+	static final int END_DOCUMENT = 5;
+	static final int END_OBJECT = 6;
+	static final int NAME = 7;
+	static final int NULL = 8;
+	static final int NUMBER = 9;
+	static final int STRING = 10;
+
+	private static final int NONE = 0;
+
+	private static final int SCOPE_DANGLING_NAME = 1;
+	private static final int SCOPE_EMPTY_ARRAY = 2;
+	private static final int SCOPE_EMPTY_DOCUMENT = 3;
+	private static final int SCOPE_EMPTY_OBJECT = 4;
+	private static final int SCOPE_NONEMPTY_ARRAY = 5;
+	private static final int SCOPE_NONEMPTY_DOCUMENT = 6;
+	private static final int SCOPE_NONEMPTY_OBJECT = 7;
+
+	private final char[] buffer = new char[8192];
+	private final StringBuilder builder = new StringBuilder();
+	private final Reader in;
+	private int limit;
+	private int peeked = NONE;
+	/** Text of a peeked number or literal */
+	private String peekedLiteral;
+	private int pos;
+	/** Characters consumed before the current buffer, for error messages */
+	private long previousChars;
+	private int[] scopes = new int[32];
+	private int scopeSize;
+
+	JSONReader(Reader in) {
+		if (in == null) {
+			throw new NullPointerException("in == null");
+		}
+		this.in = in;
+		scopes[scopeSize++] = SCOPE_EMPTY_DOCUMENT;
+	}
+
+	void beginArray() throws IOException, JSONException {
+		expect(BEGIN_ARRAY);
+		push(SCOPE_EMPTY_ARRAY);
+	}
+
+	void beginObject() throws IOException, JSONException {
+		expect(BEGIN_OBJECT);
+		push(SCOPE_EMPTY_OBJECT);
+	}
+
+	void close() throws IOException {
+		in.close();
+	}
+
+	void endArray() throws IOException, JSONException {
+		expect(END_ARRAY);
+		scopeSize--;
+	}
+
+	void endObject() throws IOException, JSONException {
+		expect(END_OBJECT);
+		scopeSize--;
+	}
+
+	/**
+	 * Returns true if the current array or object has another element
+	 */
+	boolean hasNext() throws IOException, JSONException {
+		int token = peek();
+		return token != END_OBJECT && token != END_ARRAY && token != END_DOCUMENT;
+	}
+
+	String nextName() throws IOException, JSONException {
+		expect(NAME);
+		return readString();
+	}
+
+	String nextString() throws IOException, JSONException {
+		int token = peek();
+		if (token == STRING) {
+			peeked = NONE;
+			return readString();
+		}
+		if (token == NUMBER || token == BOOLEAN) {
+			peeked = NONE;
+			return peekedLiteral;
+		}
+		throw syntaxError("Expected a string");
+	}
+
+	/**
+	 * Returns the next scalar value the way {@link JSONObject#opt(String)}
+	 * would: a {@link String}, a {@link Boolean}, {@link JSONObject#NULL} or,
+	 * for numbers, the {@link String} of the number literal.
+	 */
+	Object nextValue() throws IOException, JSONException {
+		switch (peek()) {
+		case STRING:
+			peeked = NONE;
+			return readString();
+		case NUMBER:
+			peeked = NONE;
+			return peekedLiteral;
+		case BOOLEAN:
+			peeked = NONE;
+			return Boolean.valueOf(peekedLiteral);
+		case NULL:
+			peeked = NONE;
+			return JSONObject.NULL;
+		default:
+			throw syntaxError("Expected a value");
+		}
+	}
+
+	/**
+	 * Returns the type of the next token without consuming it
+	 */
+	int peek() throws IOException, JSONException {
+		if (peeked == NONE) {
+			peeked = doPeek();
+		}
+		return peeked;
+	}
+
+	/**
+	 * Skips the next value, including nested arrays and objects
+	 */
+	void skipValue() throws IOException, JSONException {
+		int depth = 0;
+		do {
+			switch (peek()) {
+			case BEGIN_ARRAY:
+				beginArray();
+				depth++;
+				break;
+			case BEGIN_OBJECT:
+				beginObject();
+				depth++;
+				break;
+			case END_ARRAY:
+				endArray();
+				depth--;
+				break;
+			case END_OBJECT:
+				endObject();
+				depth--;
+				break;
+			case NAME:
+			case STRING:
+				peeked = NONE;
+				skipString();
+				break;
+			case END_DOCUMENT:
+				throw syntaxError("Unexpected end of input");
+			default:
+				peeked = NONE;
+				break;
+			}
+		} while (depth > 0);
+	}
+
+	private int doPeek() throws IOException, JSONException {
+		int scope = scopes[scopeSize - 1];
+		if (scope == SCOPE_EMPTY_ARRAY) {
+			scopes[scopeSize - 1] = SCOPE_NONEMPTY_ARRAY;
+			int c = nextNonWhitespace();
+			if (c == ']') {
+				return END_ARRAY;
+			} else if (c == -1) {
+				throw syntaxError("Unexpected end of input");
+			}
+			pos--;
+		} else if (scope == SCOPE_NONEMPTY_ARRAY) {
+			int c = nextNonWhitespace();
+			if (c == ']') {
+				return END_ARRAY;
+			} else if (c != ',') {
+				throw syntaxError("Unterminated array");
+			}
+		} else if (scope == SCOPE_EMPTY_OBJECT || scope == SCOPE_NONEMPTY_OBJECT) {
+			scopes[scopeSize - 1] = SCOPE_DANGLING_NAME;
+			if (scope == SCOPE_NONEMPTY_OBJECT) {
+				int c = nextNonWhitespace();
+				if (c == '}') {
+					return END_OBJECT;
+				} else if (c != ',') {
+					throw syntaxError("Unterminated object");
+				}
+			}
+			int c = nextNonWhitespace();
+			if (c == '"') {
+				return NAME;
+			} else if (c == '}' && scope == SCOPE_EMPTY_OBJECT) {
+				return END_OBJECT;
+			}
+			throw syntaxError("Expected a name");
+		} else if (scope == SCOPE_DANGLING_NAME) {
+			scopes[scopeSize - 1] = SCOPE_NONEMPTY_OBJECT;
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError("Expected ':'");
+			}
+		} else if (scope == SCOPE_EMPTY_DOCUMENT) {
+			scopes[scopeSize - 1] = SCOPE_NONEMPTY_DOCUMENT;
+		} else if (scope == SCOPE_NONEMPTY_DOCUMENT) {
+			if (nextNonWhitespace() == -1) {
+				return END_DOCUMENT;
+			}
+			throw syntaxError("Expected end of input");
+		}
+
+		int c = nextNonWhitespace();
+		switch (c) {
+		case '{':
+			return BEGIN_OBJECT;
+		case '[':
+			return BEGIN_ARRAY;
+		case '"':
+			return STRING;
+		case -1:
+			throw syntaxError("Unexpected end of input");
+		default:
+			pos--;
+			return readLiteral();
+		}
+	}
+
+	private void expect(int token) throws IOException, JSONException {
+		if (peek() != token) {
+			throw syntaxError("Unexpected token " + peeked + ", expected " + token);
+		}
+		peeked = NONE;
+	}
+
+	private boolean fill() throws IOException {
+		previousChars += limit;
+		pos = 0;
+		limit = 0;
+		int count;
+		while ((count = in.read(buffer, 0, buffer.length)) == 0) {
+			// Keep reading
+		}
+		if (count < 0) {
+			return false;
+		}
+		limit = count;
+		return true;
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		while (true) {
+			if (pos == limit && !fill()) {
+				return -1;
+			}
+			char c = buffer[pos++];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+	}
+
+	private void push(int scope) {
+		if (scopeSize == scopes.length) {
+			int[] newScopes = new int[scopeSize * 2];
+			System.arraycopy(scopes, 0, newScopes, 0, scopeSize);
+			scopes = newScopes;
+		}
+		scopes[scopeSize++] = scope;
+	}
+
+	private char readEscape() throws IOException, JSONException {
+		if (pos == limit && !fill()) {
+			throw syntaxError("Unterminated escape sequence");
+		}
+		char escaped = buffer[pos++];
+		switch (escaped) {
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int result = 0;
+			for (int i = 0; i < 4; i++) {
+				if (pos == limit && !fill()) {
+					throw syntaxError("Unterminated escape sequence");
+				}
+				int digit = Character.digit(buffer[pos++], 16);
+				if (digit < 0) {
+					throw syntaxError("Invalid escape sequence");
+				}
+				result = (result << 4) | digit;
+			}
+			return (char) result;
+		default:
+			// \" \\ \/ and lenient unknown escapes
+			return escaped;
+		}
+	}
+
+	/**
+	 * Reads a number or a true/false/null literal
+	 */
+	private int readLiteral() throws IOException, JSONException {
+		builder.setLength(0);
+		while (true) {
+			if (pos == limit && !fill()) {
+				break;
+			}
+			char c = buffer[pos];
+			if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				break;
+			}
+			builder.append(c);
+			pos++;
+		}
+		String literal = builder.toString();
+		if (literal.equals("true") || literal.equals("false")) {
+			peekedLiteral = literal;
+			return BOOLEAN;
+		}
+		if (literal.equals("null")) {
+			peekedLiteral = literal;
+			return NULL;
+		}
+		char first = literal.length() > 0 ? literal.charAt(0) : ' ';
+		if (first == '-' || (first >= '0' && first <= '9')) {
+			peekedLiteral = literal;
+			return NUMBER;
+		}
+		throw syntaxError("Unexpected literal '" + literal + "'");
+	}
+
+	/**
+	 * Reads the rest of a string whose opening quote was consumed
+	 */
+	private String readString() throws IOException, JSONException {
+		// Fast path: the whole string is in the buffer and has no escapes
+		for (int i = pos; i < limit; i++) {
+			char c = buffer[i];
+			if (c == '"') {
+				String result = new String(buffer, pos, i - pos);
+				pos = i + 1;
+				return result;
+			} else if (c == '\\') {
+				break;
+			}
+		}
+		builder.setLength(0);
+		while (true) {
+			if (pos == limit && !fill()) {
+				throw syntaxError("Unterminated string");
+			}
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos++];
+				if (c == '"') {
+					builder.append(buffer, start, pos - start - 1);
+					return builder.toString();
+				} else if (c == '\\') {
+					builder.append(buffer, start, pos - start - 1);
+					builder.append(readEscape());
+					start = pos;
+				}
+			}
+			builder.append(buffer, start, pos - start);
+		}
+	}
+
+	private void skipString() throws IOException, JSONException {
+		while (true) {
+			if (pos == limit && !fill()) {
+				throw syntaxError("Unterminated string");
+			}
+			char c = buffer[pos++];
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				readEscape();
+			}
+		}
+	}
+
+	private JSONException syntaxError(String message) {
+		return new JSONException(message + " at character " + (previousChars + pos));
+	}
+}
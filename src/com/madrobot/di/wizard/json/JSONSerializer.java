@@ -10,7 +10,6 @@
  ******************************************************************************/
 package com.madrobot.di.wizard.json;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
@@ -23,8 +22,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.madrobot.di.Converter;
-import com.madrobot.di.wizard.json.annotations.ItemType;
-import com.madrobot.di.wizard.json.annotations.SerializedName;
 
 import android.util.Log;
 
@@ -51,29 +48,6 @@ public class JSONSerializer {
 
 	}
 
-	private String getGetMethodName(String fieldName, final Class<?> classType) {
-		String methodName = "";
-		if (Converter.isBoolean(classType)) {
-			if (fieldName.startsWith("is")) {
-				methodName = fieldName;
-			} else {
-				methodName = "is" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
-			}
-		} else {
-			methodName = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
-		}
-		return methodName;
-	}
-
-	private String getKeyName(final Field field) {
-		if (field.isAnnotationPresent(SerializedName.class)) {
-			SerializedName serializedName = field.getAnnotation(SerializedName.class);
-			return serializedName.value();
-		} else {
-			return field.getName();
-		}
-	}
-
 	/**
 	 * Serialize a specific java object recursively.
 	 * 
@@ -89,24 +63,20 @@ public class JSONSerializer {
 	private void serializer(JSONObject jsonObject, final Stack<Object> stack) throws JSONException {
 
 		Object userObject = stack.peek();
-		Class<?> userClass = userObject.getClass();
-		Field[] fields = userClass.getDeclaredFields();
+		JSONBindingPlan plan = JSONBindingPlan.forClass(userObject.getClass());
 
-		for (Field field : fields) {
+		for (JSONBindingPlan.FieldBinding binding : plan.fields) {
 
-			String fieldName = field.getName();
-			Class<?> classType = field.getType();
-			String jsonKeyName = getKeyName(field);
+			String jsonKeyName = binding.key;
 
 			try {
 
-				String getMethodName = getGetMethodName(fieldName, classType);
-				Method getMethod = userClass.getDeclaredMethod(getMethodName);
+				Method getMethod = binding.requireGetter();
 				Object returnValue = getMethod.invoke(userObject, new Object[] {});
 
-				if (Converter.isPseudoPrimitive(classType)) {
-					Converter.storeValue(jsonObject, jsonKeyName, returnValue, field);
-				} else if (Converter.isCollectionType(classType)) {
+				if (binding.pseudoPrimitive) {
+					Converter.storeValue(jsonObject, jsonKeyName, returnValue, binding.field);
+				} else if (binding.collection) {
 
 					JSONArray jsonArray = new JSONArray();
 					boolean canAdd = true;
@@ -125,9 +95,8 @@ public class JSONSerializer {
 								serializer(object, stack);
 								jsonArray.put(object);
 							}
-						} else if (field.isAnnotationPresent(ItemType.class)) {
-							ItemType itemType = field.getAnnotation(ItemType.class);
-							canAdd = itemType.canEmpty();
+						} else if (binding.itemType != null) {
+							canAdd = binding.canEmpty;
 						}
 
 						if (canAdd)
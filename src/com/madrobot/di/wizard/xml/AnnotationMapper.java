@@ -28,6 +28,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.madrobot.di.wizard.xml.annotations.Alias;
 import com.madrobot.di.wizard.xml.annotations.AsAttribute;
@@ -93,6 +94,8 @@ class AnnotationMapper extends MapperWrapper implements AnnotationConfiguration
 	private final LocalConversionMapper localConversionMapper;
 
 	private boolean locked;
+	/** Types whose annotations are completely processed, checked without locking */
+	private final Map<Class<?>, Boolean> completedTypes = new ConcurrentHashMap<Class<?>, Boolean>();
 
 	/**
 	 * Construct an AnnotationMapper.
@@ -301,7 +304,7 @@ class AnnotationMapper extends MapperWrapper implements AnnotationConfiguration
 	}
 
 	private void processAnnotations(final Class initialType) {
-		if (initialType == null) {
+		if (initialType == null || completedTypes.containsKey(initialType)) {
 			return;
 		}
 		synchronized (annotatedTypes) {
@@ -309,6 +312,7 @@ class AnnotationMapper extends MapperWrapper implements AnnotationConfiguration
 			types.add(initialType);
 			processTypes(types);
 		}
+		completedTypes.put(initialType, Boolean.TRUE);
 	}
 
 	@Override
@@ -12,14 +12,14 @@
 package com.madrobot.di.wizard.xml;
 
 import java.lang.ref.WeakReference;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.madrobot.di.wizard.xml.core.Caching;
 
 /**
- * Mapper that caches which names map to which classes. Prevents repetitive searching and class loading.
+ * Mapper that caches which names map to which classes. Prevents repetitive searching and class loading. The cache is a
+ * concurrent map, read without locking.
  * 
  */
 class CachingMapper extends MapperWrapper implements Caching {
@@ -37,7 +37,7 @@ class CachingMapper extends MapperWrapper implements Caching {
 	}
 
 	private Object readResolve() {
-		realClassCache = Collections.synchronizedMap(new HashMap(128));
+		realClassCache = new ConcurrentHashMap(128);
 		return this;
 	}
 
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+
+package com.madrobot.di.wizard.xml;
+
+/**
+ * Receives the repeating elements of a document, one at a time, as they are deserialized.
+ * 
+ * @see XMLWizard#fromXML(com.madrobot.di.wizard.xml.io.HierarchicalStreamReader, String, XMLItemHandler)
+ */
+public interface XMLItemHandler {
+
+	/**
+	 * Called with each deserialized element, in document order.
+	 * 
+	 * @param item
+	 *            The deserialized element
+	 * @return false to stop reading the document
+	 */
+	boolean onItem(Object item);
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+
+package com.madrobot.di.wizard.xml;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.madrobot.di.wizard.xml.io.HierarchicalStreamReader;
+
+/**
+ * Iterates over the repeating elements of a document, deserializing one element per step.
+ * <p>
+ * The elements are selected by a path of element names starting at the root, as <code>rss/channel/item</code>. Every
+ * element at the end of the path is deserialized as its own object graph, with the converters and aliases of the
+ * XMLWizard instance, as soon as its end tag is read. Elements off the path are skipped without being deserialized,
+ * so the memory used does not depend on the size of the document.
+ * </p>
+ * 
+ * <pre>
+ * XMLWizard xmlWizard = new XMLWizard();
+ * xmlWizard.alias(&quot;item&quot;, Item.class);
+ * XMLItemIterator items = xmlWizard.itemsFromXML(reader, &quot;rss/channel/item&quot;);
+ * try {
+ * 	while (items.hasNext()) {
+ * 		Item item = (Item) items.next();
+ * 		...
+ * 	}
+ * } finally {
+ * 	items.close();
+ * }
+ * </pre>
+ * <p>
+ * As each element is a separate graph, references can only point inside the element holding them.
+ * </p>
+ * 
+ * @see XMLWizard#itemsFromXML(HierarchicalStreamReader, String)
+ * @see XMLWizard#fromXML(HierarchicalStreamReader, String, XMLItemHandler)
+ */
+public class XMLItemIterator implements Iterator, Closeable {
+
+	/** Number of path elements the reader is in, below the root */
+	private int depth;
+	private boolean done;
+	private Object next;
+	private boolean hasNext;
+	private final String[] path;
+	private final HierarchicalStreamReader reader;
+	private final XMLWizard xmlWizard;
+
+	XMLItemIterator(XMLWizard xmlWizard, HierarchicalStreamReader reader, String path) {
+		this.xmlWizard = xmlWizard;
+		this.reader = reader;
+		this.path = split(path);
+		if (this.path.length < 2) {
+			throw new IllegalArgumentException("Path must name the root and the repeating element : " + path);
+		}
+		done = !this.path[0].equals(reader.getNodeName());
+	}
+
+	private static String[] split(String path) {
+		int start = path.startsWith("/") ? 1 : 0;
+		int end = path.endsWith("/") ? path.length() - 1 : path.length();
+		return start < end ? path.substring(start, end).split("/") : new String[0];
+	}
+
+	/**
+	 * Closes the underlying reader.
+	 */
+	@Override
+	public void close() {
+		done = true;
+		hasNext = false;
+		next = null;
+		reader.close();
+	}
+
+	/**
+	 * Moves the reader to the next element at the end of the path.
+	 * 
+	 * @return false if the document has no more elements on the path
+	 */
+	private boolean advance() {
+		int last = path.length - 1;
+		while (true) {
+			boolean found = false;
+			while (reader.hasMoreChildren()) {
+				reader.moveDown();
+				if (path[depth + 1].equals(reader.getNodeName())) {
+					found = true;
+					break;
+				}
+				reader.moveUp();
+			}
+			if (found) {
+				if (depth + 1 == last) {
+					return true;
+				}
+				depth++;
+			} else if (depth == 0) {
+				return false;
+			} else {
+				reader.moveUp();
+				depth--;
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (hasNext) {
+			return true;
+		}
+		if (done) {
+			return false;
+		}
+		if (!advance()) {
+			done = true;
+			return false;
+		}
+		next = xmlWizard.unmarshal(reader);
+		reader.moveUp();
+		hasNext = true;
+		return true;
+	}
+
+	@Override
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object item = next;
+		next = null;
+		hasNext = false;
+		return item;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -1141,6 +1141,56 @@ public class XMLWizard {
 		return unmarshal(hierarchicalStreamDriver.createReader(url), root);
 	}
 
+	/**
+	 * Deserialize the repeating elements of a hierarchical data structure, passing each one to a handler as soon as it
+	 * is read. The whole document is never held in memory, which suits large feeds.
+	 * 
+	 * @param path
+	 *            The element names from the root to the repeating element, separated by '/', as
+	 *            <code>rss/channel/item</code>
+	 * @return the number of elements passed to the handler
+	 * @throws XMLWizardException
+	 *             if an element cannot be deserialized
+	 * @see XMLItemIterator
+	 */
+	public int fromXML(HierarchicalStreamReader reader, String path, XMLItemHandler handler) {
+		XMLItemIterator items = new XMLItemIterator(this, reader, path);
+		int count = 0;
+		try {
+			while (items.hasNext()) {
+				count++;
+				if (!handler.onItem(items.next())) {
+					break;
+				}
+			}
+		} finally {
+			items.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Deserialize the repeating elements of an XML InputStream, passing each one to a handler as soon as it is read.
+	 * 
+	 * @throws XMLWizardException
+	 *             if an element cannot be deserialized
+	 * @see #fromXML(HierarchicalStreamReader, String, XMLItemHandler)
+	 */
+	public int fromXML(InputStream input, String path, XMLItemHandler handler) {
+		return fromXML(hierarchicalStreamDriver.createReader(input), path, handler);
+	}
+
+	/**
+	 * Deserialize the repeating elements of an XML Reader, passing each one to a handler as soon as it is read.
+	 * 
+	 * @throws XMLWizardException
+	 *             if an element cannot be deserialized
+	 * @see #fromXML(HierarchicalStreamReader, String, XMLItemHandler)
+	 */
+	public int fromXML(Reader xml, String path, XMLItemHandler handler) {
+		return fromXML(hierarchicalStreamDriver.createReader(xml), path, handler);
+	}
+
 	/**
 	 * Retrieve the ClassLoader XMLWizard uses to load classes.
 	 * 
@@ -1150,6 +1200,37 @@ public class XMLWizard {
 		return classLoaderReference.getReference();
 	}
 
+	/**
+	 * Returns an iterator deserializing the repeating elements of a hierarchical data structure one at a time. The
+	 * iterator must be closed if it is not read to the end.
+	 * 
+	 * @param path
+	 *            The element names from the root to the repeating element, separated by '/', as
+	 *            <code>rss/channel/item</code>
+	 * @see XMLItemIterator
+	 */
+	public XMLItemIterator itemsFromXML(HierarchicalStreamReader reader, String path) {
+		return new XMLItemIterator(this, reader, path);
+	}
+
+	/**
+	 * Returns an iterator deserializing the repeating elements of an XML InputStream one at a time.
+	 * 
+	 * @see #itemsFromXML(HierarchicalStreamReader, String)
+	 */
+	public XMLItemIterator itemsFromXML(InputStream input, String path) {
+		return itemsFromXML(hierarchicalStreamDriver.createReader(input), path);
+	}
+
+	/**
+	 * Returns an iterator deserializing the repeating elements of an XML Reader one at a time.
+	 * 
+	 * @see #itemsFromXML(HierarchicalStreamReader, String)
+	 */
+	public XMLItemIterator itemsFromXML(Reader xml, String path) {
+		return itemsFromXML(hierarchicalStreamDriver.createReader(xml), path);
+	}
+
 	public ConverterLookup getConverterLookup() {
 		return converterLookup;
 	}
@@ -17,11 +17,14 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import com.madrobot.di.wizard.xml.io.CompactBinaryStreamReader;
+import com.madrobot.di.wizard.xml.io.CompactBinaryStreamWriter;
 import com.madrobot.di.wizard.xml.io.HierarchicalStreamReader;
 import com.madrobot.di.wizard.xml.io.HierarchicalStreamWriter;
 
 /**
- * Converts a byte array to a single Base64 encoding string.
+ * Converts a byte array to a single Base64 encoding string. With a {@link CompactBinaryStreamWriter}, the bytes are
+ * written raw instead.
  * 
  * @author Joe Walnes
  * @author J&ouml;rg Schaible
@@ -43,6 +46,11 @@ public class EncodedByteArrayConverter implements Converter, SingleValueConverte
 
 	@Override
 	public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+		HierarchicalStreamWriter underlyingWriter = writer.underlyingWriter();
+		if (underlyingWriter instanceof CompactBinaryStreamWriter) {
+			((CompactBinaryStreamWriter) underlyingWriter).setValue((byte[]) source);
+			return;
+		}
 		writer.setValue(toString(source));
 	}
 
@@ -53,6 +61,13 @@ public class EncodedByteArrayConverter implements Converter, SingleValueConverte
 
 	@Override
 	public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+		HierarchicalStreamReader underlyingReader = reader.underlyingReader();
+		if (underlyingReader instanceof CompactBinaryStreamReader) {
+			byte[] bytes = ((CompactBinaryStreamReader) underlyingReader).getValueBytes();
+			if (bytes != null) {
+				return bytes;
+			}
+		}
 		String data = reader.getValue(); // needs to be called before hasMoreChildren.
 		if (!reader.hasMoreChildren()) {
 			return fromString(data);
@@ -20,6 +20,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.madrobot.di.wizard.xml.core.Caching;
 import com.madrobot.di.wizard.xml.core.JVM;
@@ -27,6 +28,10 @@ import com.madrobot.util.OrderRetainingMap;
 
 /**
  * A field dictionary instance caches information about classes fields.
+ * <p>
+ * The fields of a class already in the cache are read without locking, only building the maps of a new class is
+ * synchronized.
+ * </p>
  * 
  */
 public class FieldDictionary implements Caching {
@@ -45,7 +50,10 @@ public class FieldDictionary implements Caching {
 	}
 
 	private Map buildMap(final Class type, boolean tupleKeyed) {
-		final Map result;
+		Map result = (Map) (tupleKeyed ? keyedByFieldKeyCache.get(type) : keyedByFieldNameCache.get(type));
+		if (result != null) {
+			return result;
+		}
 		Class cls = type;
 		synchronized (this) {
 			if (!keyedByFieldNameCache.containsKey(type)) {
@@ -170,8 +178,8 @@ public class FieldDictionary implements Caching {
 	}
 
 	private void init() {
-		keyedByFieldNameCache = new HashMap();
-		keyedByFieldKeyCache = new HashMap();
+		keyedByFieldNameCache = new ConcurrentHashMap();
+		keyedByFieldKeyCache = new ConcurrentHashMap();
 		keyedByFieldNameCache.put(Object.class, Collections.EMPTY_MAP);
 		keyedByFieldKeyCache.put(Object.class, Collections.EMPTY_MAP);
 	}
@@ -16,9 +16,8 @@ import java.io.ObjectOutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.madrobot.di.wizard.xml.core.Caching;
 import com.madrobot.di.wizard.xml.core.FastField;
@@ -39,7 +38,7 @@ public class SerializationMethodInvoker implements Caching {
 	private static final FastField[] OBJECT_TYPE_FIELDS = new FastField[] { new FastField(Object.class, "readResolve"),
 			new FastField(Object.class, "writeReplace"), new FastField(Object.class, "readObject"),
 			new FastField(Object.class, "writeObject") };
-	private Map cache = Collections.synchronizedMap(new HashMap());
+	private Map cache = new ConcurrentHashMap();
 	{
 		for (int i = 0; i < OBJECT_TYPE_FIELDS.length; ++i) {
 			cache.put(OBJECT_TYPE_FIELDS[i], NO_METHOD);
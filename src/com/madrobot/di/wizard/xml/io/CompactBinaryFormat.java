@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+
+package com.madrobot.di.wizard.xml.io;
+
+/**
+ * Constants of the stream format of {@link CompactBinaryStreamWriter} and {@link CompactBinaryStreamReader}.
+ * <p>
+ * A stream starts with a header of four bytes: the magic 'M' 'B', the format version and the flags. If the
+ * {@link #FLAG_DEFLATE} flag is set, the rest of the stream is deflated.
+ * </p>
+ * <p>
+ * Every token is a tag byte, the token in the low bits and the kind of the value in the high bits, followed by its
+ * data. Names are written once, the first time they are used, and then referenced by their index in the string
+ * table. Integers and lengths are unsigned LEB128 varints, signed values are zigzag encoded. Strings are a varint byte
+ * length followed by the UTF-8 encoding of each char, surrogates included.
+ * </p>
+ * 
+ * @see CompactBinaryStreamDriver
+ */
+final class CompactBinaryFormat {
+
+	static final int FLAG_DEFLATE = 0x01;
+
+	/** Value interned in the string table, followed by its index */
+	static final int KIND_INTERNED = 0x50;
+	/** Value added to the string table, followed by the string */
+	static final int KIND_INTERNED_NEW = 0x60;
+	/** Raw bytes, followed by the length and the bytes */
+	static final int KIND_BYTES = 0x40;
+	static final int KIND_FALSE = 0x30;
+	/** Decimal integer, followed by its zigzag varint */
+	static final int KIND_LONG = 0x10;
+	static final int KIND_MASK = 0xf0;
+	static final int KIND_STRING = 0x00;
+	static final int KIND_TRUE = 0x20;
+
+	static final int MAGIC_0 = 'M';
+	static final int MAGIC_1 = 'B';
+
+	/** Attribute, followed by the index of its name and its value */
+	static final int TOKEN_ATTRIBUTE = 0x04;
+	/** Attribute with a new name, followed by the name and the value */
+	static final int TOKEN_ATTRIBUTE_NEW = 0x05;
+	static final int TOKEN_END_NODE = 0x03;
+	static final int TOKEN_MASK = 0x0f;
+	/** Node, followed by the index of its name */
+	static final int TOKEN_START_NODE = 0x01;
+	/** Node with a new name, followed by the name */
+	static final int TOKEN_START_NODE_NEW = 0x02;
+	/** Value of the current node, followed by the value */
+	static final int TOKEN_VALUE = 0x06;
+
+	static final int VERSION = 2;
+
+	private CompactBinaryFormat() {
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+
+package com.madrobot.di.wizard.xml.io;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * HierarchicalStreamDriver for the compact binary format. It is smaller and faster to read and write than the format
+ * of the {@link BinaryStreamDriver}: names are referenced by varint indexes, integers, booleans and byte arrays are
+ * stored in binary, and the stream can be deflated. Like any binary format, it cannot use a {@link Reader} for input
+ * or a {@link Writer} for output.
+ * 
+ * <pre>
+ * XMLWizard xmlWizard = new XMLWizard(new CompactBinaryStreamDriver(true));
+ * xmlWizard.toXML(object, outputStream);
+ * </pre>
+ * 
+ * @see CompactBinaryFormat
+ */
+public class CompactBinaryStreamDriver extends AbstractDriver {
+
+	private final boolean compress;
+
+	/**
+	 * Creates a driver writing uncompressed streams.
+	 */
+	public CompactBinaryStreamDriver() {
+		this(false);
+	}
+
+	/**
+	 * @param compress
+	 *            Whether the written streams are deflated. Compressed and uncompressed streams are both read.
+	 */
+	public CompactBinaryStreamDriver(boolean compress) {
+		this.compress = compress;
+	}
+
+	@Override
+	public HierarchicalStreamReader createReader(InputStream in) {
+		return new CompactBinaryStreamReader(in);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException
+	 *             if called
+	 */
+	@Override
+	public HierarchicalStreamReader createReader(Reader in) {
+		throw new UnsupportedOperationException("The CompactBinaryStreamDriver cannot use character-oriented input streams.");
+	}
+
+	@Override
+	public HierarchicalStreamWriter createWriter(OutputStream out) {
+		return new CompactBinaryStreamWriter(out, compress);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException
+	 *             if called
+	 */
+	@Override
+	public HierarchicalStreamWriter createWriter(Writer out) {
+		throw new UnsupportedOperationException("The CompactBinaryStreamDriver cannot use character-oriented output streams.");
+	}
+}
@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+
+package com.madrobot.di.wizard.xml.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.zip.InflaterInputStream;
+
+import android.util.Base64;
+
+import com.madrobot.di.wizard.xml.converters.ErrorWriter;
+
+/**
+ * A HierarchicalStreamReader that reads from a binary stream created by {@link CompactBinaryStreamWriter}.
+ * <p>
+ * The stream is read through an internal buffer and decoded without an object per token. Binary values are converted
+ * back to the text the writer was given, byte arrays can be read without Base64 with {@link #getValueBytes()}.
+ * </p>
+ * 
+ * @see CompactBinaryFormat
+ * @see CompactBinaryStreamDriver
+ */
+public class CompactBinaryStreamReader implements ExtendedHierarchicalStreamReader {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private char[] chars = new char[64];
+	private final ReaderDepthState depthState = new ReaderDepthState();
+	private final InputStream in;
+	private int limit;
+	/** Name of the pushed back start node */
+	private String pendingName;
+	/** Pushed back token, or -1 */
+	private int pendingToken = -1;
+	private int pos;
+	private int stringCount;
+	private String[] strings = new String[64];
+	/** Bytes of the last value token of kind bytes, null for other values */
+	private byte[] tokenBytes;
+	/** Name of the last start node or attribute token */
+	private String tokenName;
+	/** Text of the last value or attribute token */
+	private String tokenValue;
+
+	public CompactBinaryStreamReader(InputStream inputStream) {
+		try {
+			if (inputStream.read() != CompactBinaryFormat.MAGIC_0 || inputStream.read() != CompactBinaryFormat.MAGIC_1) {
+				throw new StreamException("Not a compact binary stream");
+			}
+			int version = inputStream.read();
+			if (version != CompactBinaryFormat.VERSION) {
+				throw new StreamException("Unsupported version : " + version);
+			}
+			int flags = inputStream.read();
+			if (flags < 0) {
+				throw new EOFException();
+			}
+			in = (flags & CompactBinaryFormat.FLAG_DEFLATE) != 0 ? new InflaterInputStream(inputStream) : inputStream;
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+		moveDown();
+	}
+
+	private String addString(String value) {
+		if (stringCount == strings.length) {
+			String[] newStrings = new String[stringCount * 2];
+			System.arraycopy(strings, 0, newStrings, 0, stringCount);
+			strings = newStrings;
+		}
+		strings[stringCount++] = value;
+		return value;
+	}
+
+	@Override
+	public void appendErrors(ErrorWriter errorWriter) {
+	}
+
+	@Override
+	public void close() {
+		try {
+			in.close();
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+	}
+
+	private void fill() throws IOException {
+		limit = in.read(buffer, 0, buffer.length);
+		pos = 0;
+		if (limit <= 0) {
+			limit = 0;
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public String getAttribute(int index) {
+		return depthState.getAttribute(index);
+	}
+
+	@Override
+	public String getAttribute(String name) {
+		return depthState.getAttribute(name);
+	}
+
+	@Override
+	public int getAttributeCount() {
+		return depthState.getAttributeCount();
+	}
+
+	@Override
+	public String getAttributeName(int index) {
+		return depthState.getAttributeName(index);
+	}
+
+	@Override
+	public Iterator getAttributeNames() {
+		return depthState.getAttributeNames();
+	}
+
+	@Override
+	public String getNodeName() {
+		return depthState.getName();
+	}
+
+	private String getString(int id) {
+		if (id >= stringCount) {
+			throw new StreamException("Unknown ID : " + id);
+		}
+		return strings[id];
+	}
+
+	@Override
+	public String getValue() {
+		byte[] bytes = depthState.getValueBytes();
+		return bytes != null ? Base64.encodeToString(bytes, Base64.DEFAULT) : depthState.getValue();
+	}
+
+	/**
+	 * Returns the value of the current node if it was written with {@link CompactBinaryStreamWriter#setValue(byte[])}
+	 * 
+	 * @return the bytes, or null if the value is text
+	 */
+	public byte[] getValueBytes() {
+		return depthState.getValueBytes();
+	}
+
+	@Override
+	public boolean hasMoreChildren() {
+		return depthState.hasMoreChildren();
+	}
+
+	@Override
+	public void moveDown() {
+		depthState.push();
+		if (readToken(false) != CompactBinaryFormat.TOKEN_START_NODE) {
+			throw new StreamException("Expected StartNode");
+		}
+		depthState.setName(tokenName);
+		while (true) {
+			int token = readToken(false);
+			switch (token) {
+			case CompactBinaryFormat.TOKEN_ATTRIBUTE:
+				depthState.addAttribute(tokenName, tokenValue);
+				break;
+			case CompactBinaryFormat.TOKEN_VALUE:
+				if (tokenBytes != null) {
+					depthState.setValueBytes(tokenBytes);
+					tokenBytes = null;
+				} else {
+					depthState.setValue(tokenValue);
+				}
+				break;
+			case CompactBinaryFormat.TOKEN_END_NODE:
+				depthState.setHasMoreChildren(false);
+				pushBack(token);
+				return;
+			case CompactBinaryFormat.TOKEN_START_NODE:
+				depthState.setHasMoreChildren(true);
+				pushBack(token);
+				return;
+			default:
+				throw new StreamException("Unexpected token " + token);
+			}
+		}
+	}
+
+	@Override
+	public void moveUp() {
+		depthState.pop();
+		// Skip the rest of the node, without decoding the values
+		int depth = 0;
+		slurp: while (true) {
+			switch (readToken(true)) {
+			case CompactBinaryFormat.TOKEN_END_NODE:
+				if (depth == 0) {
+					break slurp;
+				}
+				depth--;
+				break;
+			case CompactBinaryFormat.TOKEN_START_NODE:
+				depth++;
+				break;
+			default:
+				// Ignore other tokens
+			}
+		}
+		// Peek ahead to determine if there are any more kids at this level.
+		int token = readToken(false);
+		switch (token) {
+		case CompactBinaryFormat.TOKEN_END_NODE:
+			depthState.setHasMoreChildren(false);
+			break;
+		case CompactBinaryFormat.TOKEN_START_NODE:
+			depthState.setHasMoreChildren(true);
+			break;
+		default:
+			throw new StreamException("Unexpected token " + token);
+		}
+		pushBack(token);
+	}
+
+	@Override
+	public String peekNextChild() {
+		if (depthState.hasMoreChildren()) {
+			return pendingName;
+		}
+		return null;
+	}
+
+	private void pushBack(int token) {
+		pendingToken = token;
+		pendingName = tokenName;
+	}
+
+	private int readByte() throws IOException {
+		if (pos == limit) {
+			fill();
+		}
+		return buffer[pos++] & 0xff;
+	}
+
+	private byte[] readBytes(int length, boolean skip) throws IOException {
+		byte[] bytes = skip ? null : new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			if (pos == limit) {
+				fill();
+			}
+			int n = Math.min(length - offset, limit - pos);
+			if (!skip) {
+				System.arraycopy(buffer, pos, bytes, offset, n);
+			}
+			pos += n;
+			offset += n;
+		}
+		return bytes;
+	}
+
+	private String readString(boolean skip) throws IOException {
+		int length = (int) readVarint();
+		if (skip) {
+			readBytes(length, true);
+			return null;
+		}
+		if (chars.length < length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		char[] chars = this.chars;
+		int count = 0;
+		int end = length;
+		while (end > 0) {
+			int b = readByte();
+			end--;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+			} else if (b < 0xe0) {
+				chars[count++] = (char) (((b & 0x1f) << 6) | (readByte() & 0x3f));
+				end--;
+			} else {
+				int b2 = readByte();
+				chars[count++] = (char) (((b & 0x0f) << 12) | ((b2 & 0x3f) << 6) | (readByte() & 0x3f));
+				end -= 2;
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	/**
+	 * Reads the next token, setting its name and value
+	 * 
+	 * @param skip
+	 *            Whether the value of the token is not needed, the token is only read past
+	 * @return the token, without the distinction between new and known names
+	 */
+	private int readToken(boolean skip) {
+		if (pendingToken >= 0) {
+			int token = pendingToken;
+			pendingToken = -1;
+			tokenName = pendingName;
+			return token;
+		}
+		try {
+			int tag = readByte();
+			int kind = tag & CompactBinaryFormat.KIND_MASK;
+			switch (tag & CompactBinaryFormat.TOKEN_MASK) {
+			case CompactBinaryFormat.TOKEN_START_NODE:
+				tokenName = getString((int) readVarint());
+				return CompactBinaryFormat.TOKEN_START_NODE;
+			case CompactBinaryFormat.TOKEN_START_NODE_NEW:
+				tokenName = addString(readString(false));
+				return CompactBinaryFormat.TOKEN_START_NODE;
+			case CompactBinaryFormat.TOKEN_END_NODE:
+				return CompactBinaryFormat.TOKEN_END_NODE;
+			case CompactBinaryFormat.TOKEN_ATTRIBUTE:
+				tokenName = getString((int) readVarint());
+				readValue(kind, skip);
+				return CompactBinaryFormat.TOKEN_ATTRIBUTE;
+			case CompactBinaryFormat.TOKEN_ATTRIBUTE_NEW:
+				tokenName = addString(readString(false));
+				readValue(kind, skip);
+				return CompactBinaryFormat.TOKEN_ATTRIBUTE;
+			case CompactBinaryFormat.TOKEN_VALUE:
+				readValue(kind, skip);
+				return CompactBinaryFormat.TOKEN_VALUE;
+			default:
+				throw new StreamException("Unknown token type " + tag);
+			}
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+	}
+
+	private void readValue(int kind, boolean skip) throws IOException {
+		tokenBytes = null;
+		switch (kind) {
+		case CompactBinaryFormat.KIND_STRING:
+			tokenValue = readString(skip);
+			break;
+		case CompactBinaryFormat.KIND_LONG:
+			long zigzag = readVarint();
+			tokenValue = skip ? null : Long.toString((zigzag >>> 1) ^ -(zigzag & 1));
+			break;
+		case CompactBinaryFormat.KIND_TRUE:
+			tokenValue = "true";
+			break;
+		case CompactBinaryFormat.KIND_FALSE:
+			tokenValue = "false";
+			break;
+		case CompactBinaryFormat.KIND_BYTES:
+			tokenBytes = readBytes((int) readVarint(), skip);
+			tokenValue = null;
+			break;
+		case CompactBinaryFormat.KIND_INTERNED:
+			tokenValue = getString((int) readVarint());
+			break;
+		case CompactBinaryFormat.KIND_INTERNED_NEW:
+			// Interned values are kept even when skipped, later tokens refer to them
+			tokenValue = addString(readString(false));
+			break;
+		default:
+			throw new StreamException("Unknown value kind " + kind);
+		}
+	}
+
+	private long readVarint() throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			result |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new StreamException("Malformed varint");
+	}
+
+	@Override
+	public HierarchicalStreamReader underlyingReader() {
+		return this;
+	}
+
+}
@@ -0,0 +1,386 @@
+/*******************************************************************************
+ * Copyright (c) 2012 MadRobot.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the GNU Lesser Public License v2.1
+ *  which accompanies this distribution, and is available at
+ *  http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ *  Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+
+package com.madrobot.di.wizard.xml.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A HierarchicalStreamWriter writing the compact binary format read by {@link CompactBinaryStreamReader}.
+ * <p>
+ * Node and attribute names are written once and then referenced by a varint index. Values that are decimal integers
+ * or booleans are written in binary, and byte arrays written with {@link #setValue(byte[])} are written raw instead of
+ * Base64 encoded. The stream is buffered and completed when the root node ends, optionally deflated.
+ * </p>
+ * 
+ * @see CompactBinaryFormat
+ * @see CompactBinaryStreamDriver
+ */
+public class CompactBinaryStreamWriter implements ExtendedHierarchicalStreamWriter {
+
+	/**
+	 * String to index map of the string table, without boxing the indexes.
+	 */
+	private static final class StringTable {
+
+		private String[] keys = new String[64];
+		private int size;
+		private int[] values = new int[64];
+
+		private static int indexFor(String key, int mask) {
+			int h = key.hashCode();
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		/**
+		 * Adds a string not in the table yet
+		 * 
+		 * @return the index of the string
+		 */
+		int add(String key) {
+			if (size * 2 >= keys.length) {
+				grow();
+			}
+			put(keys, values, key, size);
+			return size++;
+		}
+
+		/**
+		 * @return the index of the string, or -1 if it is not in the table
+		 */
+		int get(String key) {
+			int mask = keys.length - 1;
+			for (int i = indexFor(key, mask);; i = (i + 1) & mask) {
+				String k = keys[i];
+				if (k == null) {
+					return -1;
+				}
+				if (k == key || k.equals(key)) {
+					return values[i];
+				}
+			}
+		}
+
+		private void grow() {
+			String[] newKeys = new String[keys.length * 2];
+			int[] newValues = new int[keys.length * 2];
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != null) {
+					put(newKeys, newValues, keys[i], values[i]);
+				}
+			}
+			keys = newKeys;
+			values = newValues;
+		}
+
+		private static void put(String[] keys, int[] values, String key, int value) {
+			int mask = keys.length - 1;
+			int i = indexFor(key, mask);
+			while (keys[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		int size() {
+			return size;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Attribute values are interned until the table has this size, names always are */
+	private static final int MAX_INTERNED_VALUES = 16384;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final DeflaterOutputStream deflater;
+	private int depth;
+	private boolean finished;
+	/** Index of the interned value found by {@link #kindOf(String, boolean)} */
+	private int internedId;
+	/** Value parsed by {@link #kindOf(String, boolean)} */
+	private long longValue;
+	private final OutputStream out;
+	private int pos;
+	private final StringTable strings = new StringTable();
+
+	/**
+	 * Creates a writer of an uncompressed stream.
+	 */
+	public CompactBinaryStreamWriter(OutputStream outputStream) {
+		this(outputStream, false);
+	}
+
+	/**
+	 * @param compress
+	 *            Whether the stream is deflated after its header
+	 */
+	public CompactBinaryStreamWriter(OutputStream outputStream, boolean compress) {
+		try {
+			outputStream.write(CompactBinaryFormat.MAGIC_0);
+			outputStream.write(CompactBinaryFormat.MAGIC_1);
+			outputStream.write(CompactBinaryFormat.VERSION);
+			outputStream.write(compress ? CompactBinaryFormat.FLAG_DEFLATE : 0);
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+		if (compress) {
+			deflater = new DeflaterOutputStream(outputStream, new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE);
+			out = deflater;
+		} else {
+			deflater = null;
+			out = outputStream;
+		}
+	}
+
+	@Override
+	public void addAttribute(String name, String value) {
+		int id = strings.get(name);
+		int kind = kindOf(value, strings.size() < MAX_INTERNED_VALUES);
+		if (id < 0) {
+			writeByte(CompactBinaryFormat.TOKEN_ATTRIBUTE_NEW | kind);
+			writeString(name);
+			strings.add(name);
+		} else {
+			writeByte(CompactBinaryFormat.TOKEN_ATTRIBUTE | kind);
+			writeVarint(id);
+		}
+		writeValue(kind, value);
+	}
+
+	@Override
+	public void close() {
+		try {
+			flushBuffer();
+			out.close();
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+	}
+
+	@Override
+	public void endNode() {
+		writeByte(CompactBinaryFormat.TOKEN_END_NODE);
+		if (--depth == 0) {
+			// End of the document, complete the stream even if it is never closed
+			try {
+				flushBuffer();
+				if (deflater != null && !finished) {
+					deflater.finish();
+				}
+				finished = true;
+				out.flush();
+			} catch (IOException e) {
+				throw new StreamException(e);
+			}
+		}
+	}
+
+	@Override
+	public void flush() {
+		try {
+			flushBuffer();
+			out.flush();
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (pos > 0) {
+			out.write(buffer, 0, pos);
+			pos = 0;
+		}
+	}
+
+	/**
+	 * Returns the kind of a value, setting {@link #longValue} for integers and {@link #internedId} for interned values
+	 * 
+	 * @param intern
+	 *            Whether the value can be interned
+	 */
+	private int kindOf(String value, boolean intern) {
+		int length = value.length();
+		if (length > 0 && length < 20) {
+			char first = value.charAt(0);
+			if (first == 't' && "true".equals(value)) {
+				return CompactBinaryFormat.KIND_TRUE;
+			} else if (first == 'f' && "false".equals(value)) {
+				return CompactBinaryFormat.KIND_FALSE;
+			} else if (parseLong(value)) {
+				return CompactBinaryFormat.KIND_LONG;
+			}
+		}
+		if (intern) {
+			internedId = strings.get(value);
+			return internedId < 0 ? CompactBinaryFormat.KIND_INTERNED_NEW : CompactBinaryFormat.KIND_INTERNED;
+		}
+		return CompactBinaryFormat.KIND_STRING;
+	}
+
+	/**
+	 * Parses a decimal integer written the way Long.toString writes it, so that it is read back as the same string: no
+	 * sign other than '-', no leading zero and at most 18 digits.
+	 */
+	private boolean parseLong(String value) {
+		int length = value.length();
+		int i = 0;
+		boolean negative = value.charAt(0) == '-';
+		if (negative) {
+			if (length == 1) {
+				return false;
+			}
+			i = 1;
+		}
+		if (length - i > 18 || (value.charAt(i) == '0' && (negative || length > 1))) {
+			return false;
+		}
+		long result = 0;
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			result = result * 10 + (c - '0');
+		}
+		longValue = negative ? -result : result;
+		return true;
+	}
+
+	/**
+	 * Writes raw bytes as the value of the current node. They are read back as Base64 text, unless the reader is asked
+	 * for the bytes with {@link CompactBinaryStreamReader#getValueBytes()}.
+	 */
+	public void setValue(byte[] data) {
+		writeByte(CompactBinaryFormat.TOKEN_VALUE | CompactBinaryFormat.KIND_BYTES);
+		writeVarint(data.length);
+		try {
+			if (data.length > buffer.length - pos) {
+				flushBuffer();
+				if (data.length > buffer.length) {
+					out.write(data);
+					return;
+				}
+			}
+			System.arraycopy(data, 0, buffer, pos, data.length);
+			pos += data.length;
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+	}
+
+	@Override
+	public void setValue(String text) {
+		int kind = kindOf(text, false);
+		writeByte(CompactBinaryFormat.TOKEN_VALUE | kind);
+		writeValue(kind, text);
+	}
+
+	@Override
+	public void startNode(String name) {
+		int id = strings.get(name);
+		if (id < 0) {
+			writeByte(CompactBinaryFormat.TOKEN_START_NODE_NEW);
+			writeString(name);
+			strings.add(name);
+		} else {
+			writeByte(CompactBinaryFormat.TOKEN_START_NODE);
+			writeVarint(id);
+		}
+		depth++;
+	}
+
+	@Override
+	public void startNode(String name, Class clazz) {
+		startNode(name);
+	}
+
+	@Override
+	public HierarchicalStreamWriter underlyingWriter() {
+		return this;
+	}
+
+	private void writeByte(int b) {
+		if (pos == buffer.length) {
+			try {
+				flushBuffer();
+			} catch (IOException e) {
+				throw new StreamException(e);
+			}
+		}
+		buffer[pos++] = (byte) b;
+	}
+
+	private void writeString(String value) {
+		int length = value.length();
+		int utfLength = length;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x80) {
+				utfLength += c < 0x800 ? 1 : 2;
+			}
+		}
+		writeVarint(utfLength);
+		try {
+			int limit = buffer.length - 3;
+			for (int i = 0; i < length; i++) {
+				if (pos > limit) {
+					flushBuffer();
+				}
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					buffer[pos++] = (byte) c;
+				} else if (c < 0x800) {
+					buffer[pos++] = (byte) (0xc0 | (c >> 6));
+					buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+				} else {
+					buffer[pos++] = (byte) (0xe0 | (c >> 12));
+					buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+					buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+				}
+			}
+		} catch (IOException e) {
+			throw new StreamException(e);
+		}
+	}
+
+	private void writeValue(int kind, String value) {
+		switch (kind) {
+		case CompactBinaryFormat.KIND_LONG:
+			writeVarint((longValue << 1) ^ (longValue >> 63));
+			break;
+		case CompactBinaryFormat.KIND_INTERNED:
+			writeVarint(internedId);
+			break;
+		case CompactBinaryFormat.KIND_INTERNED_NEW:
+			writeString(value);
+			strings.add(value);
+			break;
+		case CompactBinaryFormat.KIND_STRING:
+			writeString(value);
+			break;
+		default:
+			// Booleans are in the tag
+		}
+	}
+
+	private void writeVarint(long value) {
+		while ((value & ~0x7fL) != 0) {
+			writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		writeByte((int) value);
+	}
+}
@@ -19,7 +19,8 @@ import java.util.List;
 /**
  * Maintains the state of a pull reader at various states in the document depth.
  * 
- * Used by the {@link BinaryStreamReader}
+ * Used by the {@link BinaryStreamReader} and the {@link CompactBinaryStreamReader}. The states of the nodes left are
+ * reused for the next nodes.
  * 
  * @since 1.2
  */
@@ -32,6 +33,7 @@ class ReaderDepthState {
 
 	private static class State {
 		List attributes;
+		byte[] bytes;
 		boolean hasMoreChildren;
 		String name;
 		State parent;
@@ -41,6 +43,8 @@ class ReaderDepthState {
 	private static final String EMPTY_STRING = "";
 
 	private State current;
+	/** States popped, chained by their parent */
+	private State free;
 
 	public void addAttribute(String name, String value) {
 		Attribute attribute = new Attribute();
@@ -122,16 +126,35 @@ class ReaderDepthState {
 		return current.value == null ? EMPTY_STRING : current.value;
 	}
 
+	public byte[] getValueBytes() {
+		return current.bytes;
+	}
+
 	public boolean hasMoreChildren() {
 		return current.hasMoreChildren;
 	}
 
 	public void pop() {
-		current = current.parent;
+		State popped = current;
+		current = popped.parent;
+		popped.parent = free;
+		free = popped;
 	}
 
 	public void push() {
-		State newState = new State();
+		State newState = free;
+		if (newState == null) {
+			newState = new State();
+		} else {
+			free = newState.parent;
+			if (newState.attributes != null) {
+				newState.attributes.clear();
+			}
+			newState.bytes = null;
+			newState.hasMoreChildren = false;
+			newState.name = null;
+			newState.value = null;
+		}
 		newState.parent = current;
 		current = newState;
 	}
@@ -148,4 +171,8 @@ class ReaderDepthState {
 		current.value = value;
 	}
 
+	public void setValueBytes(byte[] bytes) {
+		current.bytes = bytes;
+	}
+
 }
@@ -14,7 +14,6 @@ package com.madrobot.di.wizard.xml.io.xml;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
@@ -83,11 +82,11 @@ public abstract class AbstractXppDriver extends AbstractDriver {
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * {@inheritDoc} The XML is encoded in UTF-8, the encoding the readers of this driver assume without an XML header.
 	 */
 	@Override
 	public HierarchicalStreamWriter createWriter(OutputStream out) {
-		return createWriter(new OutputStreamWriter(out));
+		return new PrettyPrintWriter(out, getNameCoder());
 	}
 
 	/**
@@ -11,12 +11,27 @@
 
 package com.madrobot.di.wizard.xml.io.xml;
 
+import java.io.OutputStream;
 import java.io.Writer;
 
 import com.madrobot.di.wizard.xml.io.NameCoder;
 
 public class CompactWriter extends PrettyPrintWriter {
 
+	/**
+	 * Creates a writer encoding the XML in UTF-8 into a stream.
+	 */
+	public CompactWriter(OutputStream out, int mode, NameCoder nameCoder) {
+		super(out, mode, new char[0], nameCoder);
+	}
+
+	/**
+	 * Creates a writer encoding the XML in UTF-8 into a stream.
+	 */
+	public CompactWriter(OutputStream out, NameCoder nameCoder) {
+		super(out, nameCoder);
+	}
+
 	public CompactWriter(Writer writer) {
 		super(writer);
 	}
@@ -11,6 +11,7 @@
 
 package com.madrobot.di.wizard.xml.io.xml;
 
+import java.io.OutputStream;
 import java.io.Writer;
 
 import com.madrobot.di.wizard.xml.io.AbstractWriter;
@@ -38,6 +39,11 @@ import com.madrobot.util.QuickWriter;
  * {@link StreamException} is thrown. Select a proper parser implementation that respects the version in the XML header
  * (the Xpp3 parser will also read character entities of normally invalid characters).
  * </p>
+ * <p>
+ * Text is escaped into the output buffer, runs of chars needing no escape being copied at once. Created with an
+ * {@link OutputStream}, the writer encodes the XML in UTF-8 directly into the stream, without an intermediate
+ * {@link Writer}.
+ * </p>
  * 
  */
 public class PrettyPrintWriter extends AbstractWriter {
@@ -48,6 +54,7 @@ public class PrettyPrintWriter extends AbstractWriter {
 
 	private static final char[] CR = "&#xd;".toCharArray();
 	private static final char[] GT = "&gt;".toCharArray();
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 	private static final char[] LT = "&lt;".toCharArray();
 	private static final char[] NULL = "&#x0;".toCharArray();
 
@@ -112,9 +119,23 @@ public class PrettyPrintWriter extends AbstractWriter {
 		this(writer, mode, lineIndenter, nameCoder, "\n");
 	}
 
-	private PrettyPrintWriter(Writer writer, int mode, char[] lineIndenter, NameCoder nameCoder, String newLine) {
+	/**
+	 * Creates a writer encoding the XML in UTF-8 into a stream.
+	 */
+	public PrettyPrintWriter(OutputStream out, int mode, char[] lineIndenter, NameCoder nameCoder) {
+		this(new QuickWriter(out), mode, lineIndenter, nameCoder, "\n");
+	}
+
+	/**
+	 * Creates a writer encoding the XML in UTF-8 into a stream.
+	 */
+	public PrettyPrintWriter(OutputStream out, NameCoder nameCoder) {
+		this(out, XML_QUIRKS, new char[] { ' ', ' ' }, nameCoder);
+	}
+
+	private PrettyPrintWriter(QuickWriter writer, int mode, char[] lineIndenter, NameCoder nameCoder, String newLine) {
 		super(nameCoder);
-		this.writer = new QuickWriter(writer);
+		this.writer = writer;
 		this.lineIndenter = lineIndenter;
 		this.newLine = newLine;
 		this.mode = mode;
@@ -123,6 +144,10 @@ public class PrettyPrintWriter extends AbstractWriter {
 		}
 	}
 
+	private PrettyPrintWriter(Writer writer, int mode, char[] lineIndenter, NameCoder nameCoder, String newLine) {
+		this(new QuickWriter(writer), mode, lineIndenter, nameCoder, newLine);
+	}
+
 	/**
 	 * @since 1.3
 	 * @deprecated As of 1.4 use {@link PrettyPrintWriter#PrettyPrintWriter(Writer, int, char[], NameCoder)} instead
@@ -283,8 +308,18 @@ public class PrettyPrintWriter extends AbstractWriter {
 
 	private void writeText(String text, boolean isAttribute) {
 		int length = text.length();
+		// First char of the run not written yet
+		int start = 0;
 		for (int i = 0; i < length; i++) {
 			char c = text.charAt(i);
+			if (c >= ' ' && c < '\u007f' ? c != '&' && c != '<' && c != '>' && c != '"' && c != '\''
+					: c >= '\u00a0' && Character.isDefined(c) && (mode == XML_QUIRKS || c < '\ud800' || c > '\udfff')) {
+				continue;
+			}
+			if (i > start) {
+				this.writer.write(text, start, i);
+			}
+			start = i + 1;
 			switch (c) {
 			case '\0':
 				if (mode == XML_QUIRKS) {
@@ -339,11 +374,22 @@ public class PrettyPrintWriter extends AbstractWriter {
 									+ " in XML stream");
 						}
 					}
-					this.writer.write("&#x");
-					this.writer.write(Integer.toHexString(c));
+					this.writer.write('&');
+					this.writer.write('#');
+					this.writer.write('x');
+					int shift = 12;
+					while (shift > 0 && (c >> shift) == 0) {
+						shift -= 4;
+					}
+					for (; shift >= 0; shift -= 4) {
+						this.writer.write(HEX_DIGITS[(c >> shift) & 0xf]);
+					}
 					this.writer.write(';');
 				}
 			}
 		}
+		if (start < length) {
+			this.writer.write(text, start, length);
+		}
 	}
 }
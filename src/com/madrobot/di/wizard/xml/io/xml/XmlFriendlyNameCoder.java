@@ -13,10 +13,10 @@ package com.madrobot.di.wizard.xml.io.xml;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.madrobot.di.wizard.xml.converters.ObjectAccessException;
 import com.madrobot.di.wizard.xml.io.NameCoder;
-import com.madrobot.util.WeakCache;
 
 /**
  * Encode and decode tag and attribute names in XML drivers.
@@ -33,6 +33,10 @@ import com.madrobot.util.WeakCache;
  * <li>other characters that are invalid in XML names are encoded with <b>_.XXXX</b> (underscore dot followed by hex
  * representation of character).</li>
  * </ul>
+ * <p>
+ * The encoded and decoded names are cached in concurrent maps, so a coder can be shared by the readers and writers of
+ * several threads. Each cache keeps up to {@value #MAX_CACHE_SIZE} names, other names are coded at each call.
+ * </p>
  * 
  * @see <a href="http://www.w3.org/TR/REC-xml/#dt-name">XML 1.0 name definition</a>
  * @see <a href="http://www.w3.org/TR/xml11/#dt-name">XML 1.1 name definition</a>
@@ -49,6 +53,7 @@ public class XmlFriendlyNameCoder implements NameCoder, Cloneable {
 			this.max = max;
 		}
 	}
+	private static final int MAX_CACHE_SIZE = 1024;
 	private static final IntPair[] XML_NAME_CHAR_EXTRA_BOUNDS;
 	private static final IntPair[] XML_NAME_START_CHAR_BOUNDS;
 
@@ -230,7 +235,9 @@ public class XmlFriendlyNameCoder implements NameCoder, Cloneable {
 			}
 
 			s = result.toString();
-			unescapeCache.put(name, s);
+			if (unescapeCache.size() < MAX_CACHE_SIZE) {
+				unescapeCache.put(name, s);
+			}
 		}
 		return s;
 	}
@@ -298,7 +305,9 @@ public class XmlFriendlyNameCoder implements NameCoder, Cloneable {
 				}
 			}
 			s = result.toString();
-			escapeCache.put(name, s);
+			if (escapeCache.size() < MAX_CACHE_SIZE) {
+				escapeCache.put(name, s);
+			}
 		}
 		return s;
 	}
@@ -312,8 +321,8 @@ public class XmlFriendlyNameCoder implements NameCoder, Cloneable {
 	}
 
 	private Object readResolve() {
-		escapeCache = new WeakCache();
-		unescapeCache = new WeakCache();
+		escapeCache = new ConcurrentHashMap();
+		unescapeCache = new ConcurrentHashMap();
 		return this;
 	}
 }
@@ -10,43 +10,95 @@
  ******************************************************************************/
 package com.madrobot.di.xml.simpledeserializer;
 
-class ClassInfo {
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.madrobot.di.xml.simpledeserializer.annotations.ElementName;
+
+/**
+ * Binding model of a class: the fields mapped by each element name, resolved once per class. <br/>
+ * Instances are immutable and cached, so they are shared by concurrent deserializations.
+ * 
+ * @see XMLDeserializer
+ */
+final class ClassInfo {
+
+	private static final ConcurrentMap<Class<?>, ClassInfo> infos = new ConcurrentHashMap<Class<?>, ClassInfo>();
+
 	/**
-	 * Name of the element to be deserialized
+	 * Regular expression patern for common baseline for Java identifier and XML element name
 	 */
-	private String elementName;
+	private static final Pattern validFieldNamePattern = Pattern.compile("^[a-zA-Z][a-zA-Z0-9]*$");
 
 	/**
-	 * Class being mapped to
+	 * Returns the binding model of a class, building it on first use
+	 * 
+	 * @param type
+	 *            Class being mapped to
+	 * @return The class information
 	 */
-	private Class<?> type;
+	static ClassInfo forClass(Class<?> type) {
+		ClassInfo info = infos.get(type);
+		if (info == null) {
+			info = new ClassInfo(type);
+			ClassInfo existing = infos.putIfAbsent(type, info);
+			if (existing != null) {
+				info = existing;
+			}
+		}
+		return info;
+	}
 
 	/**
-	 * Creates an intance of {@link ClassInfo} with unitialized element name and type.
+	 * Fields that can be deserialized, by element name
 	 */
-	ClassInfo() {
-	}
+	private final Map<String, FieldInfo> fieldsByElement;
+
+	/**
+	 * Class being mapped to
+	 */
+	private final Class<?> type;
 
 	/**
-	 * Creates an intance of {@link ClassInfo} with specified element name and type.
+	 * Creates the binding model of a class.
+	 * <p>
+	 * An element maps to the field of the same name if the name is a valid Java identifier. Otherwise it maps to the
+	 * field annotated with the {@link ElementName} of the element.
+	 * </p>
 	 * 
 	 * @param type
-	 *            Class to which the element maps
-	 * @param elementName
-	 *            Name of the element being mapped
+	 *            Class being mapped to
 	 */
-	ClassInfo(Class<?> type, String elementName) {
+	private ClassInfo(Class<?> type) {
 		this.type = type;
-		this.elementName = elementName;
+		Field[] fields = type.getDeclaredFields();
+		Map<String, FieldInfo> map = new HashMap<String, FieldInfo>(fields.length * 4 / 3 + 1);
+		for (Field field : fields) {
+			ElementName ename = field.getAnnotation(ElementName.class);
+			if ((ename != null) && !validFieldNamePattern.matcher(ename.value()).matches()
+					&& !map.containsKey(ename.value())) {
+				putField(map, type, field, ename.value());
+			}
+			if (validFieldNamePattern.matcher(field.getName()).matches()) {
+				putField(map, type, field, field.getName());
+			}
+		}
+		this.fieldsByElement = map;
 	}
 
 	/**
-	 * Gets the element name under consideration.
+	 * Gets the field mapped by an element.
 	 * 
-	 * @return Name of the element
+	 * @param elementName
+	 *            Name of the element being deserialized
+	 * @return The field information, null if the element maps to no field that can be deserialized
 	 */
-	String getElementName() {
-		return elementName;
+	FieldInfo getFieldInfo(String elementName) {
+		return fieldsByElement.get(elementName);
 	}
 
 	/**
@@ -58,22 +110,10 @@ class ClassInfo {
 		return type;
 	}
 
-	/**
-	 * Sets the element name under consideration.
-	 * 
-	 * @return Name of the element
-	 */
-	void setElementName(String elementName) {
-		this.elementName = elementName;
-	}
-
-	/**
-	 * Sets the class being mapped.
-	 * 
-	 * @param type
-	 *            Class being mapped
-	 */
-	void setType(Class<?> type) {
-		this.type = type;
+	private static void putField(Map<String, FieldInfo> map, Class<?> type, Field field, String elementName) {
+		FieldInfo info = new FieldInfo(type, field, elementName);
+		if (info.getFieldType() != FieldType.NOT_DEFINED) {
+			map.put(elementName, info);
+		}
 	}
 }
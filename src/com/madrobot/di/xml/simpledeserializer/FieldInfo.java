@@ -13,6 +13,10 @@ package com.madrobot.di.xml.simpledeserializer;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.List;
+
+import com.madrobot.di.Converter;
+import com.madrobot.di.xml.simpledeserializer.annotations.ItemType;
 
 /**
  * Holds key information about a field. <br/>
@@ -23,46 +27,95 @@ import java.lang.reflect.Method;
  * <li>Class information of the field</li>
  * <li>Type of the field. See {@link FieldType}</li>
  * <li>Reference to the field. See {@link Field}</li>
- * <li>References to the methods to get or set the value, or add in case of a collection. See {@link Method}</li>
+ * <li>References to the method to set the value, or add in case of a collection. See {@link Method}</li>
  * </ol>
  * <br/>
+ * The information is resolved when the instance is created and never changes. <br/>
  * See {@link XMLDeserializer} for usage
  * 
  * @see XMLDeserializer
  */
-class FieldInfo {
+final class FieldInfo {
 	/**
 	 * Method to add a item to the collection field
 	 */
-	private Method addMethod;
+	private final Method addMethod;
 	/**
 	 * Name of the element
 	 */
-	private String elementName;
+	private final String elementName;
 	/**
 	 * Field reference
 	 */
-	private Field field;
+	private final Field field;
 	/**
 	 * Name of the field
 	 */
-	private String fieldName;
+	private final String fieldName;
 	/**
 	 * Type of the field
 	 */
-	private FieldType fieldType;
+	private final FieldType fieldType;
+	/**
+	 * Whether the items of the collection field are pseudo-primitive
+	 */
+	private final boolean itemPseudoPrimitive;
 	/**
-	 * Method to get the value
+	 * Type of the items of the collection field, from {@link ItemType}
 	 */
-	private Method getMethod;
+	private final Class<?> itemType;
 	/**
 	 * Method to set the value
 	 */
-	private Method setMethod;
+	private final Method setMethod;
 	/**
 	 * Class information about the field type
 	 */
-	private Class<?> type;
+	private final Class<?> type;
+
+	/**
+	 * Resolves the information of a field. The field type is {@link FieldType#NOT_DEFINED} if the field has no
+	 * setter, or no add-method and {@link ItemType} for a collection.
+	 * 
+	 * @param clz
+	 *            Class declaring the field
+	 * @param field
+	 *            Field reference
+	 * @param elementName
+	 *            Name of the element mapped to the field
+	 */
+	FieldInfo(Class<?> clz, Field field, String elementName) {
+		this.elementName = elementName;
+		this.field = field;
+		this.fieldName = field.getName();
+		this.type = field.getType();
+
+		XMLDeserializer deserializer = XMLDeserializer.getInstance();
+		Method add = null;
+		Method set = null;
+		Class<?> items = null;
+		FieldType ft = FieldType.NOT_DEFINED;
+		try {
+			if (List.class.isAssignableFrom(type)) {
+				ItemType itemTypeAnnotation = field.getAnnotation(ItemType.class);
+				if (itemTypeAnnotation != null) {
+					items = itemTypeAnnotation.value();
+					add = clz.getDeclaredMethod(deserializer.getAddMethodName(fieldName), items);
+					ft = FieldType.COLLECTION;
+				}
+			} else {
+				set = clz.getDeclaredMethod(deserializer.getSetMethodName(fieldName), type);
+				ft = Converter.isPseudoPrimitive(type) ? FieldType.PSEUDO_PRIMITIVE : FieldType.COMPOSITE;
+			}
+		} catch (NoSuchMethodException e) {
+			// Elements of the field are skipped
+		}
+		this.addMethod = add;
+		this.setMethod = set;
+		this.itemType = items;
+		this.itemPseudoPrimitive = items != null && Converter.isPseudoPrimitive(items);
+		this.fieldType = ft;
+	}
 
 	/**
 	 * Gets the method to add an item to the collection field
@@ -110,12 +163,12 @@ class FieldInfo {
 	}
 
 	/**
-	 * Gets the method to get the value of the field
+	 * Gets the type of the items of the collection field
 	 * 
-	 * @return The method reference
+	 * @return Item class
 	 */
-	Method getGetMethod() {
-		return getMethod;
+	Class<?> getItemType() {
+		return itemType;
 	}
 
 	/**
@@ -137,82 +190,11 @@ class FieldInfo {
 	}
 
 	/**
-	 * Sets the method to get the value of the field
-	 * 
-	 * @param addMethod
-	 *            Method reference
-	 */
-	void setAddMethod(Method addMethod) {
-		this.addMethod = addMethod;
-	}
-
-	/**
-	 * Sets the name of the element
-	 * 
-	 * @param name
-	 *            Name of the element
-	 */
-	void setElementName(String name) {
-		this.elementName = name;
-	}
-
-	/**
-	 * Sets the field reference
-	 * 
-	 * @param field
-	 *            Field reference
-	 */
-	void setField(Field field) {
-		this.field = field;
-	}
-
-	/**
-	 * Sets the name of the field
-	 * 
-	 * @param fieldName
-	 *            name of the field
-	 */
-	void setFieldName(String fieldName) {
-		this.fieldName = fieldName;
-	}
-
-	/**
-	 * Sets the type of the field
-	 * 
-	 * @param fieldType
-	 *            Field type
-	 */
-	void setFieldType(FieldType fieldType) {
-		this.fieldType = fieldType;
-	}
-
-	/**
-	 * Sets the method to get the value of the field
-	 * 
-	 * @param getMethod
-	 *            Method reference
-	 */
-	void setGetMethod(Method getMethod) {
-		this.getMethod = getMethod;
-	}
-
-	/**
-	 * Sets the method to set the value of the field
-	 * 
-	 * @param setMethod
-	 *            Method reference
-	 */
-	void setSetMethod(Method setMethod) {
-		this.setMethod = setMethod;
-	}
-
-	/**
-	 * Sets the class of the field
+	 * Whether the items of the collection field are pseudo-primitive
 	 * 
-	 * @param type
-	 *            Field class
+	 * @return true if the items are converted from the element text
 	 */
-	void setType(Class<?> type) {
-		this.type = type;
+	boolean isItemPseudoPrimitive() {
+		return itemPseudoPrimitive;
 	}
 }
@@ -13,15 +13,12 @@ package com.madrobot.di.xml.simpledeserializer;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -136,6 +133,12 @@ import android.util.Xml;
  * // Work with aValue...
  * </pre>
  * 
+ * <p>
+ * The fields, setters and add-methods of each model class are resolved once and cached, so deserializing a large
+ * document only dispatches the parser events to the resolved fields. The deserializer can be used by several threads
+ * at once.
+ * </p>
+ * 
  */
 public final class XMLDeserializer {
 	/**
@@ -143,11 +146,6 @@ public final class XMLDeserializer {
 	 */
 	private static final XMLDeserializer instance = new XMLDeserializer();
 
-	/**
-	 * Regular expression patern for common baseline for Java identifier and XML element name
-	 */
-	private static final Pattern validFieldNamePattern = Pattern.compile("^[a-zA-Z][a-zA-Z0-9]*$");
-
 	/**
 	 * Returns the one and only instance of {@see BeanReader}
 	 * 
@@ -160,17 +158,17 @@ public final class XMLDeserializer {
 	/**
 	 * Cached names of the add-methods
 	 */
-	private Map<String, String> addMethodNameMap = new HashMap<String, String>();
+	private final ConcurrentMap<String, String> addMethodNameMap = new ConcurrentHashMap<String, String>();
 
 	/**
 	 * Cached names of the getter methods
 	 */
-	private Map<String, String> getMethodNameMap = new HashMap<String, String>();
+	private final ConcurrentMap<String, String> getMethodNameMap = new ConcurrentHashMap<String, String>();
 
 	/**
 	 * Cached names of the setter methods
 	 */
-	private Map<String, String> setMethodNameMap = new HashMap<String, String>();
+	private final ConcurrentMap<String, String> setMethodNameMap = new ConcurrentHashMap<String, String>();
 
 	/**
 	 * Private constructor to disallow any public instantiation
@@ -205,98 +203,82 @@ public final class XMLDeserializer {
 	 * 
 	 * @param obj
 	 *            Object whose fields need to be set
+	 * @param ci
+	 *            Entity type under consideration
 	 * @param parser
-	 *            XML Parser to read data from
-	 * @param stack
-	 *            Stack of {@link ClassInfo} - entity type under consideration
+	 *            XML Parser to read data from, on the start tag of the element
 	 * @throws XmlPullParserException
 	 *             If an exception occurs during parsing
 	 * @throws IOException
 	 *             If an exception occurs while reading
 	 */
-	private void deserialize(Object obj, XmlPullParser parser, Stack<ClassInfo> stack) throws XmlPullParserException,
+	private void deserialize(Object obj, ClassInfo ci, XmlPullParser parser) throws XmlPullParserException,
 			IOException {
 		int evtType = parser.next();
-		String name;
-		ClassInfo ci = stack.peek();
-		Class<?> clz = ci.getType();
 
-		// Read until the end of the document
-		while (evtType != XmlPullParser.END_DOCUMENT) {
-
-			// If we are done with the parsing of the current element, we done
-			// with this level
-			if (evtType == XmlPullParser.END_TAG) {
-				if (ci.getElementName().equals(parser.getName())) {
-					break;
-				}
-			}
+		// Read until the end of the element. Child elements are read entirely
+		// before the next event, so the first end tag is the element's one
+		while (evtType != XmlPullParser.END_DOCUMENT && evtType != XmlPullParser.END_TAG) {
 
 			// Start of a tag signifies a field to be populated
 			if (evtType == XmlPullParser.START_TAG) {
-				name = parser.getName();
-				FieldInfo info = getFieldInfo(clz, name);
-				FieldType ft = info.getFieldType();
-
-				if (ft.equals(FieldType.PSEUDO_PRIMITIVE)) {
-					// For pseudo-primitive fields, directly convert the value
-					// and set
-					String value = parser.nextText();
-					try {
-						setFieldValue(obj, info, Converter.convertTo(value, info.getType()));
-					} catch (Throwable e) {
-						e.printStackTrace();
-					}
-				} else if (ft.equals(FieldType.COLLECTION)) {
-					// For collection fields, deserialize the contents within
-					// the element and add the value
-					Field fld = info.getField();
-					ItemType itemType = fld.getAnnotation(ItemType.class);
-					if (itemType != null) {
-						Class<?> itemValueType = itemType.value();
-						Object value = null;
-						if (Converter.isPseudoPrimitive(itemValueType)) {
-							value = Converter.convertTo(parser.nextText(), itemValueType);
-						} else {
-							ClassInfo itemCI = new ClassInfo(itemValueType, name);
-							stack.push(itemCI);
-							try {
-								Object subObj = itemValueType.newInstance();
-								addFieldValue(obj, info, subObj);
-								deserialize(subObj, parser, stack);
-							} catch (Throwable e) {
-								e.printStackTrace();
-							}
+				FieldInfo info = ci.getFieldInfo(parser.getName());
+				if (info == null) {
+					// process till element end
+					skipElement(parser);
+				} else {
+					switch (info.getFieldType()) {
+					case PSEUDO_PRIMITIVE:
+						// For pseudo-primitive fields, directly convert the
+						// value and set
+						String value = parser.nextText();
+						try {
+							setFieldValue(obj, info, Converter.convertTo(value, info.getType()));
+						} catch (Throwable e) {
+							e.printStackTrace();
 						}
-						if (value != null) {
+						break;
+					case COLLECTION:
+						// For collection fields, deserialize the contents
+						// within the element and add the value
+						Class<?> itemValueType = info.getItemType();
+						if (info.isItemPseudoPrimitive()) {
 							try {
-								addFieldValue(obj, info, value);
+								Object item = Converter.convertTo(parser.nextText(), itemValueType);
+								if (item != null) {
+									addFieldValue(obj, info, item);
+								}
 							} catch (Throwable e) {
 								e.printStackTrace();
 							}
+						} else {
+							Object item = newInstance(itemValueType);
+							if (item != null && invoke(info.getAddMethod(), obj, item)) {
+								deserialize(item, ClassInfo.forClass(itemValueType), parser);
+							} else {
+								skipElement(parser);
+							}
 						}
+						break;
+					case COMPOSITE:
+						// For composite fields, instantiate appropriate data
+						// type and set the value
+						Class<?> subType = info.getType();
+						Object subObj = newInstance(subType);
+						if (subObj != null && invoke(info.getSetMethod(), obj, subObj)) {
+							deserialize(subObj, ClassInfo.forClass(subType), parser);
+						} else {
+							skipElement(parser);
+						}
+						break;
+					default:
+						skipElement(parser);
+						break;
 					}
-				} else if (ft.equals(FieldType.COMPOSITE)) {
-					// For composite fields, instantiate appropriate data type
-					// and set the value
-					Class<?> subType = info.getType();
-					ClassInfo itemCI = new ClassInfo(subType, name);
-					stack.push(itemCI);
-					try {
-						Object subObj = subType.newInstance();
-						setFieldValue(obj, info, subObj);
-						deserialize(subObj, parser, stack);
-					} catch (Throwable e) {
-						e.printStackTrace();
-					}
-				} else if (ft.equals(FieldType.NOT_DEFINED)) {
-					// process till element end
-					skipElement(parser, name);
 				}
 			}
 			evtType = parser.next();
 		}
-		stack.pop();
 	}
 
 	/**
@@ -307,98 +289,15 @@ public final class XMLDeserializer {
 	 * @return Name of the add-method for the field
 	 */
 	public String getAddMethodName(String fieldName) {
-		if (addMethodNameMap.containsKey(fieldName)) {
-			return addMethodNameMap.get(fieldName);
+		String method = addMethodNameMap.get(fieldName);
+		if (method != null) {
+			return method;
 		}
-		String method = "add" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+		method = "add" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
 		addMethodNameMap.put(fieldName, method);
 		return method;
 	}
 
-	/**
-	 * Retrieves the field information for the specified type and element name
-	 * 
-	 * @param clz
-	 *            Entity type under consideration
-	 * @param elementName
-	 *            Name of the element being deserialized
-	 * @return Field information with all details
-	 */
-	private FieldInfo getFieldInfo(Class<?> clz, String elementName) {
-		FieldInfo info = new FieldInfo();
-		info.setElementName(elementName);
-		info.setFieldType(FieldType.NOT_DEFINED);
-
-		String fieldName = getFieldName(clz, elementName);
-		if (fieldName == null) {
-			return info;
-		}
-		info.setFieldName(fieldName);
-
-		try {
-			Field field = clz.getDeclaredField(fieldName);
-			if (field != null) {
-				Method method = null;
-				Class<?> type = field.getType();
-				info.setType(type);
-				info.setField(field);
-				if (List.class.isAssignableFrom(field.getType())) {
-					String methodName = getAddMethodName(fieldName);
-					ItemType itemType = field.getAnnotation(ItemType.class);
-					Class<?> itemValueType = (itemType != null) ? itemType.value() : Object.class;
-					method = clz.getDeclaredMethod(methodName, itemValueType);
-					info.setAddMethod(method);
-				} else {
-					String methodName = getSetMethodName(fieldName);
-					method = clz.getDeclaredMethod(methodName, type);
-					info.setSetMethod(method);
-				}
-				if (method != null) {
-					if (Converter.isPseudoPrimitive(type)) {
-						info.setFieldType(FieldType.PSEUDO_PRIMITIVE);
-					} else if (List.class.isAssignableFrom(type)) {
-						info.setFieldType(FieldType.COLLECTION);
-					} else {
-						info.setFieldType(FieldType.COMPOSITE);
-					}
-				}
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-
-		return info;
-	}
-
-	/**
-	 * Gets the field name for the corresponding element in the specified entity type.
-	 * <p>
-	 * If the field with exact name does not exist, it makes use of {@see ElementName} annotation on any of the fields
-	 * declared in the class to identify the correct field in the entity
-	 * </p>
-	 * 
-	 * @param clz
-	 *            Entity type under consideration
-	 * @param elementName
-	 *            Name of the element being deserialized
-	 * @return Name of the field, if found, null otherwise
-	 */
-	private String getFieldName(Class<?> clz, String elementName) {
-		if (validFieldNamePattern.matcher(elementName).matches()) {
-			return elementName;
-		}
-		Field[] fields = clz.getDeclaredFields();
-		String fieldName = null;
-		for (Field field : fields) {
-			ElementName ename = field.getAnnotation(ElementName.class);
-			if ((ename != null) && elementName.equals(ename.value())) {
-				fieldName = field.getName();
-				break;
-			}
-		}
-		return fieldName;
-	}
-
 	/**
 	 * Returns the name of the getter method for a field.
 	 * 
@@ -407,10 +306,11 @@ public final class XMLDeserializer {
 	 * @return Name of the getter method for the field
 	 */
 	public String getGetMethodName(String fieldName) {
-		if (getMethodNameMap.containsKey(fieldName)) {
-			return getMethodNameMap.get(fieldName);
+		String method = getMethodNameMap.get(fieldName);
+		if (method != null) {
+			return method;
 		}
-		String method = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+		method = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
 		getMethodNameMap.put(fieldName, method);
 		return method;
 	}
@@ -423,14 +323,44 @@ public final class XMLDeserializer {
 	 * @return Name of the setter method for the field
 	 */
 	public String getSetMethodName(String fieldName) {
-		if (setMethodNameMap.containsKey(fieldName)) {
-			return setMethodNameMap.get(fieldName);
+		String method = setMethodNameMap.get(fieldName);
+		if (method != null) {
+			return method;
 		}
-		String method = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+		method = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
 		setMethodNameMap.put(fieldName, method);
 		return method;
 	}
 
+	/**
+	 * Invokes a setter or add-method
+	 * 
+	 * @return false if the invocation failed
+	 */
+	private boolean invoke(Method method, Object obj, Object value) {
+		try {
+			method.invoke(obj, value);
+			return true;
+		} catch (Throwable e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Instantiates a model class
+	 * 
+	 * @return The new instance, null if the class cannot be instantiated
+	 */
+	private Object newInstance(Class<?> type) {
+		try {
+			return type.newInstance();
+		} catch (Throwable e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
 	/**
 	 * Deserializes the XML data from the input to the corresponding entity type <br/>
 	 * If there is an error while parsing, if possible it will try to ignore it, otherwise returns a null value.
@@ -467,7 +397,6 @@ public final class XMLDeserializer {
 	 */
 	public <T> T readToBean(XmlPullParser parser, Class<T> bean) {
 		T rv = null;
-		Stack<ClassInfo> stack = new Stack<ClassInfo>();
 
 		try {
 			int evtType = -1;
@@ -475,12 +404,9 @@ public final class XMLDeserializer {
 
 			while (evtType != XmlPullParser.END_DOCUMENT) {
 				if (evtType == XmlPullParser.START_TAG) {
-					String name = parser.getName();
 					if (bean != null) {
-						ClassInfo rootCI = new ClassInfo(bean, name);
-						stack.push(rootCI);
 						rv = bean.newInstance();
-						deserialize(rv, parser, stack);
+						deserialize(rv, ClassInfo.forClass(bean), parser);
 						break;
 					}
 				}
@@ -517,31 +443,27 @@ public final class XMLDeserializer {
 	}
 
 	/**
-	 * Skips the current element.
+	 * Skips the current element, with its children.
 	 * 
 	 * @param parser
-	 *            Parser for reading data
-	 * @param elementName
-	 *            Element to be skipped
+	 *            Parser for reading data, on the start tag of the element
 	 * @throws XmlPullParserException
 	 *             If an exception occurs during parsing
 	 * @throws IOException
 	 *             If an exception occurs while reading
 	 */
-	private void skipElement(XmlPullParser parser, String elementName) throws XmlPullParserException, IOException {
-		int indent = 0;
-		int evtType = parser.next();
-
-		boolean finished = (indent == 0) && (evtType == XmlPullParser.END_TAG) && parser.getName().equals(elementName);
-
-		while (!finished) {
-			evtType = parser.next();
-			if ((evtType == XmlPullParser.START_TAG) && parser.getName().equals(elementName)) {
-				indent++;
-			} else if ((evtType == XmlPullParser.START_TAG) && parser.getName().equals(elementName)) {
-				indent--;
+	private void skipElement(XmlPullParser parser) throws XmlPullParserException, IOException {
+		int depth = 1;
+		while (depth > 0) {
+			int evtType = parser.next();
+			if (evtType == XmlPullParser.START_TAG) {
+				depth++;
+			} else if (evtType == XmlPullParser.END_TAG) {
+				depth--;
+			} else if (evtType == XmlPullParser.END_DOCUMENT) {
+				break;
 			}
-			finished = (indent == 0) && (evtType == XmlPullParser.END_TAG) && parser.getName().equals(elementName);
 		}
 	}
+
 }
@@ -2,8 +2,11 @@
 package com.madrobot.io.file;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -14,12 +17,18 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -69,6 +78,20 @@ import java.util.concurrent.TimeUnit;
  * observe the value at the time that {@link #get} was called. Updates and
  * removals after the call do not impact ongoing reads.
  *
+ * <p>Operations on different keys do not block each other while files are
+ * opened, renamed or deleted: each key is guarded by one of a fixed set of
+ * lock stripes and the cache wide lock is only held to update the in-memory
+ * index. A cache opened in concurrent mode (see
+ * {@link #open(File, int, int, long, boolean)}) additionally hands journal
+ * records to a background writer that batches them and syncs the journal to
+ * disk once per batch.
+ *
+ * <p>The journal is a text file by default. Caches with many entries can use a
+ * binary journal instead (see
+ * {@link #open(File, int, int, long, boolean, boolean)}): a compact snapshot
+ * that is memory-mapped when the cache is opened, followed by an append-only
+ * tail. Opening a cache in one format migrates a journal written in the other.
+ *
  * <p>This class is tolerant of some I/O errors. If files are missing from the
  * filesystem, the corresponding entries will be dropped from the cache. If
  * an error occurs while writing a cache value, the edit will fail silently.
@@ -259,13 +282,19 @@ public final class DiskLRUCache implements Closeable {
     }
     /**
      * A snapshot of the values for an entry.
+     *
+     * <p>Besides streams, each value can be read through its
+     * {@link FileChannel} or mapped into memory. Large values can then be
+     * decoded from a {@link MappedByteBuffer} or sent to a socket with
+     * {@link #transferTo} without being copied through the Java heap. The
+     * channel shares its position with the value's input stream.
      */
     public final class Snapshot implements Closeable {
-        private final InputStream[] ins;
+        private final FileInputStream[] ins;
         private final String key;
         private final long sequenceNumber;
 
-        private Snapshot(String key, long sequenceNumber, InputStream[] ins) {
+        private Snapshot(String key, long sequenceNumber, FileInputStream[] ins) {
             this.key = key;
             this.sequenceNumber = sequenceNumber;
             this.ins = ins;
@@ -286,6 +315,14 @@ public final class DiskLRUCache implements Closeable {
             return DiskLRUCache.this.edit(key, sequenceNumber);
         }
 
+        /**
+         * Returns the read-only channel of the value for {@code index}. The
+         * channel is closed when this snapshot is closed.
+         */
+        public FileChannel getChannel(int index) {
+            return ins[index].getChannel();
+        }
+
         /**
          * Returns the unbuffered stream with the value for {@code index}.
          */
@@ -293,6 +330,46 @@ public final class DiskLRUCache implements Closeable {
             return ins[index];
         }
 
+        /**
+         * Returns the length in bytes of the value for {@code index}.
+         */
+        public long getLength(int index) throws IOException {
+            return getChannel(index).size();
+        }
+
+        /**
+         * Maps the value for {@code index} into memory. The buffer is
+         * read-only and remains valid after this snapshot is closed.
+         */
+        public MappedByteBuffer map(int index) throws IOException {
+            FileChannel channel = getChannel(index);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        /**
+         * Writes the whole value for {@code index} to {@code target}, letting
+         * the operating system copy the bytes directly when it can. The target
+         * should be in blocking mode.
+         *
+         * @return the number of bytes written, the length of the value
+         * @throws IOException if the target stops accepting bytes before the
+         *     whole value is written, as a non-blocking channel may
+         */
+        public long transferTo(int index, WritableByteChannel target) throws IOException {
+            FileChannel channel = getChannel(index);
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("Target stopped accepting bytes after "
+                            + position + " of " + size);
+                }
+                position += transferred;
+            }
+            return position;
+        }
+
         /**
          * Returns the string value for {@code index}.
          */
@@ -300,17 +377,220 @@ public final class DiskLRUCache implements Closeable {
             return inputStreamToString(getInputStream(index));
         }
     }
+
+    /**
+     * Appends records to the journal file. Records are appended while holding
+     * the cache lock so they are journaled in the order the index changed.
+     *
+     * <p>In background mode {@link #append} only queues the record. A single
+     * writer thread drains the queue, writes the batch and syncs the journal
+     * once per batch.
+     */
+    private final class Journal implements Runnable {
+        private final boolean background;
+        private boolean closed;
+        /** Number of records queued since the journal was opened. */
+        private long enqueued;
+        private IOException failure;
+        /** Incremented when the journal is rebuilt, invalidating queued records. */
+        private volatile int generation;
+        /** Guards the journal file and its writer. */
+        private final Object ioLock = new Object();
+        private FileOutputStream out;
+        private ArrayList<byte[]> pending = new ArrayList<byte[]>();
+        private Thread thread;
+        private OutputStream writer;
+        /** Number of queued records written or made redundant by a rebuild. */
+        private long written;
+
+        private Journal(boolean background) throws IOException {
+            this.background = background;
+            openWriter();
+            if (background) {
+                thread = new Thread(this, "DiskLRUCache journal " + directory.getName());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        /**
+         * Appends a record for {@code key} to the journal.
+         *
+         * @param lengths the value lengths of a {@link #CLEAN} record, null for
+         *     other records
+         * @return a ticket to pass to {@link #await}
+         */
+        private long append(String op, String key, long[] lengths) throws IOException {
+            byte[] record = encodeRecord(op, key, lengths);
+            if (!background) {
+                synchronized (ioLock) {
+                    writer.write(record);
+                }
+                return 0;
+            }
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                pending.add(record);
+                notifyAll();
+                return ++enqueued;
+            }
+        }
+
+        /**
+         * Blocks until the record identified by {@code ticket} and all the
+         * records appended before it are written to the file system.
+         */
+        private void await(long ticket) throws IOException {
+            if (!background) {
+                synchronized (ioLock) {
+                    writer.flush();
+                }
+                return;
+            }
+            synchronized (this) {
+                while (written < ticket && failure == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }
+
+        private void close() throws IOException {
+            if (background) {
+                synchronized (this) {
+                    closed = true;
+                    notifyAll();
+                }
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (ioLock) {
+                writer.close();
+            }
+        }
+
+        private void flush() throws IOException {
+            long ticket;
+            synchronized (this) {
+                ticket = enqueued;
+            }
+            await(ticket);
+        }
+
+        private void openWriter() throws IOException {
+            File file = binaryJournal ? journalTailFile : journalFile;
+            boolean empty = file.length() == 0;
+            out = new FileOutputStream(file, true);
+            writer = new BufferedOutputStream(out);
+            if (binaryJournal && empty) {
+                DataOutputStream header = new DataOutputStream(writer);
+                header.writeInt(BINARY_MAGIC);
+                header.writeInt(BINARY_VERSION);
+                header.writeLong(journalGeneration);
+                header.flush();
+            }
+        }
+
+        /**
+         * Replaces the journal with a compact one. Queued records are dropped:
+         * the caller holds the cache lock so the rebuilt journal already
+         * reflects them.
+         */
+        private void rebuild() throws IOException {
+            synchronized (ioLock) {
+                int dropped;
+                synchronized (this) {
+                    dropped = pending.size();
+                    pending = new ArrayList<byte[]>();
+                    generation++;
+                }
+                writer.close();
+                writeJournal();
+                openWriter();
+                synchronized (this) {
+                    written += dropped;
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override public void run() {
+            while (true) {
+                ArrayList<byte[]> batch;
+                int batchGeneration;
+                synchronized (this) {
+                    while (pending.isEmpty() && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    batch = pending;
+                    pending = new ArrayList<byte[]>();
+                    batchGeneration = generation;
+                }
+                try {
+                    synchronized (ioLock) {
+                        if (batchGeneration == generation) {
+                            for (int i = 0, n = batch.size(); i < n; i++) {
+                                writer.write(batch.get(i));
+                            }
+                            writer.flush();
+                            out.getFD().sync();
+                        }
+                    }
+                } catch (IOException e) {
+                    synchronized (this) {
+                        failure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    written += batch.size();
+                    notifyAll();
+                }
+            }
+        }
+    }
     static final long ANY_SEQUENCE_NUMBER = -1;
     private static final String CLEAN = "CLEAN";
     private static final String DIRTY = "DIRTY";
+    /** Identifies binary journal files: "DLRU" in ASCII. */
+    static final int BINARY_MAGIC = 0x444c5255;
+    static final int BINARY_VERSION = 2;
+    private static final byte BINARY_CLEAN = 1;
+    private static final byte BINARY_DIRTY = 2;
+    private static final byte BINARY_READ = 4;
+    private static final byte BINARY_REMOVE = 3;
     static final String JOURNAL_FILE = "journal";
     static final String JOURNAL_FILE_TMP = "journal.tmp";
+    static final String JOURNAL_SNAPSHOT_FILE = "journal.snapshot";
+    static final String JOURNAL_SNAPSHOT_FILE_TMP = "journal.snapshot.tmp";
+    static final String JOURNAL_TAIL_FILE = "journal.tail";
     static final String MAGIC = "libcore.io.DiskLruCache";
 
     private static final String READ = "READ";
 
     private static final String REMOVE = "REMOVE";
 
+    private static final int STRIPE_COUNT = 32;
+
     /* XXX From java.nio.charset.Charsets */
     private static final Charset UTF_8 = Charset.forName("UTF-8");
 
@@ -383,6 +663,21 @@ public final class DiskLRUCache implements Closeable {
      * occasionally be compacted by dropping redundant lines. A temporary file named
      * "journal.tmp" will be used during compaction; that file should be deleted if
      * it exists when the cache is opened.
+     *
+     * The binary journal holds the same records in two files. Every record is
+     * length prefixed:
+     *     int length, byte op, int key hash, short key length, UTF-8 key bytes
+     * followed, for CLEAN records, by one long per value. The key hash is the
+     * key's String.hashCode() and lets a reader detect a torn record.
+     *
+     * "journal.snapshot" is the compacted journal: a header of magic, version,
+     * application version, value count, a long generation and the record
+     * count, followed by one CLEAN or DIRTY record per entry. It is written to
+     * "journal.snapshot.tmp" and renamed into place.
+     *
+     * "journal.tail" holds the records appended since the snapshot, after a
+     * header of magic, version and generation. A tail whose generation does not
+     * match the snapshot's predates it and is ignored.
      */
 
     /* XXX From libcore.io.IoUtils */
@@ -427,6 +722,44 @@ public final class DiskLRUCache implements Closeable {
      */
     public static DiskLRUCache open(File directory, int appVersion, int valueCount, long maxSize)
             throws IOException {
+        return open(directory, appVersion, valueCount, maxSize, false);
+    }
+
+    /**
+     * Opens the cache in {@code directory}, creating a cache if none exists
+     * there.
+     *
+     * @param directory a writable directory
+     * @param appVersion
+     * @param valueCount the number of values per cache entry. Must be positive.
+     * @param maxSize the maximum number of bytes this cache should use to store
+     * @param concurrent true to append journal records from a background
+     *     thread that batches writes and syncs. Callers no longer pay for
+     *     journal I/O, but records written just before a crash may be lost
+     * @throws IOException if reading or writing the cache directory fails
+     */
+    public static DiskLRUCache open(File directory, int appVersion, int valueCount, long maxSize,
+            boolean concurrent) throws IOException {
+        return open(directory, appVersion, valueCount, maxSize, concurrent, false);
+    }
+
+    /**
+     * Opens the cache in {@code directory}, creating a cache if none exists
+     * there.
+     *
+     * @param directory a writable directory
+     * @param appVersion
+     * @param valueCount the number of values per cache entry. Must be positive.
+     * @param maxSize the maximum number of bytes this cache should use to store
+     * @param concurrent true to append journal records from a background
+     *     thread that batches writes and syncs
+     * @param binaryJournal true to keep the journal as a memory-mapped binary
+     *     snapshot plus an append-only tail. An existing text journal is
+     *     migrated, and vice versa
+     * @throws IOException if reading or writing the cache directory fails
+     */
+    public static DiskLRUCache open(File directory, int appVersion, int valueCount, long maxSize,
+            boolean concurrent, boolean binaryJournal) throws IOException {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("maxSize <= 0");
         }
@@ -435,12 +768,31 @@ public final class DiskLRUCache implements Closeable {
         }
 
         // prefer to pick up where we left off
-        DiskLRUCache cache = new DiskLRUCache(directory, appVersion, valueCount, maxSize);
-        if (cache.journalFile.exists()) {
+        DiskLRUCache cache = new DiskLRUCache(directory, appVersion, valueCount, maxSize, concurrent,
+                binaryJournal);
+        boolean hasText = cache.journalFile.exists();
+        boolean hasBinary = cache.journalSnapshotFile.exists();
+        if (hasText || hasBinary) {
             try {
-                cache.readJournal();
+                // prefer the configured format, migrating from the other one
+                boolean readBinary = binaryJournal ? hasBinary : !hasText;
+                if (readBinary) {
+                    cache.readBinaryJournal();
+                } else {
+                    cache.readJournal();
+                }
                 cache.processJournal();
-                cache.journalWriter = new BufferedWriter(new FileWriter(cache.journalFile, true));
+                if (readBinary == binaryJournal) {
+                    cache.journal = cache.new Journal(concurrent);
+                } else {
+                    cache.rebuildJournal();
+                    if (readBinary) {
+                        deleteIfExists(cache.journalSnapshotFile);
+                        deleteIfExists(cache.journalTailFile);
+                    } else {
+                        deleteIfExists(cache.journalFile);
+                    }
+                }
                 return cache;
             } catch (IOException journalIsCorrupt) {
                 System.out.println("DiskLruCache " + directory + " is corrupt: "
@@ -451,7 +803,8 @@ public final class DiskLRUCache implements Closeable {
 
         // create a new empty cache
         directory.mkdirs();
-        cache = new DiskLRUCache(directory, appVersion, valueCount, maxSize);
+        cache = new DiskLRUCache(directory, appVersion, valueCount, maxSize, concurrent,
+                binaryJournal);
         cache.rebuildJournal();
         return cache;
     }
@@ -493,12 +846,12 @@ public final class DiskLRUCache implements Closeable {
     private final int appVersion;
     private final Callable<Void> cleanupCallable = new Callable<Void>() {
         @Override public Void call() throws Exception {
+            if (isClosed()) {
+                return null;
+            }
+            trimToSize();
             synchronized (DiskLRUCache.this) {
-                if (journalWriter == null) {
-                    return null; // closed
-                }
-                trimToSize();
-                if (journalRebuildRequired()) {
+                if (journal != null && journalRebuildRequired()) {
                     rebuildJournal();
                     redundantOpCount = 0;
                 }
@@ -506,6 +859,8 @@ public final class DiskLRUCache implements Closeable {
             return null;
         }
     };
+    private final boolean binaryJournal;
+    private final boolean concurrent;
     private final File directory;
     /** This cache uses a single background thread to evict entries. */
     private final ExecutorService executorService = new ThreadPoolExecutor(0, 1,
@@ -514,7 +869,12 @@ public final class DiskLRUCache implements Closeable {
     private final File journalFile;
 
     private final File journalFileTmp;
-    private Writer journalWriter;
+    /** Generation of the binary snapshot, matched by its tail. */
+    private long journalGeneration;
+    private final File journalSnapshotFile;
+    private final File journalSnapshotFileTmp;
+    private final File journalTailFile;
+    private Journal journal;
 
     private final LinkedHashMap<String, Entry> lruEntries
             = new LinkedHashMap<String, Entry>(0, 0.75f, true);
@@ -532,19 +892,34 @@ public final class DiskLRUCache implements Closeable {
 
     private long size = 0;
 
+    /**
+     * Per key locks. A key's stripe is held while its files are opened,
+     * renamed or deleted, and is always acquired before the cache lock.
+     */
+    private final Object[] stripes = new Object[STRIPE_COUNT];
+
     private final int valueCount;
 
-    private DiskLRUCache(File directory, int appVersion, int valueCount, long maxSize) {
+    private DiskLRUCache(File directory, int appVersion, int valueCount, long maxSize,
+            boolean concurrent, boolean binaryJournal) {
         this.directory = directory;
         this.appVersion = appVersion;
         this.journalFile = new File(directory, JOURNAL_FILE);
         this.journalFileTmp = new File(directory, JOURNAL_FILE_TMP);
+        this.journalSnapshotFile = new File(directory, JOURNAL_SNAPSHOT_FILE);
+        this.journalSnapshotFileTmp = new File(directory, JOURNAL_SNAPSHOT_FILE_TMP);
+        this.journalTailFile = new File(directory, JOURNAL_TAIL_FILE);
         this.valueCount = valueCount;
         this.maxSize = maxSize;
+        this.concurrent = concurrent;
+        this.binaryJournal = binaryJournal;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Object();
+        }
     }
 
     private void checkNotClosed() {
-        if (journalWriter == null) {
+        if (journal == null) {
             throw new IllegalStateException("cache is closed");
         }
     }
@@ -553,67 +928,99 @@ public final class DiskLRUCache implements Closeable {
      * Closes this cache. Stored values will remain on the filesystem.
      */
     @Override
-	public synchronized void close() throws IOException {
-        if (journalWriter == null) {
-            return; // already closed
+	public void close() throws IOException {
+        ArrayList<Editor> editors = new ArrayList<Editor>();
+        synchronized (this) {
+            if (journal == null) {
+                return; // already closed
+            }
+            for (Entry entry : lruEntries.values()) {
+                if (entry.currentEditor != null) {
+                    editors.add(entry.currentEditor);
+                }
+            }
         }
-        for (Entry entry : new ArrayList<Entry>(lruEntries.values())) {
-            if (entry.currentEditor != null) {
-                entry.currentEditor.abort();
+        for (Editor editor : editors) {
+            try {
+                editor.abort();
+            } catch (IllegalStateException completedConcurrently) {
             }
         }
         trimToSize();
-        journalWriter.close();
-        journalWriter = null;
+        Journal closing;
+        synchronized (this) {
+            closing = journal;
+            journal = null;
+        }
+        if (closing != null) {
+            closing.close();
+        }
     }
 
-    private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+    private void completeEdit(Editor editor, boolean success) throws IOException {
         Entry entry = editor.entry;
-        if (entry.currentEditor != editor) {
-            throw new IllegalStateException();
-        }
-
-        // if this edit is creating the entry for the first time, every index must have a value
-        if (success && !entry.readable) {
-            for (int i = 0; i < valueCount; i++) {
-                if (!entry.getDirtyFile(i).exists()) {
-                    editor.abort();
-                    throw new IllegalStateException("edit didn't create file " + i);
+        synchronized (stripeFor(entry.key)) {
+            boolean readable;
+            synchronized (this) {
+                if (entry.currentEditor != editor) {
+                    throw new IllegalStateException();
                 }
+                readable = entry.readable;
             }
-        }
 
-        for (int i = 0; i < valueCount; i++) {
-            File dirty = entry.getDirtyFile(i);
-            if (success) {
-                if (dirty.exists()) {
-                    File clean = entry.getCleanFile(i);
-                    dirty.renameTo(clean);
-                    long oldLength = entry.lengths[i];
-                    long newLength = clean.length();
-                    entry.lengths[i] = newLength;
-                    size = size - oldLength + newLength;
+            // if this edit is creating the entry for the first time, every index must have a value
+            if (success && !readable) {
+                for (int i = 0; i < valueCount; i++) {
+                    if (!entry.getDirtyFile(i).exists()) {
+                        editor.abort();
+                        throw new IllegalStateException("edit didn't create file " + i);
+                    }
                 }
-            } else {
-                deleteIfExists(dirty);
             }
-        }
 
-        redundantOpCount++;
-        entry.currentEditor = null;
-        if (entry.readable | success) {
-            entry.readable = true;
-            journalWriter.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
-            if (success) {
-                entry.sequenceNumber = nextSequenceNumber++;
+            // the stripe keeps readers of this key away while files are renamed
+            long[] newLengths = new long[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                File dirty = entry.getDirtyFile(i);
+                newLengths[i] = -1;
+                if (success) {
+                    if (dirty.exists()) {
+                        File clean = entry.getCleanFile(i);
+                        dirty.renameTo(clean);
+                        newLengths[i] = clean.length();
+                    }
+                } else {
+                    deleteIfExists(dirty);
+                }
             }
-        } else {
-            lruEntries.remove(entry.key);
-            journalWriter.write(REMOVE + ' ' + entry.key + '\n');
-        }
 
-        if (size > maxSize || journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+            synchronized (this) {
+                for (int i = 0; i < valueCount; i++) {
+                    if (newLengths[i] != -1) {
+                        size = size - entry.lengths[i] + newLengths[i];
+                        entry.lengths[i] = newLengths[i];
+                    }
+                }
+                redundantOpCount++;
+                entry.currentEditor = null;
+                if (journal == null) {
+                    return; // closed while the files were being published
+                }
+                if (entry.readable | success) {
+                    entry.readable = true;
+                    journal.append(CLEAN, entry.key, entry.lengths);
+                    if (success) {
+                        entry.sequenceNumber = nextSequenceNumber++;
+                    }
+                } else {
+                    lruEntries.remove(entry.key);
+                    journal.append(REMOVE, entry.key, null);
+                }
+
+                if (size > maxSize || journalRebuildRequired()) {
+                    executorService.submit(cleanupCallable);
+                }
+            }
         }
     }
 
@@ -635,37 +1042,53 @@ public final class DiskLRUCache implements Closeable {
         return edit(key, ANY_SEQUENCE_NUMBER);
     }
 
-    private synchronized Editor edit(String key, long expectedSequenceNumber) throws IOException {
-        checkNotClosed();
+    private Editor edit(String key, long expectedSequenceNumber) throws IOException {
         validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (expectedSequenceNumber != ANY_SEQUENCE_NUMBER
-                && (entry == null || entry.sequenceNumber != expectedSequenceNumber)) {
-            return null; // snapshot is stale
-        }
-        if (entry == null) {
-            entry = new Entry(key);
-            lruEntries.put(key, entry);
-        } else if (entry.currentEditor != null) {
-            return null; // another edit is in progress
-        }
+        Editor editor;
+        long ticket;
+        Journal current;
+        // a removal of this key may be deleting its files
+        synchronized (stripeFor(key)) {
+            synchronized (this) {
+                checkNotClosed();
+                Entry entry = lruEntries.get(key);
+                if (expectedSequenceNumber != ANY_SEQUENCE_NUMBER
+                        && (entry == null || entry.sequenceNumber != expectedSequenceNumber)) {
+                    return null; // snapshot is stale
+                }
+                if (entry == null) {
+                    entry = new Entry(key);
+                    lruEntries.put(key, entry);
+                } else if (entry.currentEditor != null) {
+                    return null; // another edit is in progress
+                }
 
-        Editor editor = new Editor(entry);
-        entry.currentEditor = editor;
+                editor = new Editor(entry);
+                entry.currentEditor = editor;
+                current = journal;
+                ticket = current.append(DIRTY, key, null);
+            }
+        }
 
         // flush the journal before creating files to prevent file leaks
-        journalWriter.write(DIRTY + ' ' + key + '\n');
-        journalWriter.flush();
+        current.await(ticket);
         return editor;
     }
 
     /**
      * Force buffered operations to the filesystem.
      */
-    public synchronized void flush() throws IOException {
-        checkNotClosed();
+    public void flush() throws IOException {
+        synchronized (this) {
+            checkNotClosed();
+        }
         trimToSize();
-        journalWriter.flush();
+        Journal current;
+        synchronized (this) {
+            checkNotClosed();
+            current = journal;
+        }
+        current.flush();
     }
 
     /**
@@ -673,40 +1096,55 @@ public final class DiskLRUCache implements Closeable {
      * exist is not currently readable. If a value is returned, it is moved to
      * the head of the LRU queue.
      */
-    public synchronized Snapshot get(String key) throws IOException {
-        checkNotClosed();
+    public Snapshot get(String key) throws IOException {
         validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (entry == null) {
-            return null;
-        }
+        synchronized (stripeFor(key)) {
+            Entry entry;
+            long sequenceNumber;
+            synchronized (this) {
+                checkNotClosed();
+                entry = lruEntries.get(key);
+                if (entry == null) {
+                    return null;
+                }
 
-        if (!entry.readable) {
-            return null;
-        }
+                if (!entry.readable) {
+                    return null;
+                }
+                sequenceNumber = entry.sequenceNumber;
+            }
 
-        /*
-         * Open all streams eagerly to guarantee that we see a single published
-         * snapshot. If we opened streams lazily then the streams could come
-         * from different edits.
-         */
-        InputStream[] ins = new InputStream[valueCount];
-        try {
-            for (int i = 0; i < valueCount; i++) {
-                ins[i] = new FileInputStream(entry.getCleanFile(i));
+            /*
+             * Open all streams eagerly to guarantee that we see a single published
+             * snapshot. If we opened streams lazily then the streams could come
+             * from different edits. Commits and removals of this key wait on the
+             * stripe, so the files cannot change while they are opened.
+             */
+            FileInputStream[] ins = new FileInputStream[valueCount];
+            try {
+                for (int i = 0; i < valueCount; i++) {
+                    ins[i] = new FileInputStream(entry.getCleanFile(i));
+                }
+            } catch (FileNotFoundException e) {
+                // a file must have been deleted manually!
+                for (InputStream in : ins) {
+                    closeQuietly(in);
+                }
+                return null;
             }
-        } catch (FileNotFoundException e) {
-            // a file must have been deleted manually!
-            return null;
-        }
 
-        redundantOpCount++;
-        journalWriter.append(READ + ' ' + key + '\n');
-        if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
-        }
+            synchronized (this) {
+                if (journal != null) {
+                    redundantOpCount++;
+                    journal.append(READ, key, null);
+                    if (journalRebuildRequired()) {
+                        executorService.submit(cleanupCallable);
+                    }
+                }
+            }
 
-        return new Snapshot(key, entry.sequenceNumber, ins);
+            return new Snapshot(key, sequenceNumber, ins);
+        }
     }
 
     /**
@@ -719,8 +1157,15 @@ public final class DiskLRUCache implements Closeable {
     /**
      * Returns true if this cache has been closed.
      */
-    public boolean isClosed() {
-        return journalWriter == null;
+    public synchronized boolean isClosed() {
+        return journal == null;
+    }
+
+    /**
+     * Returns true if journal records are appended by a background writer.
+     */
+    public boolean isConcurrent() {
+        return concurrent;
     }
 
     /**
@@ -747,6 +1192,7 @@ public final class DiskLRUCache implements Closeable {
      */
     private void processJournal() throws IOException {
         deleteIfExists(journalFileTmp);
+        deleteIfExists(journalSnapshotFileTmp);
         for (Iterator<Entry> i = lruEntries.values().iterator(); i.hasNext(); ) {
             Entry entry = i.next();
             if (entry.currentEditor == null) {
@@ -793,6 +1239,112 @@ public final class DiskLRUCache implements Closeable {
         }
     }
 
+    /**
+     * Loads the binary journal. The snapshot and the tail are memory-mapped
+     * and decoded in place. A torn record at the end of the tail is truncated.
+     */
+    private void readBinaryJournal() throws IOException {
+        RandomAccessFile snapshot = new RandomAccessFile(journalSnapshotFile, "r");
+        try {
+            FileChannel channel = snapshot.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 28
+                    || buffer.getInt() != BINARY_MAGIC
+                    || buffer.getInt() != BINARY_VERSION
+                    || buffer.getInt() != appVersion
+                    || buffer.getInt() != valueCount) {
+                throw new IOException("unexpected journal snapshot header");
+            }
+            journalGeneration = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                if (!readBinaryRecord(buffer)) {
+                    throw new IOException("truncated journal snapshot");
+                }
+            }
+        } finally {
+            closeQuietly(snapshot);
+        }
+
+        if (!journalTailFile.exists()) {
+            return;
+        }
+        long validLength = 0;
+        RandomAccessFile tail = new RandomAccessFile(journalTailFile, "rw");
+        try {
+            FileChannel channel = tail.getChannel();
+            long length = channel.size();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (length >= 16
+                    && buffer.getInt() == BINARY_MAGIC
+                    && buffer.getInt() == BINARY_VERSION
+                    && buffer.getLong() == journalGeneration) {
+                validLength = buffer.position();
+                while (readBinaryRecord(buffer)) {
+                    validLength = buffer.position();
+                }
+            }
+            if (validLength < length) {
+                // a stale tail is dropped entirely, a torn record after the last good one
+                tail.setLength(validLength);
+            }
+        } finally {
+            closeQuietly(tail);
+        }
+    }
+
+    /**
+     * Decodes and applies the record at the buffer's position.
+     *
+     * @return false if the buffer does not hold a complete, valid record
+     */
+    private boolean readBinaryRecord(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4) {
+            return false;
+        }
+        int length = buffer.getInt();
+        if (length < 7 || length > buffer.remaining()) {
+            return false;
+        }
+        byte op = buffer.get();
+        int hash = buffer.getInt();
+        int keyLength = buffer.getShort() & 0xffff;
+        int lengthsSize = op == BINARY_CLEAN ? 8 * valueCount : 0;
+        if (7 + keyLength + lengthsSize != length) {
+            return false;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        buffer.get(keyBytes);
+        String key = new String(keyBytes, UTF_8);
+        if (key.hashCode() != hash) {
+            return false;
+        }
+
+        if (op == BINARY_REMOVE) {
+            lruEntries.remove(key);
+            return true;
+        }
+
+        Entry entry = lruEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            lruEntries.put(key, entry);
+        }
+
+        if (op == BINARY_CLEAN) {
+            entry.readable = true;
+            entry.currentEditor = null;
+            for (int i = 0; i < valueCount; i++) {
+                entry.lengths[i] = buffer.getLong();
+            }
+        } else if (op == BINARY_DIRTY) {
+            entry.currentEditor = new Editor(entry);
+        } else if (op != BINARY_READ) {
+            throw new IOException("unexpected journal record: " + op);
+        }
+        return true;
+    }
+
     private void readJournalLine(String line) throws IOException {
         String[] parts = line.split(" ");
         if (parts.length < 2) {
@@ -829,10 +1381,103 @@ public final class DiskLRUCache implements Closeable {
      * current journal if it exists.
      */
     private synchronized void rebuildJournal() throws IOException {
-        if (journalWriter != null) {
-            journalWriter.close();
+        if (journal != null) {
+            journal.rebuild();
+        } else {
+            writeJournal();
+            journal = new Journal(concurrent);
+        }
+    }
+
+    /**
+     * Encodes a journal record in the format of this cache's journal.
+     */
+    private byte[] encodeRecord(String op, String key, long[] lengths) throws IOException {
+        if (binaryJournal) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + key.length());
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeBinaryRecord(out, op, key, lengths);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        StringBuilder line = new StringBuilder(op.length() + key.length() + 24);
+        line.append(op).append(' ').append(key);
+        if (lengths != null) {
+            for (long length : lengths) {
+                line.append(' ').append(length);
+            }
+        }
+        return line.append('\n').toString().getBytes();
+    }
+
+    private void writeBinaryRecord(DataOutputStream out, String op, String key, long[] lengths)
+            throws IOException {
+        byte code;
+        if (CLEAN.equals(op)) {
+            code = BINARY_CLEAN;
+        } else if (DIRTY.equals(op)) {
+            code = BINARY_DIRTY;
+        } else if (REMOVE.equals(op)) {
+            code = BINARY_REMOVE;
+        } else {
+            code = BINARY_READ;
+        }
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > 0xffff) {
+            throw new IOException("key too long: " + key);
+        }
+        int lengthsSize = code == BINARY_CLEAN ? 8 * valueCount : 0;
+        out.writeInt(7 + keyBytes.length + lengthsSize);
+        out.writeByte(code);
+        out.writeInt(key.hashCode());
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        if (code == BINARY_CLEAN) {
+            for (int i = 0; i < valueCount; i++) {
+                out.writeLong(lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes a binary snapshot of the index and starts a new, empty tail.
+     */
+    private void writeBinaryJournal() throws IOException {
+        FileOutputStream file = new FileOutputStream(journalSnapshotFileTmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 16 * 1024));
+        try {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(appVersion);
+            out.writeInt(valueCount);
+            out.writeLong(++journalGeneration);
+            out.writeInt(lruEntries.size());
+            for (Entry entry : lruEntries.values()) {
+                if (entry.currentEditor != null) {
+                    writeBinaryRecord(out, DIRTY, entry.key, null);
+                } else {
+                    writeBinaryRecord(out, CLEAN, entry.key, entry.lengths);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            closeQuietly(out);
         }
+        journalSnapshotFileTmp.renameTo(journalSnapshotFile);
+        // the old tail is superseded; the journal writer starts a new one
+        deleteIfExists(journalTailFile);
+    }
 
+    /**
+     * Writes the index to a new journal file, replacing the current one. Must
+     * be called with the cache lock held and the journal writer closed.
+     */
+    private void writeJournal() throws IOException {
+        if (binaryJournal) {
+            writeBinaryJournal();
+            return;
+        }
         Writer writer = new BufferedWriter(new FileWriter(journalFileTmp));
         writer.write(MAGIC);
         writer.write("\n");
@@ -854,7 +1499,6 @@ public final class DiskLRUCache implements Closeable {
 
         writer.close();
         journalFileTmp.renameTo(journalFile);
-        journalWriter = new BufferedWriter(new FileWriter(journalFile, true));
     }
 
     /**
@@ -863,32 +1507,42 @@ public final class DiskLRUCache implements Closeable {
      *
      * @return true if an entry was removed.
      */
-    public synchronized boolean remove(String key) throws IOException {
-        checkNotClosed();
+    public boolean remove(String key) throws IOException {
         validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (entry == null || entry.currentEditor != null) {
-            return false;
-        }
-
-        for (int i = 0; i < valueCount; i++) {
-            File file = entry.getCleanFile(i);
-            if (!file.delete()) {
-                throw new IOException("failed to delete " + file);
+        synchronized (stripeFor(key)) {
+            Entry entry;
+            synchronized (this) {
+                checkNotClosed();
+                entry = lruEntries.get(key);
+                if (entry == null || entry.currentEditor != null) {
+                    return false;
+                }
             }
-            size -= entry.lengths[i];
-            entry.lengths[i] = 0;
-        }
 
-        redundantOpCount++;
-        journalWriter.append(REMOVE + ' ' + key + '\n');
-        lruEntries.remove(key);
+            // edits of this key start and complete under the stripe
+            for (int i = 0; i < valueCount; i++) {
+                File file = entry.getCleanFile(i);
+                if (!file.delete()) {
+                    throw new IOException("failed to delete " + file);
+                }
+            }
 
-        if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+            synchronized (this) {
+                for (int i = 0; i < valueCount; i++) {
+                    size -= entry.lengths[i];
+                    entry.lengths[i] = 0;
+                }
+                lruEntries.remove(key);
+                if (journal != null) {
+                    redundantOpCount++;
+                    journal.append(REMOVE, key, null);
+                    if (journalRebuildRequired()) {
+                        executorService.submit(cleanupCallable);
+                    }
+                }
+            }
+            return true;
         }
-
-        return true;
     }
 
     /**
@@ -900,10 +1554,36 @@ public final class DiskLRUCache implements Closeable {
         return size;
     }
 
+    private Object stripeFor(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return stripes[(hash & 0x7fffffff) % STRIPE_COUNT];
+    }
+
+    /**
+     * Evicts the least recently used entries until the size limit is met.
+     * Must not be called with the cache lock held.
+     */
     private void trimToSize() throws IOException {
-        while (size > maxSize) {
-            Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();//lruEntries.eldest();
-            remove(toEvict.getKey());
+        while (true) {
+            String toEvict = null;
+            synchronized (this) {
+                if (size <= maxSize || journal == null) {
+                    return;
+                }
+                for (Map.Entry<String, Entry> eldest : lruEntries.entrySet()) {
+                    // entries being edited cannot be removed
+                    if (eldest.getValue().currentEditor == null) {
+                        toEvict = eldest.getKey();
+                        break;
+                    }
+                }
+            }
+            if (toEvict == null) {
+                return;
+            }
+            remove(toEvict);
         }
     }
 
@@ -22,13 +22,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
@@ -86,10 +91,24 @@ import android.content.Context;
  * });
  * </pre>
  * <b>Requests sent using AsyncHttpClient do NOT have to be in a separate thread. {@link AsyncHttpClient} maintains its own thread pool.</b>
+ * <p>
+ * The pool runs at most as many requests as the client has connections, and
+ * at most {@link #setMaxConnectionsPerHost(int)} requests to the same host;
+ * the others wait in a queue. A GET request identical to one in flight for the
+ * same Context is not sent again: its handler receives the response of the
+ * request in flight. See {@link #getStatistics()} for the client's counters.
  * @see RequestParams
  * @see AsyncHttpResponseHandler
  */
 public class AsyncHttpClient {
+    /**
+     * Requests to one host that are executing or waiting for a connection
+     */
+    private static class HostQueue {
+        int active;
+        final LinkedList<Runnable> waiting = new LinkedList<Runnable>();
+    }
+
     private static class InflatingEntity extends HttpEntityWrapper {
         public InflatingEntity(HttpEntity wrapped) {
             super(wrapped);
@@ -106,7 +125,35 @@ public class AsyncHttpClient {
         }
     }
 
+    /**
+     * Identifies identical GET requests made for the same Context
+     */
+    private static final class RequestKey {
+        private final Context context;
+        private final String uri;
+
+        RequestKey(String uri, Context context) {
+            this.uri = uri;
+            this.context = context;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey other = (RequestKey) o;
+            return context == other.context && uri.equals(other.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return uri.hashCode() * 31 + System.identityHashCode(context);
+        }
+    }
+
     private static final int DEFAULT_MAX_CONNECTIONS = 10;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
     private static final int DEFAULT_MAX_RETRIES = 5;
     private static final int DEFAULT_SOCKET_BUFFER_SIZE = 8192;
     private static final int DEFAULT_SOCKET_TIMEOUT = 10 * 1000;
@@ -120,8 +167,12 @@ public class AsyncHttpClient {
     private final Map<String, String> clientHeaderMap;
 	private final DefaultHttpClient httpClient;
     private final HttpContext httpContext;
+    private final Map<String, HostQueue> hostQueues = new HashMap<String, HostQueue>();
+    private final ConcurrentMap<Object, AsyncHttpRequest> inFlight = new ConcurrentHashMap<Object, AsyncHttpRequest>();
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private final RequestMetrics metrics = new RequestMetrics();
     private final Map<Context, List<WeakReference<Future<?>>>> requestMap;
-
+    private final RetryHandler retryHandler;
 
     private ThreadPoolExecutor threadPool;
 
@@ -178,9 +229,11 @@ public class AsyncHttpClient {
             }
         });
 
-        httpClient.setHttpRequestRetryHandler(new RetryHandler(DEFAULT_MAX_RETRIES));
+        retryHandler = new RetryHandler(DEFAULT_MAX_RETRIES);
+        httpClient.setHttpRequestRetryHandler(retryHandler);
 
-        threadPool = (ThreadPoolExecutor)Executors.newCachedThreadPool();
+        // One thread per connection, the other requests wait in the queue
+        threadPool = new ThreadPoolExecutor(maxConnections, maxConnections, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
 
         requestMap = new WeakHashMap<Context, List<WeakReference<Future<?>>>>();
         clientHeaderMap = new HashMap<String, String>();
@@ -226,6 +279,15 @@ public class AsyncHttpClient {
             }
         }
         requestMap.remove(context);
+
+        // Cancelled requests may not run, stop them from being joined
+        Iterator<Map.Entry<Object, AsyncHttpRequest>> it = inFlight.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Object, AsyncHttpRequest> entry = it.next();
+            if(((RequestKey) entry.getKey()).context == context) {
+                entry.getValue().detach();
+            }
+        }
     }
 
     /**
@@ -293,6 +355,19 @@ public class AsyncHttpClient {
         get(null, url, params, responseHandler);
     }
 
+    /**
+     * Returns a snapshot of the request counters of this client.
+     */
+    public HttpClientStatistics getStatistics() {
+        int queued = threadPool.getQueue().size();
+        synchronized(hostQueues) {
+            for(HostQueue queue : hostQueues.values()) {
+                queued += queue.waiting.size();
+            }
+        }
+        return new HttpClientStatistics(metrics, retryHandler.getRetryCount(), threadPool.getActiveCount(), threadPool.getMaximumPoolSize(), queued);
+    }
+
     /**
      * Get the underlying HttpClient instance. This is useful for setting
      * additional fine-grained settings for requests by accessing the
@@ -423,12 +498,82 @@ public class AsyncHttpClient {
 
 
     // Private stuff
+    private void dispatch(String host, Runnable task) {
+        synchronized(hostQueues) {
+            HostQueue queue = hostQueues.get(host);
+            if(queue == null) {
+                queue = new HostQueue();
+                hostQueues.put(host, queue);
+            }
+            if(queue.active >= maxConnectionsPerHost) {
+                queue.waiting.add(task);
+                return;
+            }
+            queue.active++;
+        }
+        execute(host, task);
+    }
+
+    private void execute(final String host, final Runnable task) {
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    release(host);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands the connection slot of a finished request to the next request
+     * waiting for the same host.
+     */
+    private void release(String host) {
+        Runnable next;
+        synchronized(hostQueues) {
+            HostQueue queue = hostQueues.get(host);
+            next = queue.waiting.poll();
+            if(next == null && --queue.active == 0) {
+                hostQueues.remove(host);
+            }
+        }
+        if(next != null) {
+            execute(host, next);
+        }
+    }
+
     private void sendRequest(DefaultHttpClient client, HttpContext httpContext, HttpUriRequest uriRequest, String contentType, AsyncHttpResponseHandler responseHandler, Context context) {
         if(contentType != null) {
             uriRequest.addHeader("Content-Type", contentType);
         }
 
-        Future<?> request = threadPool.submit(new AsyncHttpRequest(client, httpContext, uriRequest, responseHandler));
+        metrics.recordSubmitted();
+        RequestKey key = null;
+        if(uriRequest instanceof HttpGet) {
+            key = new RequestKey(uriRequest.getURI().toString(), context);
+            AsyncHttpRequest leader = inFlight.get(key);
+            if(leader != null && leader.join(responseHandler)) {
+                metrics.recordCoalesced();
+                return;
+            }
+        }
+
+        final AsyncHttpRequest asyncRequest = new AsyncHttpRequest(client, httpContext, uriRequest, responseHandler, metrics, key != null ? inFlight : null, key);
+        if(key != null) {
+            inFlight.put(key, asyncRequest);
+        }
+        FutureTask<Object> request = new FutureTask<Object>(asyncRequest, null) {
+            @Override
+            protected void done() {
+                // Also reached when cancelled before running
+                asyncRequest.detach();
+            }
+        };
+        String host = uriRequest.getURI().getHost();
+        dispatch(host != null ? host : "", request);
 
         if(context != null) {
             // Add request to request map
@@ -444,6 +589,20 @@ public class AsyncHttpClient {
         }
     }
 
+    /**
+     * Sets the maximum number of requests executed at the same time for one
+     * host. The other requests to the host wait in a queue. Default is 6.
+     * @param maxConnectionsPerHost the limit, should be >0
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if(maxConnectionsPerHost <= 0) {
+            throw new IllegalArgumentException("maxConnectionsPerHost should be >0");
+        }
+        synchronized(hostQueues) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+        }
+    }
+
     /**
      * Sets an optional CookieStore to use when making requests
      * @param cookieStore The CookieStore implementation to use, usually an instance of {@link PersistentCookieStore}
@@ -463,7 +622,8 @@ public class AsyncHttpClient {
 
     /**
      * Overrides the threadpool implementation used when queuing/pooling
-     * requests. By default, Executors.newCachedThreadPool() is used.
+     * requests. By default, a pool with one thread per connection and an
+     * unbounded wait queue is used.
      * @param threadPool an instance of {@link ThreadPoolExecutor} to use for queuing/pooling requests.
      */
     public void setThreadPool(ThreadPoolExecutor threadPool) {
@@ -2,40 +2,124 @@ package com.madrobot.net;
 
 import java.io.IOException;
 import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.protocol.HttpContext;
 
+import android.os.SystemClock;
+
 class AsyncHttpRequest implements Runnable {
     private final AbstractHttpClient client;
     private final HttpContext context;
+    private boolean detached;
     private int executionCount;
+    /** Handlers of the identical requests that joined this one */
+    private List<AsyncHttpResponseHandler> followers = Collections.emptyList();
+    private final ConcurrentMap<Object, AsyncHttpRequest> inFlight;
+    private final Object key;
+    private final RequestMetrics metrics;
     private final HttpUriRequest request;
     private final AsyncHttpResponseHandler responseHandler;
+    private final long submitTime = SystemClock.uptimeMillis();
 
     public AsyncHttpRequest(AbstractHttpClient client, HttpContext context, HttpUriRequest request, AsyncHttpResponseHandler responseHandler) {
+        this(client, context, request, responseHandler, null, null, null);
+    }
+
+    /**
+     * @param metrics counters to update, or null
+     * @param inFlight requests that identical requests may join, or null if
+     *            this request cannot be joined
+     * @param key the key of this request in <code>inFlight</code>
+     */
+    AsyncHttpRequest(AbstractHttpClient client, HttpContext context, HttpUriRequest request, AsyncHttpResponseHandler responseHandler, RequestMetrics metrics, ConcurrentMap<Object, AsyncHttpRequest> inFlight, Object key) {
         this.client = client;
         this.context = context;
         this.request = request;
         this.responseHandler = responseHandler;
+        this.metrics = metrics;
+        this.inFlight = inFlight;
+        this.key = key;
+    }
+
+    /**
+     * Stops identical requests from joining this one.
+     *
+     * @return the handlers of the requests that joined
+     */
+    List<AsyncHttpResponseHandler> detach() {
+        synchronized(this) {
+            if(detached) {
+                return followers;
+            }
+            detached = true;
+        }
+        if(inFlight != null) {
+            inFlight.remove(key, this);
+        }
+        return followers;
+    }
+
+    /**
+     * Shares the response of this request with an identical request.
+     *
+     * @return false if the response is already being delivered
+     */
+    boolean join(AsyncHttpResponseHandler handler) {
+        synchronized(this) {
+            if(detached) {
+                return false;
+            }
+            if(followers.isEmpty()) {
+                followers = new ArrayList<AsyncHttpResponseHandler>(2);
+            }
+            followers.add(handler);
+        }
+        if(handler != null) {
+            handler.sendStartMessage();
+        }
+        return true;
     }
 
     private void makeRequest() throws IOException {
     	if(!Thread.currentThread().isInterrupted()) {
+    		long start = SystemClock.uptimeMillis();
     		HttpResponse response = client.execute(request, context);
+    		if(metrics != null) {
+    			metrics.recordTimeToFirstByte(SystemClock.uptimeMillis() - start);
+    		}
     		if(!Thread.currentThread().isInterrupted()) {
+    			List<AsyncHttpResponseHandler> joined = detach();
+    			if(!joined.isEmpty()) {
+    				// Read the body once, every handler consumes it
+    				HttpEntity entity = response.getEntity();
+    				if(entity != null) {
+    					response.setEntity(new BufferedHttpEntity(entity));
+    				}
+    			}
     			if(responseHandler != null) {
     				responseHandler.sendResponseMessage(response);
     			}
+    			for(AsyncHttpResponseHandler handler : joined) {
+    				if(handler != null) {
+    					handler.sendResponseMessage(response);
+    				}
+    			}
     		} else{
     			//TODO: should raise InterruptedException? this block is reached whenever the request is cancelled before its response is received
     		}
     	}
     }
-    
+
     private void makeRequestWithRetries() throws ConnectException {
         // This is an additional layer of retry logic lifted from droid-fu
         // See: https://github.com/kaeppler/droid-fu/blob/master/src/main/java/com/github/droidfu/http/BetterHttpRequestBase.java
@@ -55,7 +139,7 @@ class AsyncHttpRequest implements Runnable {
                 // http://code.google.com/p/android/issues/detail?id=5255
                 cause = new IOException("NPE in HttpClient" + e.getMessage());
                 retry = retryHandler.retryRequest(cause, ++executionCount, context);
-            } 
+            }
         }
 
         // no retries left, crap out with exception
@@ -73,14 +157,31 @@ class AsyncHttpRequest implements Runnable {
 
             makeRequestWithRetries();
 
+            if(metrics != null) {
+                metrics.recordCompleted(SystemClock.uptimeMillis() - submitTime, true);
+            }
             if(responseHandler != null) {
                 responseHandler.sendFinishMessage();
             }
+            for(AsyncHttpResponseHandler handler : detach()) {
+                if(handler != null) {
+                    handler.sendFinishMessage();
+                }
+            }
         } catch (IOException e) {
+            if(metrics != null) {
+                metrics.recordCompleted(SystemClock.uptimeMillis() - submitTime, false);
+            }
             if(responseHandler != null) {
                 responseHandler.sendFinishMessage();
                 responseHandler.sendFailureMessage(e, null);
             }
+            for(AsyncHttpResponseHandler handler : detach()) {
+                if(handler != null) {
+                    handler.sendFinishMessage();
+                    handler.sendFailureMessage(e, null);
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
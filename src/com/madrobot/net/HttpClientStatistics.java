@@ -0,0 +1,133 @@
+package com.madrobot.net;
+
+import java.util.Arrays;
+
+/**
+ * Point in time snapshot of the counters of an {@link AsyncHttpClient}.
+ *
+ * @see AsyncHttpClient#getStatistics()
+ */
+public final class HttpClientStatistics {
+    private final int activeCount;
+    private final long coalescedCount;
+    private final long completedCount;
+    private final long failedCount;
+    private final long[] latencyHistogram;
+    private final int maxThreads;
+    private final int queuedCount;
+    private final long retryCount;
+    private final long submittedCount;
+    private final long timeToFirstByteCount;
+    private final long totalTimeToFirstByte;
+
+    HttpClientStatistics(RequestMetrics metrics, long retryCount, int activeCount, int maxThreads, int queuedCount) {
+        this.submittedCount = metrics.getSubmittedCount();
+        this.coalescedCount = metrics.getCoalescedCount();
+        this.completedCount = metrics.getCompletedCount();
+        this.failedCount = metrics.getFailedCount();
+        this.latencyHistogram = metrics.getLatencyHistogram();
+        this.timeToFirstByteCount = metrics.getTimeToFirstByteCount();
+        this.totalTimeToFirstByte = metrics.getTotalTimeToFirstByte();
+        this.retryCount = retryCount;
+        this.activeCount = activeCount;
+        this.maxThreads = maxThreads;
+        this.queuedCount = queuedCount;
+    }
+
+    /**
+     * Returns the upper bounds, in milliseconds, of the buckets of
+     * {@link #getLatencyHistogram()}. The histogram has one more bucket for
+     * the requests slower than the last bound.
+     */
+    public static long[] getLatencyBucketBounds() {
+        return RequestMetrics.LATENCY_BUCKETS.clone();
+    }
+
+    /**
+     * Returns the number of requests being executed.
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Returns the average time to first byte in milliseconds: the time from
+     * the start of an execution to the response headers being received.
+     */
+    public double getAverageTimeToFirstByte() {
+        return timeToFirstByteCount == 0 ? 0 : (double) totalTimeToFirstByte / timeToFirstByteCount;
+    }
+
+    /**
+     * Returns the number of GET requests that joined an identical request in
+     * flight instead of being sent.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Returns the number of requests that received a response.
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Returns the number of requests that failed after their retries.
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Returns the number of requests per latency bucket, measured from
+     * submission to the response being handled.
+     *
+     * @see #getLatencyBucketBounds()
+     */
+    public long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    /**
+     * Returns the maximum number of requests executed at the same time.
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Returns the fraction of the request threads in use.
+     */
+    public double getPoolUtilization() {
+        return maxThreads == 0 ? 0 : (double) activeCount / maxThreads;
+    }
+
+    /**
+     * Returns the number of requests waiting for a thread or for a free
+     * connection to their host.
+     */
+    public int getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Returns the number of retries granted by the retry handler.
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * Returns the number of requests submitted, coalesced ones included.
+     */
+    public long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientStatistics [submitted=" + submittedCount + ", coalesced=" + coalescedCount + ", completed=" + completedCount + ", failed=" + failedCount + ", retries=" + retryCount + ", active=" + activeCount + "/" + maxThreads + ", queued=" + queuedCount + ", averageTimeToFirstByte=" + getAverageTimeToFirstByte() + "ms, latencyHistogram=" + Arrays.toString(latencyHistogram) + "]";
+    }
+}
@@ -0,0 +1,89 @@
+package com.madrobot.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters updated by the requests of an {@link AsyncHttpClient}.
+ */
+class RequestMetrics {
+    /**
+     * Upper bounds, in milliseconds, of the latency histogram buckets. The
+     * last bucket holds every request slower than the last bound.
+     */
+    static final long[] LATENCY_BUCKETS = {50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong timeToFirstByteCount = new AtomicLong();
+    private final AtomicLong totalTimeToFirstByte = new AtomicLong();
+
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    long getFailedCount() {
+        return failedCount.get();
+    }
+
+    long[] getLatencyHistogram() {
+        long[] histogram = new long[latencyHistogram.length()];
+        for(int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    long getTimeToFirstByteCount() {
+        return timeToFirstByteCount.get();
+    }
+
+    long getTotalTimeToFirstByte() {
+        return totalTimeToFirstByte.get();
+    }
+
+    void recordCoalesced() {
+        coalescedCount.incrementAndGet();
+    }
+
+    /**
+     * @param latencyMillis time from submission to the response being handled
+     * @param success false if the request failed after its retries
+     */
+    void recordCompleted(long latencyMillis, boolean success) {
+        if(success) {
+            completedCount.incrementAndGet();
+        } else {
+            failedCount.incrementAndGet();
+        }
+        int bucket = 0;
+        while(bucket < LATENCY_BUCKETS.length && latencyMillis > LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        latencyHistogram.incrementAndGet(bucket);
+    }
+
+    void recordSubmitted() {
+        submittedCount.incrementAndGet();
+    }
+
+    /**
+     * @param millis time from the start of the execution to the response
+     *            headers being received
+     */
+    void recordTimeToFirstByte(long millis) {
+        timeToFirstByteCount.incrementAndGet();
+        totalTimeToFirstByte.addAndGet(millis);
+    }
+}
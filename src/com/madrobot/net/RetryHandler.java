@@ -28,6 +28,7 @@ import java.io.InterruptedIOException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLHandshakeException;
 
@@ -59,11 +60,19 @@ class RetryHandler implements HttpRequestRetryHandler {
     }
 
     private final int maxRetries;
+    private final AtomicLong retryCount = new AtomicLong();
 
     public RetryHandler(int maxRetries) {
         this.maxRetries = maxRetries;
     }
 
+    /**
+     * Returns the number of retries granted so far.
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
     @Override
 	public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
         boolean retry;
@@ -96,6 +105,7 @@ class RetryHandler implements HttpRequestRetryHandler {
         }
 
         if(retry) {
+            retryCount.incrementAndGet();
             SystemClock.sleep(RETRY_SLEEP_TIME_MILLIS);
         } else {
             exception.printStackTrace();
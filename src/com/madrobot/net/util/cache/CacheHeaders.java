@@ -0,0 +1,172 @@
+package com.madrobot.net.util.cache;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.madrobot.util.ThreadSafeSimpleDateFormat;
+
+/**
+ * The caching related headers of a stored HTTP response.
+ * <p>
+ * Only explicit freshness information is honored: a response without
+ * {@code Cache-Control: max-age}, {@code Expires} or {@code no-cache} is
+ * considered fresh, as it always was before these headers were parsed.
+ */
+final class CacheHeaders {
+
+    private static final ThreadSafeSimpleDateFormat HTTP_DATE = new ThreadSafeSimpleDateFormat(
+            "EEE, dd MMM yyyy HH:mm:ss zzz", TimeZone.getTimeZone("GMT"), 1, 4, false);
+
+    private static final String MAX_AGE = "max-age=";
+
+    private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate=";
+
+    /**
+     * Parses the caching headers of a response.
+     *
+     * @param headers the response headers. Keys should be lower-case.
+     */
+    public static CacheHeaders parse(Map<String, List<String>> headers) {
+        CacheHeaders result = new CacheHeaders();
+        result.mEtag = first(headers, "etag");
+        result.mLastModified = first(headers, "last-modified");
+        result.mDate = parseDate(first(headers, "date"));
+        result.mExpires = parseDate(first(headers, "expires"));
+        List<String> values = headers.get("cache-control");
+        if (values != null) {
+            for (String value : values) {
+                for (String directive : value.split(",")) {
+                    result.parseDirective(directive.trim().toLowerCase());
+                }
+            }
+        }
+        List<String> pragma = headers.get("pragma");
+        if (pragma != null && pragma.contains("no-cache")) {
+            result.mNoCache = true;
+        }
+        return result;
+    }
+
+    private static String first(Map<String, List<String>> headers, String key) {
+        List<String> values = headers.get(key);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    private static long parseDate(String value) {
+        if (value == null) {
+            return -1L;
+        }
+        try {
+            return HTTP_DATE.parse(value).getTime();
+        } catch (ParseException e) {
+            // Invalid dates, such as "Expires: 0", mean already expired
+            return 0L;
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private long mDate = -1L;
+
+    private String mEtag;
+
+    private long mExpires = -1L;
+
+    private String mLastModified;
+
+    private long mMaxAgeSeconds = -1L;
+
+    private boolean mMustRevalidate;
+
+    private boolean mNoCache;
+
+    private long mStaleWhileRevalidateSeconds;
+
+    private CacheHeaders() {
+    }
+
+    /**
+     * Returns {@code true} if a stale response may be served while it is
+     * revalidated in the background.
+     *
+     * @param ageMillis the age of the stored response.
+     */
+    public boolean canServeStale(long ageMillis) {
+        long lifetime = getFreshnessLifetime();
+        if (mNoCache || mMustRevalidate || lifetime < 0 || mStaleWhileRevalidateSeconds <= 0) {
+            return false;
+        }
+        return ageMillis <= lifetime + mStaleWhileRevalidateSeconds * 1000L;
+    }
+
+    /**
+     * Returns the value of the {@code ETag} header or {@code null}.
+     */
+    public String getEtag() {
+        return mEtag;
+    }
+
+    /**
+     * Returns the freshness lifetime in milliseconds, or {@code -1} if the
+     * response does not specify one.
+     */
+    public long getFreshnessLifetime() {
+        if (mMaxAgeSeconds >= 0) {
+            return mMaxAgeSeconds * 1000L;
+        }
+        if (mExpires >= 0) {
+            long served = mDate >= 0 ? mDate : mExpires;
+            return Math.max(0L, mExpires - served);
+        }
+        return -1L;
+    }
+
+    /**
+     * Returns the value of the {@code Last-Modified} header or {@code null}.
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * Returns {@code true} if the response can be revalidated with a
+     * conditional request.
+     */
+    public boolean hasValidators() {
+        return mEtag != null || mLastModified != null;
+    }
+
+    /**
+     * Returns {@code true} if the response must be revalidated before use.
+     *
+     * @param ageMillis the age of the stored response.
+     */
+    public boolean isStale(long ageMillis) {
+        if (mNoCache) {
+            return true;
+        }
+        long lifetime = getFreshnessLifetime();
+        return lifetime >= 0 && ageMillis > lifetime;
+    }
+
+    private void parseDirective(String directive) {
+        if (directive.startsWith(MAX_AGE)) {
+            mMaxAgeSeconds = parseSeconds(directive.substring(MAX_AGE.length()));
+        } else if (directive.startsWith(STALE_WHILE_REVALIDATE)) {
+            long seconds = parseSeconds(directive.substring(STALE_WHILE_REVALIDATE.length()));
+            mStaleWhileRevalidateSeconds = Math.max(0L, seconds);
+        } else if (directive.equals("no-cache")) {
+            mNoCache = true;
+        } else if (directive.equals("must-revalidate")) {
+            mMustRevalidate = true;
+        }
+    }
+}
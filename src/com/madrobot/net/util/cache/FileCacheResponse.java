@@ -24,7 +24,33 @@ class FileCacheResponse extends CacheResponse {
 
     private static final int BUFFER_SIZE = 8 * 1024;
 
-    private static Map<String, List<String>> readHeaders(DataInput din) throws IOException {
+    /**
+     * Adds the headers describing a response served from the local cache.
+     *
+     * @param headers the stored headers. The {@code via} list is replaced, not
+     *            modified.
+     * @param lastModified the modification time of the cache file.
+     */
+    static void addLocalHeaders(Map<String, List<String>> headers, long lastModified) {
+        // TODO: Have an HTTP expert verify that these
+        // headers are being used correctly.
+
+        long ageMillis = System.currentTimeMillis() - lastModified;
+        long ageSeconds = ageMillis / DateUtils.SECOND_IN_MILLIS;
+        headers.put("age", Arrays.asList(String.valueOf(ageSeconds)));
+
+        // Add localhost to Via header
+        List<String> via = headers.get("via");
+        if (via != null) {
+            via = new ArrayList<String>(via);
+            via.add("1.1 localhost");
+            headers.put("via", via);
+        } else {
+            headers.put("via", Arrays.asList("1.1 localhost"));
+        }
+    }
+
+    static Map<String, List<String>> readHeaders(DataInput din) throws IOException {
         int keyCount = din.readInt();
         Map<String, List<String>> headers = new HashMap<String, List<String>>(keyCount);
         for (int i = 0; i < keyCount; i++) {
@@ -95,21 +121,7 @@ class FileCacheResponse extends CacheResponse {
 
                 DataInputStream din = new DataInputStream(input);
                 mHeaders = readHeaders(din);
-
-                // TODO: Have an HTTP expert verify that these
-                // headers are being used correctly.
-
-                long ageMillis = System.currentTimeMillis() - mFile.lastModified();
-                long ageSeconds = ageMillis / DateUtils.SECOND_IN_MILLIS;
-                mHeaders.put("age", Arrays.asList(String.valueOf(ageSeconds)));
-
-                // Add localhost to Via header
-                List<String> via = mHeaders.get("via");
-                if (via != null) {
-                    via.add("1.1 localhost");
-                } else {
-                    mHeaders.put("via", Arrays.asList("1.1 localhost"));
-                }
+                addLocalHeaders(mHeaders, mFile.lastModified());
 
                 mInputStream = din;
                 return mHeaders;
@@ -1,7 +1,12 @@
 package com.madrobot.net.util.cache;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.CacheRequest;
 import java.net.CacheResponse;
@@ -12,9 +17,18 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.os.Build;
 import android.util.Log;
@@ -43,6 +57,16 @@ import android.util.Log;
  * the response is cached, but you can get the status line by calling
  * {@link URLConnection#getHeaderField(String)} with the value {@code "status"}.
  * <p>
+ * Responses carrying explicit freshness information
+ * ({@code Cache-Control: max-age}, {@code Expires}, {@code no-cache}) are
+ * revalidated once stale: the {@code ETag} and {@code Last-Modified}
+ * validators are sent as {@code If-None-Match} and {@code If-Modified-Since}
+ * and a {@code 304 Not Modified} answer is served from the cache. A response
+ * with {@code stale-while-revalidate} is served immediately within that window
+ * while a background request refreshes it. An optional in-memory tier, sized
+ * in bytes, keeps the headers of recently used responses and the bodies of
+ * small ones. See {@link #getStatistics()} to tune it.
+ * <p>
  * Please see <a
  * href="http://java.sun.com/j2se/1.5.0/docs/guide/net/http-cache.html">
  * http://java.sun.com/j2se/1.5.0/docs/guide/net/http-cache.html </a> for more
@@ -66,6 +90,14 @@ public abstract class FileResponseCache extends ResponseCache {
 
         @Override
         public Object getContent(URLConnection connection) throws IOException {
+            return getContent(connection, MODE_DEFAULT);
+        }
+
+        /**
+         * @param mode one of {@link #MODE_DEFAULT}, {@link #MODE_CACHED} or
+         *            {@link #MODE_REFRESH}.
+         */
+        Object getContent(URLConnection connection, int mode) throws IOException {
             if (connection == null) {
                 throw new NullPointerException();
             }
@@ -75,8 +107,30 @@ public abstract class FileResponseCache extends ResponseCache {
                 stack = new Stack<Frame>();
                 mFileResponseCache.mStack.set(stack);
             }
+            // Push the frame first so that the entry parsed while preparing
+            // the request is reused by get(...)
             stack.push(frame);
             try {
+                File revalidated = null;
+                if (mode == MODE_CACHED) {
+                    frame.setServeStale(true);
+                } else {
+                    revalidated = mFileResponseCache.prepareRequest(frame, mode == MODE_REFRESH);
+                }
+                if (revalidated != null) {
+                    HttpURLConnection http = (HttpURLConnection) connection;
+                    if (http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        mFileResponseCache.markNotModified(revalidated);
+                        http.disconnect();
+                        if (mode == MODE_REFRESH) {
+                            return null;
+                        }
+                        // Replay the request; it is answered from the cache
+                        URLConnection cached = openConnection(http.getURL(),
+                                frame.getRequestProperties());
+                        return getContent(cached, MODE_CACHED);
+                    }
+                }
                 Object content = mContentHandler.getContent(connection);
                 frame.close();
                 return content;
@@ -111,12 +165,26 @@ public abstract class FileResponseCache extends ResponseCache {
 
         private static final int SDK = Integer.parseInt(Build.VERSION.SDK);
 
+        /** The response must come from the network. */
+        private boolean mBypassCache;
+
         private CacheRequest mCacheRequest;
 
         private final URLConnection mConnection;
 
         private final Object mCookie;
 
+        /** The cache entry parsed during this request, if any. */
+        private ResponseMemoryCache.Entry mEntry;
+
+        private File mEntryFile;
+
+        /** Request properties captured before the connection was opened. */
+        private Map<String, List<String>> mRequestProperties;
+
+        /** A cached response may be served even if it is stale. */
+        private boolean mServeStale;
+
         public Frame(URLConnection connection, Object cookie) {
             if (connection == null) {
                 throw new NullPointerException();
@@ -150,6 +218,46 @@ public abstract class FileResponseCache extends ResponseCache {
             return mCookie;
         }
 
+        /**
+         * Returns the entry parsed for {@code file} during this request, or
+         * {@code null} if it was not parsed yet or the file has changed since.
+         */
+        public ResponseMemoryCache.Entry getEntry(File file) {
+            if (mEntry != null && file.equals(mEntryFile) && mEntry.matches(file)) {
+                return mEntry;
+            }
+            return null;
+        }
+
+        public Map<String, List<String>> getRequestProperties() {
+            return mRequestProperties;
+        }
+
+        public boolean isBypassCache() {
+            return mBypassCache;
+        }
+
+        public boolean isServeStale() {
+            return mServeStale;
+        }
+
+        public void setBypassCache(boolean bypassCache) {
+            mBypassCache = bypassCache;
+        }
+
+        public void setRequestProperties(Map<String, List<String>> requestProperties) {
+            mRequestProperties = requestProperties;
+        }
+
+        public void setServeStale(boolean serveStale) {
+            mServeStale = serveStale;
+        }
+
+        public void setEntry(File file, ResponseMemoryCache.Entry entry) {
+            mEntryFile = file;
+            mEntry = entry;
+        }
+
         public void setCacheRequest(CacheRequest cacheRequest) {
         	if (cacheRequest == null) {
         	  throw new NullPointerException();
@@ -189,6 +297,15 @@ public abstract class FileResponseCache extends ResponseCache {
 
     private static final String MAX_AGE_PREFIX = "max-age=";
 
+    /** Serve from the cache, revalidating stale responses. */
+    private static final int MODE_DEFAULT = 0;
+
+    /** Serve from the cache even if the response is stale. */
+    private static final int MODE_CACHED = 1;
+
+    /** Refresh the cached response from the network. */
+    private static final int MODE_REFRESH = 2;
+
     private static final String TAG = "FileResponseCache";
 
     /**
@@ -350,6 +467,25 @@ public abstract class FileResponseCache extends ResponseCache {
         }
     }
 
+    /**
+     * Opens a new connection to {@code url} with the given request properties.
+     */
+    private static URLConnection openConnection(URL url, Map<String, List<String>> properties)
+            throws IOException {
+        URLConnection connection = url.openConnection();
+        if (properties != null) {
+            for (Map.Entry<String, List<String>> property : properties.entrySet()) {
+                if (property.getKey() == null) {
+                    continue;
+                }
+                for (String value : property.getValue()) {
+                    connection.addRequestProperty(property.getKey(), value);
+                }
+            }
+        }
+        return connection;
+    }
+
     /**
      * Creates a {@link ContentHandler} that consumes the content of a
      * {@link URLConnection} so that the response data will be captured by a
@@ -384,7 +520,39 @@ public abstract class FileResponseCache extends ResponseCache {
      */
     private final ThreadLocal<Stack<Frame>> mStack = new ThreadLocal<Stack<Frame>>();
 
+    private final AtomicLong mConditionalCount = new AtomicLong();
+
+    private final AtomicLong mDiskHitCount = new AtomicLong();
+
+    private final AtomicLong mMemoryHitCount = new AtomicLong();
+
+    /** The in-memory tier, or {@code null} if it is disabled. */
+    private final ResponseMemoryCache mMemoryCache;
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private final AtomicLong mNotModifiedCount = new AtomicLong();
+
+    /** Uses a single background thread to refresh stale responses. */
+    private final ExecutorService mRefreshExecutor = new ThreadPoolExecutor(0, 1, 60L,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    /** Cache files with a background refresh pending. */
+    private final Set<File> mRefreshing = new HashSet<File>();
+
+    private final AtomicLong mStaleHitCount = new AtomicLong();
+
     protected FileResponseCache() {
+        this(0L);
+    }
+
+    /**
+     * @param memoryCacheSize the maximum number of bytes held by the in-memory
+     *            tier, or {@code 0} to disable it. Bodies larger than an
+     *            eighth of this size are always read from their file.
+     */
+    protected FileResponseCache(long memoryCacheSize) {
+        mMemoryCache = memoryCacheSize > 0 ? new ResponseMemoryCache(memoryCacheSize) : null;
     }
 
     /**
@@ -437,6 +605,18 @@ public abstract class FileResponseCache extends ResponseCache {
      * @return the {@link CacheResponse}.
      */
     private CacheResponse createCacheResponse(File file) {
+        if (mMemoryCache != null) {
+            try {
+                ResponseMemoryCache.Entry entry = loadEntry(file);
+                if (entry.getBody() != null) {
+                    mMemoryHitCount.incrementAndGet();
+                    return new MemoryCacheResponse(entry);
+                }
+            } catch (IOException e) {
+                logFileError("Failed to read cache file", file);
+            }
+        }
+        mDiskHitCount.incrementAndGet();
         return new FileCacheResponse(file);
     }
 
@@ -464,10 +644,15 @@ public abstract class FileResponseCache extends ResponseCache {
         requestHeaders = new RequestPropertiesMap(connection);
         Object cookie = frame.getCookie();
         File file = getFile(uri, requestMethod, requestHeaders, cookie);
-        if (file != null && file.exists()
-                && !isStale(file, uri, requestMethod, requestHeaders, cookie)) {
+        if (file != null && file.exists() && !frame.isBypassCache()
+                && (frame.isServeStale()
+                        || !isStale(file, uri, requestMethod, requestHeaders, cookie))) {
             return createCacheResponse(file);
         } else {
+            if (!frame.isBypassCache()) {
+                // Revalidations are counted separately
+                mMissCount.incrementAndGet();
+            }
             return null;
         }
     }
@@ -494,6 +679,17 @@ public abstract class FileResponseCache extends ResponseCache {
         }
     }
 
+    /**
+     * Returns a snapshot of the hit, miss and revalidation counters.
+     */
+    public ResponseCacheStatistics getStatistics() {
+        long memorySize = mMemoryCache != null ? mMemoryCache.getSize() : 0L;
+        long memoryMaxSize = mMemoryCache != null ? mMemoryCache.getMaxSize() : 0L;
+        return new ResponseCacheStatistics(mMemoryHitCount.get(), mDiskHitCount.get(),
+                mMissCount.get(), mConditionalCount.get(), mNotModifiedCount.get(),
+                mStaleHitCount.get(), memorySize, memoryMaxSize);
+    }
+
     /**
      * Returns the {@link File} used for caching the given request, or {@code
      * null} if this type of request should not be cached.
@@ -548,8 +744,11 @@ public abstract class FileResponseCache extends ResponseCache {
      * Returns {@code true} if the given cache {@link File} is too stale to
      * satisfy the given request parameters.
      * <p>
-     * The current implementation only considers the {@code max-age} value
-     * specified in the {@code cache-control} header.
+     * The default implementation considers the {@code max-age} value of the
+     * request's {@code cache-control} header, then the freshness information
+     * of the stored response ({@code Cache-Control: max-age} and
+     * {@code no-cache}, {@code Expires}). A response without freshness
+     * information never becomes stale.
      *
      * @param file the cache file.
      * @param uri the request {@link URI}
@@ -585,7 +784,183 @@ public abstract class FileResponseCache extends ResponseCache {
                 }
             }
         }
-        return false;
+        try {
+            ResponseMemoryCache.Entry entry = loadEntry(file);
+            long ageInMillis = System.currentTimeMillis() - entry.getLastModified();
+            return entry.getCacheHeaders().isStale(ageInMillis);
+        } catch (IOException e) {
+            logFileError("Failed to read cache file", file);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the headers, and the body if it fits in the in-memory tier, of a
+     * cache file.
+     * <p>
+     * When the in-memory tier is disabled the entry is kept on the current
+     * {@link Frame}, so a request parses the file at most once.
+     */
+    private ResponseMemoryCache.Entry loadEntry(File file) throws IOException {
+        if (mMemoryCache != null) {
+            ResponseMemoryCache.Entry entry = mMemoryCache.get(file);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        Stack<Frame> stack = mStack.get();
+        Frame frame = stack != null && !stack.isEmpty() ? stack.peek() : null;
+        if (frame != null) {
+            ResponseMemoryCache.Entry entry = frame.getEntry(file);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        InputStream input = new BufferedInputStream(new FileInputStream(file), 8 * 1024);
+        try {
+            DataInputStream din = new DataInputStream(input);
+            Map<String, List<String>> headers = FileCacheResponse.readHeaders(din);
+            byte[] body = null;
+            if (mMemoryCache != null && length <= mMemoryCache.getMaxEntrySize()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) length);
+                byte[] buffer = new byte[4096];
+                int count;
+                while ((count = din.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, count);
+                }
+                body = bytes.toByteArray();
+            }
+            ResponseMemoryCache.Entry entry = new ResponseMemoryCache.Entry(headers, body,
+                    lastModified, length);
+            if (mMemoryCache != null) {
+                mMemoryCache.put(file, entry);
+            } else if (frame != null) {
+                frame.setEntry(file, entry);
+            }
+            return entry;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Records a {@code 304 Not Modified} answer: the cached response is fresh
+     * again.
+     */
+    private void markNotModified(File file) {
+        mNotModifiedCount.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (file.setLastModified(now) && mMemoryCache != null) {
+            mMemoryCache.touch(file, file.lastModified());
+        }
+    }
+
+    /**
+     * Decides, before a connection is opened, how a stale cached response is
+     * handled. The request is either left alone, served stale while a
+     * background refresh is scheduled, or turned into a conditional request.
+     *
+     * @param refresh {@code true} if the frame belongs to a background refresh.
+     * @return the cache file if a conditional request was prepared, {@code
+     *         null} otherwise.
+     */
+    private File prepareRequest(Frame frame, boolean refresh) {
+        if (refresh) {
+            frame.setBypassCache(true);
+        }
+        if (!(frame.getConnection() instanceof HttpURLConnection)) {
+            return null;
+        }
+        HttpURLConnection http = (HttpURLConnection) frame.getConnection();
+        if (!"GET".equals(http.getRequestMethod())
+                || http.getRequestProperty("If-None-Match") != null
+                || http.getRequestProperty("If-Modified-Since") != null) {
+            // The caller handles validation itself
+            return null;
+        }
+        URI uri;
+        try {
+            uri = http.getURL().toURI();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        Map<String, List<String>> requestHeaders = new RequestPropertiesMap(http);
+        Object cookie = frame.getCookie();
+        File file = getFile(uri, "GET", requestHeaders, cookie);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        if (!refresh && !isStale(file, uri, "GET", requestHeaders, cookie)) {
+            return null;
+        }
+        CacheHeaders cacheHeaders;
+        long ageInMillis;
+        try {
+            ResponseMemoryCache.Entry entry = loadEntry(file);
+            cacheHeaders = entry.getCacheHeaders();
+            ageInMillis = System.currentTimeMillis() - entry.getLastModified();
+        } catch (IOException e) {
+            return null;
+        }
+
+        // Copy the request properties while they are still readable
+        Map<String, List<String>> properties = new HashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> property : http.getRequestProperties().entrySet()) {
+            properties.put(property.getKey(), new ArrayList<String>(property.getValue()));
+        }
+        frame.setRequestProperties(properties);
+
+        if (!refresh && cacheHeaders.canServeStale(ageInMillis)) {
+            mStaleHitCount.incrementAndGet();
+            frame.setServeStale(true);
+            refreshInBackground(http.getURL(), properties, cookie, file);
+            return null;
+        }
+        if (!cacheHeaders.hasValidators()) {
+            return null;
+        }
+        if (cacheHeaders.getEtag() != null) {
+            http.setRequestProperty("If-None-Match", cacheHeaders.getEtag());
+        }
+        if (cacheHeaders.getLastModified() != null) {
+            http.setRequestProperty("If-Modified-Since", cacheHeaders.getLastModified());
+        }
+        mConditionalCount.incrementAndGet();
+        frame.setBypassCache(true);
+        return file;
+    }
+
+    /**
+     * Schedules a background request that refreshes a cached response, unless
+     * one is already pending for the same file.
+     */
+    private void refreshInBackground(final URL url, final Map<String, List<String>> properties,
+            final Object cookie, final File file) {
+        synchronized (mRefreshing) {
+            if (!mRefreshing.add(file)) {
+                return;
+            }
+        }
+        mRefreshExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileResponseCacheContentHandler handler = new FileResponseCacheContentHandler(
+                            sink(), FileResponseCache.this, cookie);
+                    handler.getContent(openConnection(url, properties), MODE_REFRESH);
+                } catch (IOException e) {
+                    if (Log.isLoggable(TAG, Log.WARN)) {
+                        Log.w(TAG, "Background refresh failed", e);
+                    }
+                } finally {
+                    synchronized (mRefreshing) {
+                        mRefreshing.remove(file);
+                    }
+                }
+            }
+        });
     }
 
     /**
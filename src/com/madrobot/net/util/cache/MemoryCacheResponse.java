@@ -0,0 +1,43 @@
+package com.madrobot.net.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.CacheResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves a cached HTTP response from the in-memory tier of a
+ * {@link FileResponseCache}.
+ */
+class MemoryCacheResponse extends CacheResponse {
+
+    private final ResponseMemoryCache.Entry mEntry;
+
+    private Map<String, List<String>> mHeaders;
+
+    public MemoryCacheResponse(ResponseMemoryCache.Entry entry) {
+        if (entry == null || entry.getBody() == null) {
+            throw new NullPointerException();
+        }
+        mEntry = entry;
+    }
+
+    @Override
+    public InputStream getBody() {
+        return new ByteArrayInputStream(mEntry.getBody());
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+        if (mHeaders == null) {
+            // The entry is shared, so decorate a copy
+            Map<String, List<String>> headers = new HashMap<String, List<String>>(
+                    mEntry.getHeaders());
+            FileCacheResponse.addLocalHeaders(headers, mEntry.getLastModified());
+            mHeaders = headers;
+        }
+        return mHeaders;
+    }
+}
@@ -0,0 +1,116 @@
+package com.madrobot.net.util.cache;
+
+/**
+ * Point in time snapshot of the counters of a {@link FileResponseCache}, used
+ * to tune the cache sizes.
+ *
+ * @see FileResponseCache#getStatistics()
+ */
+public final class ResponseCacheStatistics {
+
+    private final long mConditionalCount;
+
+    private final long mDiskHitCount;
+
+    private final long mMemoryHitCount;
+
+    private final long mMemoryMaxSize;
+
+    private final long mMemorySize;
+
+    private final long mMissCount;
+
+    private final long mNotModifiedCount;
+
+    private final long mStaleHitCount;
+
+    ResponseCacheStatistics(long memoryHitCount, long diskHitCount, long missCount,
+            long conditionalCount, long notModifiedCount, long staleHitCount, long memorySize,
+            long memoryMaxSize) {
+        mMemoryHitCount = memoryHitCount;
+        mDiskHitCount = diskHitCount;
+        mMissCount = missCount;
+        mConditionalCount = conditionalCount;
+        mNotModifiedCount = notModifiedCount;
+        mStaleHitCount = staleHitCount;
+        mMemorySize = memorySize;
+        mMemoryMaxSize = memoryMaxSize;
+    }
+
+    /**
+     * Returns the number of conditional requests sent to revalidate a stale
+     * response, in the foreground or in the background.
+     */
+    public long getConditionalCount() {
+        return mConditionalCount;
+    }
+
+    /**
+     * Returns the number of responses served from a cache file.
+     */
+    public long getDiskHitCount() {
+        return mDiskHitCount;
+    }
+
+    /**
+     * Returns the fraction of requests served from the cache.
+     */
+    public double getHitRate() {
+        long hits = mMemoryHitCount + mDiskHitCount;
+        long total = hits + mMissCount;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of responses served from the in-memory tier.
+     */
+    public long getMemoryHitCount() {
+        return mMemoryHitCount;
+    }
+
+    /**
+     * Returns the capacity of the in-memory tier in bytes, {@code 0} if it is
+     * disabled.
+     */
+    public long getMemoryMaxSize() {
+        return mMemoryMaxSize;
+    }
+
+    /**
+     * Returns the estimated number of bytes held by the in-memory tier.
+     */
+    public long getMemorySize() {
+        return mMemorySize;
+    }
+
+    /**
+     * Returns the number of requests that went to the network.
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns the number of revalidations answered with
+     * {@code 304 Not Modified}.
+     */
+    public long getNotModifiedCount() {
+        return mNotModifiedCount;
+    }
+
+    /**
+     * Returns the number of stale responses served while a background refresh
+     * was running.
+     */
+    public long getStaleHitCount() {
+        return mStaleHitCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCacheStatistics [memoryHits=" + mMemoryHitCount + ", diskHits="
+                + mDiskHitCount + ", misses=" + mMissCount + ", conditional=" + mConditionalCount
+                + ", notModified=" + mNotModifiedCount + ", staleHits=" + mStaleHitCount
+                + ", memorySize=" + mMemorySize + "/" + mMemoryMaxSize + "]";
+    }
+}
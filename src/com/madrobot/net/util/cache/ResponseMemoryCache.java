@@ -0,0 +1,171 @@
+package com.madrobot.net.util.cache;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory tier in front of the cache files of a {@link FileResponseCache}.
+ * <p>
+ * The parsed headers of every recently used cache file are kept, together with
+ * the body of the small ones. The tier is bounded in bytes and evicts the
+ * least recently used entries first. Entries are keyed by cache file and are
+ * dropped when the file's modification time or length no longer match, so a
+ * file rewritten by a {@link FileCacheRequest} is reloaded.
+ */
+class ResponseMemoryCache {
+
+    /**
+     * A cache file loaded into memory.
+     */
+    static final class Entry {
+
+        private final byte[] mBody;
+
+        private final CacheHeaders mCacheHeaders;
+
+        private final Map<String, List<String>> mHeaders;
+
+        private volatile long mLastModified;
+
+        private final long mLength;
+
+        private final int mWeight;
+
+        Entry(Map<String, List<String>> headers, byte[] body, long lastModified, long length) {
+            mHeaders = headers;
+            mCacheHeaders = CacheHeaders.parse(headers);
+            mBody = body;
+            mLastModified = lastModified;
+            mLength = length;
+            int weight = ENTRY_OVERHEAD;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                weight += header.getKey().length() * 2;
+                for (String value : header.getValue()) {
+                    weight += value.length() * 2;
+                }
+            }
+            mWeight = weight + (body != null ? body.length : 0);
+        }
+
+        /**
+         * Returns the response body, or {@code null} if it is only stored on
+         * disk.
+         */
+        byte[] getBody() {
+            return mBody;
+        }
+
+        CacheHeaders getCacheHeaders() {
+            return mCacheHeaders;
+        }
+
+        /**
+         * Returns the stored response headers with lower-case keys.
+         */
+        Map<String, List<String>> getHeaders() {
+            return mHeaders;
+        }
+
+        long getLastModified() {
+            return mLastModified;
+        }
+
+        boolean matches(File file) {
+            return mLastModified == file.lastModified() && mLength == file.length();
+        }
+    }
+
+    /** Rough per entry cost of the map node, entry object and arrays. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final LinkedHashMap<File, Entry> mEntries = new LinkedHashMap<File, Entry>(16, 0.75f,
+            true);
+
+    private final long mMaxEntrySize;
+
+    private final long mMaxSize;
+
+    private long mSize;
+
+    /**
+     * @param maxSize the maximum number of bytes held in memory.
+     */
+    ResponseMemoryCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mMaxEntrySize = maxSize / 8;
+    }
+
+    /**
+     * Returns the entry for the given cache file, or {@code null} if it is not
+     * loaded or the file changed since it was loaded.
+     */
+    Entry get(File file) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(file);
+        }
+        if (entry == null || entry.matches(file)) {
+            return entry;
+        }
+        synchronized (this) {
+            if (mEntries.get(file) == entry) {
+                mEntries.remove(file);
+                mSize -= entry.mWeight;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the largest body that is kept in memory.
+     */
+    long getMaxEntrySize() {
+        return mMaxEntrySize;
+    }
+
+    long getMaxSize() {
+        return mMaxSize;
+    }
+
+    synchronized long getSize() {
+        return mSize;
+    }
+
+    void put(File file, Entry entry) {
+        if (entry.mWeight > mMaxSize) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous = mEntries.put(file, entry);
+            if (previous != null) {
+                mSize -= previous.mWeight;
+            }
+            mSize += entry.mWeight;
+            Iterator<Entry> eldest = mEntries.values().iterator();
+            while (mSize > mMaxSize && eldest.hasNext()) {
+                mSize -= eldest.next().mWeight;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Records that a cache file was revalidated and its modification time
+     * updated, keeping the loaded entry valid.
+     */
+    void touch(File file, long lastModified) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(file);
+        }
+        if (entry != null) {
+            entry.mLastModified = lastModified;
+        }
+    }
+}
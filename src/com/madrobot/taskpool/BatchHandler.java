@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Performs the work of several {@link KeyedTask}s in a single execution.
+ * 
+ * @param <T>
+ *            The type returned for each key
+ * @see TaskBatch
+ */
+public interface BatchHandler<T> {
+
+	/**
+	 * Executes the work for all the given keys. Called on a pool thread.
+	 * 
+	 * @param keys
+	 *            distinct keys of the tasks in the batch
+	 * @return the result for each key. Tasks whose key is missing from the
+	 *         map receive a null result
+	 * @throws Exception
+	 *             delivered to every task of the batch
+	 */
+	Map<Object, T> execute(Set<Object> keys) throws Exception;
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Single execution shared by all the in-flight {@link KeyedTask}s with an
+ * equal key, submitted with the same tag and priority.
+ * <p>
+ * The first task submitted for a key (the leader) is executed. Tasks submitted
+ * for the same key, tag and priority before the execution finishes join as
+ * followers and receive the leader's result in their
+ * {@link Task#postExecute(Object, Throwable)}. Cancelling the shared execution
+ * cancels every task that joined it, which all belong to the group of the
+ * leader.
+ * </p>
+ */
+class CoalescedTask<T> implements Task<T> {
+
+	private boolean closed;
+	private final List<Task<T>> followers = new ArrayList<Task<T>>(2);
+	private final ConcurrentMap<Object, CoalescedTask<?>> inFlight;
+	private final Object key;
+	private final Task<T> leader;
+
+	CoalescedTask(Object key, Task<T> leader, ConcurrentMap<Object, CoalescedTask<?>> inFlight) {
+		this.key = key;
+		this.leader = leader;
+		this.inFlight = inFlight;
+	}
+
+	@Override
+	public T call() throws Exception {
+		return leader.call();
+	}
+
+	@Override
+	public void cancel() {
+		leader.cancel();
+		for(Task<T> follower : detach()){
+			follower.cancel();
+		}
+	}
+
+	/**
+	 * Stops accepting followers and unregisters the execution
+	 *
+	 * @return the followers that joined
+	 */
+	private List<Task<T>> detach() {
+		inFlight.remove(key, this);
+		synchronized(this){
+			closed = true;
+			return new ArrayList<Task<T>>(followers);
+		}
+	}
+
+	/**
+	 * Adds a follower to this execution
+	 *
+	 * @param task
+	 *            task with the same key as the leader
+	 * @return false if the execution already finished and the task should be
+	 *         submitted on its own
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized boolean join(Task<?> task) {
+		if(closed){
+			return false;
+		}
+		followers.add((Task<T>) task);
+		return true;
+	}
+
+	@Override
+	public void postExecute(T t, Throwable throwable) {
+		List<Task<T>> joined = detach();
+		leader.postExecute(t, throwable);
+		for(Task<T> follower : joined){
+			follower.postExecute(t, throwable);
+		}
+	}
+
+	@Override
+	public void preExecute() throws Exception {
+		leader.preExecute();
+	}
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+/**
+ * A {@link Task} that identifies the work it performs with a key.
+ * <p>
+ * When a keyed task is submitted while another task with an equal key, tag and
+ * priority is still in flight, the pool does not execute it again. Instead its
+ * {@link Task#postExecute(Object, Throwable)} receives the result of the
+ * in-flight execution. Keyed tasks can also be grouped into a
+ * {@link TaskBatch} and executed together by a {@link BatchHandler}.
+ * </p>
+ * <p>
+ * A typical key is the URL of the resource a task downloads.
+ * </p>
+ * 
+ * @param <T>
+ *            The type task returns after execution
+ */
+public interface KeyedTask<T> extends Task<T> {
+
+	/**
+	 * Returns the key identifying the work performed by this task. The key
+	 * should implement <code>equals</code> and <code>hashCode</code>. If null,
+	 * the task is never coalesced.
+	 */
+	Object getKey();
+}
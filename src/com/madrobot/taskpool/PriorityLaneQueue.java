@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.madrobot.taskpool.TaskPoolManagerImpl.ManagedServiceTask;
+
+/**
+ * Work queue of the {@link TaskPool} made of one bounded FIFO lane per
+ * {@link TaskPriority}.
+ * <p>
+ * All pool threads share the lanes and always take from the highest non-empty
+ * lane, so any idle thread picks up whatever work is most urgent regardless of
+ * which thread submitted it. Each lane is bounded independently; a full
+ * {@link TaskPriority#BACKGROUND} lane never causes an
+ * {@link TaskPriority#IMMEDIATE} task to be refused.
+ * </p>
+ */
+class PriorityLaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	private static final TaskPriority[] LANES = TaskPriority.values();
+
+	/**
+	 * Returns the lane a runnable belongs to
+	 */
+	static TaskPriority laneOf(Object runnable) {
+		if(runnable instanceof ManagedServiceTask<?>){
+			return ((ManagedServiceTask<?>) runnable).getPriority();
+		}
+		return TaskPriority.NORMAL;
+	}
+
+	private final int laneCapacity;
+	private final LinkedList<Runnable>[] lanes;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition[] notFull;
+	private int count;
+
+	/**
+	 * Creates a queue whose lanes can each hold <code>laneCapacity</code>
+	 * tasks
+	 *
+	 * @param laneCapacity
+	 *            capacity of every lane. Should be >0
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	PriorityLaneQueue(int laneCapacity) {
+		if(laneCapacity <= 0){
+			throw new IllegalArgumentException("Lane capacity should be >0");
+		}
+		this.laneCapacity = laneCapacity;
+		this.lanes = new LinkedList[LANES.length];
+		this.notFull = new Condition[LANES.length];
+		for(int i = 0; i < LANES.length; i++){
+			lanes[i] = new LinkedList<Runnable>();
+			notFull[i] = lock.newCondition();
+		}
+	}
+
+	/**
+	 * Must be called with the lock held
+	 */
+	private Runnable dequeue() {
+		for(int i = 0; i < lanes.length; i++){
+			if(!lanes[i].isEmpty()){
+				count--;
+				notFull[i].signal();
+				return lanes[i].removeFirst();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+		if(collection == this){
+			throw new IllegalArgumentException();
+		}
+		lock.lock();
+		try{
+			int drained = 0;
+			Runnable runnable;
+			while(drained < maxElements && (runnable = dequeue()) != null){
+				collection.add(runnable);
+				drained++;
+			}
+			return drained;
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called with the lock held
+	 */
+	private void enqueue(int lane, Runnable runnable) {
+		lanes[lane].addLast(runnable);
+		count++;
+		notEmpty.signal();
+	}
+
+	/**
+	 * Returns a weakly consistent snapshot iterator, in dequeue order.
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		final List<Runnable> snapshot;
+		lock.lock();
+		try{
+			snapshot = new ArrayList<Runnable>(count);
+			for(int i = 0; i < lanes.length; i++){
+				snapshot.addAll(lanes[i]);
+			}
+		} finally{
+			lock.unlock();
+		}
+		return new Iterator<Runnable>() {
+			private final Iterator<Runnable> delegate = snapshot.iterator();
+			private Runnable last;
+
+			@Override
+			public boolean hasNext() {
+				return delegate.hasNext();
+			}
+
+			@Override
+			public Runnable next() {
+				last = delegate.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if(last == null){
+					throw new IllegalStateException();
+				}
+				PriorityLaneQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	@Override
+	public boolean offer(Runnable runnable) {
+		if(runnable == null){
+			throw new NullPointerException();
+		}
+		int lane = laneOf(runnable).ordinal();
+		lock.lock();
+		try{
+			if(lanes[lane].size() >= laneCapacity){
+				return false;
+			}
+			enqueue(lane, runnable);
+			return true;
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+		if(runnable == null){
+			throw new NullPointerException();
+		}
+		int lane = laneOf(runnable).ordinal();
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try{
+			while(lanes[lane].size() >= laneCapacity){
+				if(nanos <= 0){
+					return false;
+				}
+				nanos = notFull[lane].awaitNanos(nanos);
+			}
+			enqueue(lane, runnable);
+			return true;
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try{
+			for(int i = 0; i < lanes.length; i++){
+				if(!lanes[i].isEmpty()){
+					return lanes[i].getFirst();
+				}
+			}
+			return null;
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try{
+			return dequeue();
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try{
+			while(count == 0){
+				if(nanos <= 0){
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the oldest task waiting in the given lane
+	 *
+	 * @param priority
+	 *            lane to poll
+	 * @return the removed task or null if the lane is empty
+	 */
+	Runnable pollLane(TaskPriority priority) {
+		int lane = priority.ordinal();
+		lock.lock();
+		try{
+			if(lanes[lane].isEmpty()){
+				return null;
+			}
+			count--;
+			notFull[lane].signal();
+			return lanes[lane].removeFirst();
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(Runnable runnable) throws InterruptedException {
+		if(runnable == null){
+			throw new NullPointerException();
+		}
+		int lane = laneOf(runnable).ordinal();
+		lock.lockInterruptibly();
+		try{
+			while(lanes[lane].size() >= laneCapacity){
+				notFull[lane].await();
+			}
+			enqueue(lane, runnable);
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the capacity left in the {@link TaskPriority#NORMAL} lane
+	 */
+	@Override
+	public int remainingCapacity() {
+		return remainingCapacity(TaskPriority.NORMAL);
+	}
+
+	/**
+	 * Returns the capacity left in the given lane
+	 */
+	int remainingCapacity(TaskPriority priority) {
+		lock.lock();
+		try{
+			return laneCapacity - lanes[priority.ordinal()].size();
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if(o == null){
+			return false;
+		}
+		int lane = laneOf(o).ordinal();
+		lock.lock();
+		try{
+			if(lanes[lane].remove(o)){
+				count--;
+				notFull[lane].signal();
+				return true;
+			}
+			return false;
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try{
+			return count;
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of tasks waiting in the given lane
+	 */
+	int size(TaskPriority priority) {
+		lock.lock();
+		try{
+			return lanes[priority.ordinal()].size();
+		} finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try{
+			while(count == 0){
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally{
+			lock.unlock();
+		}
+	}
+}
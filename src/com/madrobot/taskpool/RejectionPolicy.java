@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+/**
+ * Backpressure applied when a task is submitted to a priority lane that is
+ * already full.
+ * 
+ * @see TaskPoolConstants#REJECTION_POLICY
+ */
+public enum RejectionPolicy {
+	/**
+	 * The submitting thread executes the task itself. This naturally slows
+	 * down producers that outpace the pool, but must not be used when tasks
+	 * are submitted from the UI thread.
+	 */
+	CALLER_RUNS,
+	/**
+	 * The oldest task waiting in the same lane is cancelled to make room for
+	 * the new one. This is the default, it never blocks the submitting thread.
+	 */
+	DISCARD_OLDEST,
+	/**
+	 * The submitting thread blocks until the lane has room again. Must not be
+	 * used when tasks are submitted from the UI thread.
+	 */
+	BLOCK;
+}
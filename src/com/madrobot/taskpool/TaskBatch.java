@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects {@link KeyedTask}s and executes them together with a
+ * {@link BatchHandler}.
+ * <p>
+ * Tasks with equal keys are coalesced inside the batch. The batch is submitted
+ * to the pool as one task when {@link #flush()} is called, or automatically
+ * when it holds <code>maxBatchSize</code> distinct keys. The
+ * {@link Task#call()} method of the added tasks is never invoked: the handler
+ * performs the work and each task receives the result for its key in
+ * {@link Task#postExecute(Object, Throwable)}.
+ * </p>
+ * <b>Usage</b>
+ *
+ * <pre>
+ * TaskBatch&lt;Bitmap&gt; batch = new TaskBatch&lt;Bitmap&gt;(TaskPoolManagerImpl.getTaskPool(), handler, 20, TaskPriority.IMMEDIATE);
+ * for(int i = first; i &lt; last; i++){
+ * 	batch.add(new ThumbnailTask(urls[i]));
+ * }
+ * batch.flush();
+ * </pre>
+ *
+ * @param <T>
+ *            The type returned for each key
+ */
+public class TaskBatch<T> {
+
+	/**
+	 * Pool task executing one flushed batch
+	 */
+	private static class BatchExecution<T> implements Task<Map<Object, T>> {
+
+		private final BatchHandler<T> handler;
+		private final Map<Object, List<KeyedTask<T>>> tasks;
+
+		BatchExecution(BatchHandler<T> handler, Map<Object, List<KeyedTask<T>>> tasks) {
+			this.handler = handler;
+			this.tasks = tasks;
+		}
+
+		@Override
+		public Map<Object, T> call() throws Exception {
+			return handler.execute(tasks.keySet());
+		}
+
+		@Override
+		public void cancel() {
+			for(List<KeyedTask<T>> group : tasks.values()){
+				for(KeyedTask<T> task : group){
+					task.cancel();
+				}
+			}
+		}
+
+		@Override
+		public void postExecute(Map<Object, T> results, Throwable throwable) {
+			for(Map.Entry<Object, List<KeyedTask<T>>> entry : tasks.entrySet()){
+				T result = results == null ? null : results.get(entry.getKey());
+				for(KeyedTask<T> task : entry.getValue()){
+					task.postExecute(result, throwable);
+				}
+			}
+		}
+
+		/**
+		 * Runs the preExecute of every task. A task that fails is notified and
+		 * left out of the batch.
+		 */
+		@Override
+		public void preExecute() throws Exception {
+			Iterator<List<KeyedTask<T>>> groups = tasks.values().iterator();
+			while(groups.hasNext()){
+				List<KeyedTask<T>> group = groups.next();
+				Iterator<KeyedTask<T>> it = group.iterator();
+				while(it.hasNext()){
+					KeyedTask<T> task = it.next();
+					try{
+						task.preExecute();
+					} catch(Exception e){
+						it.remove();
+						task.postExecute(null, e);
+					}
+				}
+				if(group.isEmpty()){
+					groups.remove();
+				}
+			}
+		}
+	}
+
+	private final BatchHandler<T> handler;
+	private final int maxBatchSize;
+	private Map<Object, List<KeyedTask<T>>> pending = new LinkedHashMap<Object, List<KeyedTask<T>>>();
+	private final TaskPoolManager pool;
+	private final TaskPriority priority;
+
+	/**
+	 * Creates an empty batch
+	 *
+	 * @param pool
+	 *            pool the batches are submitted to
+	 * @param handler
+	 *            handler executing the batches
+	 * @param maxBatchSize
+	 *            number of distinct keys that triggers an automatic flush.
+	 *            Should be >0
+	 * @param priority
+	 *            lane the batches are submitted in
+	 */
+	public TaskBatch(TaskPoolManager pool, BatchHandler<T> handler, int maxBatchSize, TaskPriority priority) {
+		if(maxBatchSize <= 0){
+			throw new IllegalArgumentException("Batch size should be >0");
+		}
+		this.pool = pool;
+		this.handler = handler;
+		this.maxBatchSize = maxBatchSize;
+		this.priority = priority;
+	}
+
+	/**
+	 * Adds a task to the batch.
+	 *
+	 * @param task
+	 *            task to add. Its key should not be null
+	 */
+	public void add(KeyedTask<T> task) {
+		Object key = task.getKey();
+		if(key == null){
+			throw new IllegalArgumentException("Batched tasks should have a key");
+		}
+		Map<Object, List<KeyedTask<T>>> full = null;
+		synchronized(this){
+			List<KeyedTask<T>> group = pending.get(key);
+			if(group == null){
+				group = new ArrayList<KeyedTask<T>>(1);
+				pending.put(key, group);
+			}
+			group.add(task);
+			if(pending.size() >= maxBatchSize){
+				full = swap();
+			}
+		}
+		if(full != null){
+			submit(full);
+		}
+	}
+
+	/**
+	 * Submits the pending tasks to the pool as one batch. Does nothing if the
+	 * batch is empty.
+	 */
+	public void flush() {
+		Map<Object, List<KeyedTask<T>>> batch;
+		synchronized(this){
+			if(pending.isEmpty()){
+				return;
+			}
+			batch = swap();
+		}
+		submit(batch);
+	}
+
+	/**
+	 * Returns the number of distinct keys waiting to be flushed
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	private void submit(Map<Object, List<KeyedTask<T>>> batch) {
+		pool.submit(new BatchExecution<T>(handler, batch), priority);
+	}
+
+	/**
+	 * Must be called with the lock held
+	 */
+	private Map<Object, List<KeyedTask<T>>> swap() {
+		Map<Object, List<KeyedTask<T>>> batch = pending;
+		pending = new LinkedHashMap<Object, List<KeyedTask<T>>>();
+		return batch;
+	}
+}
@@ -10,7 +10,7 @@
  ******************************************************************************/
 package com.madrobot.taskpool;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -22,15 +22,87 @@ import com.madrobot.taskpool.TaskPoolManagerImpl.ManagedServiceTask;
  * 
  * A TaskThreadPool that executes each submitted task using one of possibly
  * several pooled threads.
- * 
+ * <p>
+ * Tasks are queued in a {@link PriorityLaneQueue}. Each lane holds
+ * {@link TaskPoolConstants#QUEUE_SIZE_PER_CORE} tasks per available processor.
+ * When a lane is full the {@link TaskPoolConstants#REJECTION_POLICY} is
+ * applied instead of throwing a
+ * {@link java.util.concurrent.RejectedExecutionException}.
+ * </p>
  */
 class TaskPool extends ThreadPoolExecutor {
 //	public static final int QUEUE_SIZE = 250;
 //	public static final int MAX_THREADS_COUNT = 2;
 
-	private static LinkedBlockingQueue<Runnable> blockingQueue = new LinkedBlockingQueue<Runnable>(250);
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Applies the configured {@link RejectionPolicy} to a task whose lane is
+	 * full
+	 */
+	private static class LaneBackpressureHandler implements RejectedExecutionHandler {
+
+		private final RejectionPolicy policy;
+
+		LaneBackpressureHandler(RejectionPolicy policy) {
+			this.policy = policy;
+		}
+
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			ManagedServiceTask<?> serviceTask = (ManagedServiceTask<?>) runnable;
+			if(executor.isShutdown()){
+				serviceTask.cancel(false);
+				return;
+			}
+			PriorityLaneQueue queue = (PriorityLaneQueue) executor.getQueue();
+			switch(policy){
+				case CALLER_RUNS:
+					serviceTask.preExecute();
+					serviceTask.run();
+					serviceTask.postExecute();
+					break;
+				case DISCARD_OLDEST:
+					TaskPriority lane = serviceTask.getPriority();
+					while(!queue.offer(runnable)){
+						if(executor.isShutdown()){
+							serviceTask.cancel(false);
+							return;
+						}
+						ManagedServiceTask<?> oldest = (ManagedServiceTask<?>) queue.pollLane(lane);
+						if(oldest != null){
+							oldest.cancel(false);
+						}
+					}
+					break;
+				case BLOCK:
+					try{
+						while(!queue.offer(runnable, 100L, TimeUnit.MILLISECONDS)){
+							if(executor.isShutdown()){
+								serviceTask.cancel(false);
+								return;
+							}
+						}
+					} catch(InterruptedException e){
+						serviceTask.cancel(false);
+						Thread.currentThread().interrupt();
+					}
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the capacity of a single lane, scaled to the number of cores
+	 */
+	@SuppressWarnings("deprecation")
+	private static int laneCapacity() {
+		if(TaskPoolConstants.QUEUE_SIZE != TaskPoolConstants.DEFAULT_QUEUE_SIZE){
+			return TaskPoolConstants.QUEUE_SIZE;
+		}
+		return TaskPoolConstants.QUEUE_SIZE_PER_CORE * Runtime.getRuntime().availableProcessors();
+	}
+
 	private static ThreadFactory threadFactory = new ThreadFactory() {
 
 		private AtomicInteger atomicInteger = new AtomicInteger(1);
@@ -46,7 +118,7 @@ class TaskPool extends ThreadPoolExecutor {
 	 * Creates a new TaskThreadPool with the initial parameters.
 	 */
 	protected TaskPool() {
-		super(TaskPoolConstants.MAX_THREADS_COUNT, TaskPoolConstants.MAX_THREADS_COUNT, 0L, TimeUnit.MILLISECONDS, blockingQueue, threadFactory);
+		super(TaskPoolConstants.MAX_THREADS_COUNT, TaskPoolConstants.MAX_THREADS_COUNT, 0L, TimeUnit.MILLISECONDS, new PriorityLaneQueue(laneCapacity()), threadFactory, new LaneBackpressureHandler(TaskPoolConstants.REJECTION_POLICY));
 	}
 
 	/**
@@ -21,14 +21,40 @@ package com.madrobot.taskpool;
  */
 public class TaskPoolConstants {
 
+	static final int DEFAULT_QUEUE_SIZE = 250;
+
 	/**
 	 * Total count of Task pool thread(s). Should be >1
 	 */
 	public static int MAX_THREADS_COUNT = 2;
 
+	/**
+	 * Queue depth of each priority lane, per available processor. The actual
+	 * lane capacity is this value multiplied by
+	 * <code>Runtime.availableProcessors()</code>. Should be >1
+	 */
+	public static int QUEUE_SIZE_PER_CORE = 125;
+
 	/**
 	 * Initial queue size threshold limit. Should be >1
+	 * <p>
+	 * When changed from its default, this value is used as the capacity of
+	 * each priority lane instead of {@link #QUEUE_SIZE_PER_CORE}.
+	 * </p>
+	 * 
+	 * @deprecated use {@link #QUEUE_SIZE_PER_CORE}, which scales with the
+	 *             number of processors
+	 */
+	@Deprecated
+	public static int QUEUE_SIZE = DEFAULT_QUEUE_SIZE;
+
+	/**
+	 * Backpressure applied when a task is submitted to a full lane. The
+	 * default never blocks the submitting thread, which is usually the UI
+	 * thread.
+	 * 
+	 * @see RejectionPolicy
 	 */
-	public static int QUEUE_SIZE = 250;// 200;
+	public static RejectionPolicy REJECTION_POLICY = RejectionPolicy.DISCARD_OLDEST;
 
 }
@@ -14,8 +14,59 @@ public interface TaskPoolManager {
 
 	public void cancelAllTasks();
 
+	/**
+	 * Cancels every active task submitted with the given tag. Runs in time
+	 * proportional to the size of the group
+	 * 
+	 * @param tag
+	 *            group to cancel, for instance the Activity that submitted the
+	 *            tasks
+	 * @see #submit(Task, TaskPriority, Object)
+	 */
+	public void cancelTasks(Object tag);
+
+	/**
+	 * Returns a snapshot of the pool counters
+	 */
+	public TaskPoolStatistics getStatistics();
+
 	public void shutdown();
 
+	/**
+	 * Submits a task in the {@link TaskPriority#NORMAL} lane.
+	 * <p>
+	 * A {@link KeyedTask} whose key matches a task that is still queued or
+	 * running is not executed again; it receives the result of the in-flight
+	 * execution instead.
+	 * </p>
+	 * 
+	 * @param task
+	 *            task to execute
+	 */
 	public <T> void submit(Task<T> task);
 
+	/**
+	 * Submits a task in the given priority lane
+	 * 
+	 * @param task
+	 *            task to execute
+	 * @param priority
+	 *            lane the task is queued in
+	 */
+	public <T> void submit(Task<T> task, TaskPriority priority);
+
+	/**
+	 * Submits a task in the given priority lane, as part of a group that can
+	 * be cancelled with {@link #cancelTasks(Object)}
+	 * 
+	 * @param task
+	 *            task to execute
+	 * @param priority
+	 *            lane the task is queued in
+	 * @param tag
+	 *            group the task belongs to. The tag is held until the task is
+	 *            done. Can be null
+	 */
+	public <T> void submit(Task<T> task, TaskPriority priority, Object tag);
+
 }
@@ -11,11 +11,15 @@
 package com.madrobot.taskpool;
 
 import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class TaskPoolManagerImpl implements TaskPoolManager {
 
@@ -33,6 +37,18 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 		 * 
 		 */
 		private final Task<T> task;
+		private final TaskPriority priority;
+		/**
+		 * Group the task belongs to. Can be null
+		 */
+		private final Object tag;
+		private final long submitTime = System.nanoTime();
+		private final AtomicBoolean removed = new AtomicBoolean();
+		/**
+		 * Set by the pool thread when it picks up a task that was not
+		 * cancelled while queued
+		 */
+		private boolean started;
 		private Throwable throwable;
 
 		/**
@@ -40,10 +56,16 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 		 * 
 		 * @param task
 		 *            active task
+		 * @param priority
+		 *            lane the task is queued in
+		 * @param tag
+		 *            group the task belongs to, can be null
 		 */
-		public ManagedServiceTask(Task<T> task) {
+		public ManagedServiceTask(Task<T> task, TaskPriority priority, Object tag) {
 			super(task);
 			this.task = task;
+			this.priority = priority;
+			this.tag = tag;
 		}
 
 		/**
@@ -58,6 +80,9 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 				task.cancel();
 			} finally{
 				cancelSuccess = super.cancel(mayInterruptIfRunning);
+				if(cancelSuccess){
+					cancelledCount.incrementAndGet();
+				}
 				done();
 			}
 			return cancelSuccess;
@@ -72,6 +97,20 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 			super.done();
 		}
 
+		/**
+		 * Returns the lane the task is queued in
+		 */
+		public TaskPriority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Returns the group the task belongs to
+		 */
+		public Object getTag() {
+			return tag;
+		}
+
 		/**
 		 * Called before postExecute
 		 */
@@ -79,12 +118,16 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 
 			try{
 				if(!isCancelled()){
+					completedCount.incrementAndGet();
 					task.postExecute(get(), throwable);
 				}
 			} catch(Throwable e){
 				task.postExecute(null, e);
 				cancel(true);
 			} finally{
+				if(started){
+					runningCount.decrementAndGet();
+				}
 				done();
 			}
 		}
@@ -93,6 +136,14 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 		 * Called after the preExecute
 		 */
 		public void preExecute() {
+			if(isCancelled()){
+				/* cancelled while queued, the run will be a no-op */
+				return;
+			}
+			started = true;
+			runningCount.incrementAndGet();
+			startedCount.incrementAndGet();
+			totalQueueWaitNanos.addAndGet(System.nanoTime() - submitTime);
 			try{
 				task.preExecute();
 			} catch(Throwable e){
@@ -105,12 +156,100 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 		 * Access point to remove the active task
 		 */
 		private void removeFromActiveTasks() {
-			listLock.lock();
-			try{
+			if(removed.compareAndSet(false, true)){
 				activeTasks.remove(this);
-			} finally{
-				listLock.unlock();
+				if(tag != null){
+					TaskGroup group = taskGroups.get(tag);
+					if(group != null && group.remove(this)){
+						taskGroups.remove(tag, group);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Active tasks sharing a tag. Once a group becomes empty it is dead and
+	 * never accepts tasks again, so that it can be dropped from the group map
+	 * without losing a task added concurrently
+	 */
+	private static final class TaskGroup {
+
+		private boolean dead;
+		private final Set<ManagedServiceTask<?>> tasks = new HashSet<ManagedServiceTask<?>>();
+
+		/**
+		 * Adds a task to the group
+		 * 
+		 * @return false if the group is dead and must be replaced
+		 */
+		synchronized boolean add(ManagedServiceTask<?> task) {
+			if(dead){
+				return false;
+			}
+			tasks.add(task);
+			return true;
+		}
+
+		/**
+		 * Marks the group dead
+		 * 
+		 * @return the tasks of the group
+		 */
+		synchronized List<ManagedServiceTask<?>> close() {
+			dead = true;
+			return new ArrayList<ManagedServiceTask<?>>(tasks);
+		}
+
+		/**
+		 * Removes a task from the group
+		 * 
+		 * @return true if the group became empty and is now dead
+		 */
+		synchronized boolean remove(ManagedServiceTask<?> task) {
+			tasks.remove(task);
+			if(tasks.isEmpty() && !dead){
+				dead = true;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Coalescing key of a keyed task. Only tasks submitted with the same tag
+	 * and priority share an execution, so that a follower is queued in its own
+	 * lane and cancelled with its own group
+	 */
+	private static final class InFlightKey {
+
+		private final Object key;
+		private final TaskPriority priority;
+		private final Object tag;
+
+		InFlightKey(Object key, TaskPriority priority, Object tag) {
+			this.key = key;
+			this.priority = priority;
+			this.tag = tag;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o){
+				return true;
 			}
+			if(!(o instanceof InFlightKey)){
+				return false;
+			}
+			InFlightKey other = (InFlightKey) o;
+			return key.equals(other.key) && priority == other.priority && (tag == null ? other.tag == null : tag.equals(other.tag));
+		}
+
+		@Override
+		public int hashCode() {
+			int result = key.hashCode();
+			result = 31 * result + priority.hashCode();
+			return 31 * result + (tag == null ? 0 : tag.hashCode());
 		}
 	}
 
@@ -138,18 +277,32 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 	}
 
 	/**
-	 * Field to hold the active task
+	 * Field to hold the active task. Used as a concurrent set
 	 */
-	private final List<ManagedServiceTask<?>> activeTasks = new ArrayList<ManagedServiceTask<?>>();
+	private final ConcurrentMap<ManagedServiceTask<?>, Boolean> activeTasks = new ConcurrentHashMap<ManagedServiceTask<?>, Boolean>();
 
-	private boolean isRunning = true;
+	/**
+	 * Executions of keyed tasks that are queued or running, by task key, tag
+	 * and priority
+	 */
+	private final ConcurrentMap<Object, CoalescedTask<?>> inFlight = new ConcurrentHashMap<Object, CoalescedTask<?>>();
 
-	// ////////////////////////////////////////////////////////////
-	// Fields
 	/**
-	 * Field to block the operation
+	 * Active tasks indexed by their group tag
 	 */
-	private final Lock listLock = new ReentrantLock();
+	private final ConcurrentMap<Object, TaskGroup> taskGroups = new ConcurrentHashMap<Object, TaskGroup>();
+
+	private volatile boolean isRunning = true;
+
+	// ////////////////////////////////////////////////////////////
+	// Fields
+	private final AtomicLong cancelledCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicInteger runningCount = new AtomicInteger();
+	private final AtomicLong startedCount = new AtomicLong();
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong totalQueueWaitNanos = new AtomicLong();
 
 	/**
 	 * Field to hold the thread pool executor instance
@@ -174,11 +327,24 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 	 *            future taks
 	 */
 	private <T> void addToActiveTasks(ManagedServiceTask<T> managedTask) {
-		listLock.lock();
-		try{
-			activeTasks.add(managedTask);
-		} finally{
-			listLock.unlock();
+		activeTasks.put(managedTask, Boolean.TRUE);
+		Object tag = managedTask.getTag();
+		if(tag != null){
+			while(true){
+				TaskGroup group = taskGroups.get(tag);
+				if(group == null){
+					TaskGroup newGroup = new TaskGroup();
+					group = taskGroups.putIfAbsent(tag, newGroup);
+					if(group == null){
+						group = newGroup;
+					}
+				}
+				if(group.add(managedTask)){
+					break;
+				}
+				/* the group died concurrently, replace it */
+				taskGroups.remove(tag, group);
+			}
 		}
 	}
 
@@ -189,23 +355,62 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 	 */
 	@Override
 	public void cancelAllTasks() {
-		listLock.lock();
-
-		try{
+		sessionThreadPool.purge();
+		for(ManagedServiceTask<?> t : activeTasks.keySet()){
+			t.cancel(true);
+		}
+		sessionThreadPool.purge();
+	}
 
-			sessionThreadPool.purge();
-			for(ManagedServiceTask<?> t : activeTasks){
+	/**
+	 * Base implementation of super{@link #cancelTasks(Object)}
+	 * 
+	 * @see super{@link #cancelTasks(Object)}
+	 */
+	@Override
+	public void cancelTasks(Object tag) {
+		TaskGroup group = taskGroups.remove(tag);
+		if(group != null){
+			for(ManagedServiceTask<?> t : group.close()){
 				t.cancel(true);
 			}
-			activeTasks.clear();
-			sessionThreadPool.purge();
-		} catch(ConcurrentModificationException e){
+		}
+	}
 
-		} finally{
-			listLock.unlock();
+	/**
+	 * Joins the task to the in-flight execution with the same key, tag and
+	 * priority, or registers a new execution
+	 * 
+	 * @return the task to submit to the pool or null if the task joined an
+	 *         execution
+	 */
+	private <T> Task<T> coalesce(Object key, Task<T> task) {
+		while(true){
+			CoalescedTask<?> current = inFlight.get(key);
+			if(current != null){
+				if(current.join(task)){
+					return null;
+				}
+				/* finished concurrently, drop the stale entry */
+				inFlight.remove(key, current);
+			}
+			CoalescedTask<T> execution = new CoalescedTask<T>(key, task, inFlight);
+			if(inFlight.putIfAbsent(key, execution) == null){
+				return execution;
+			}
 		}
 	}
 
+	/**
+	 * Base implementation of super{@link #getStatistics()}
+	 * 
+	 * @see super{@link #getStatistics()}
+	 */
+	@Override
+	public TaskPoolStatistics getStatistics() {
+		return new TaskPoolStatistics(submittedCount.get(), runningCount.get(), completedCount.get(), cancelledCount.get(), coalescedCount.get(), startedCount.get(), totalQueueWaitNanos.get());
+	}
+
 	/**
 	 * Initialize the thread pool
 	 * 
@@ -234,8 +439,42 @@ public final class TaskPoolManagerImpl implements TaskPoolManager {
 	 */
 	@Override
 	public <T> void submit(Task<T> task) {
+		submit(task, TaskPriority.NORMAL);
+	}
+
+	/**
+	 * Base implementation of super{@link #submit(Task, TaskPriority)}
+	 * 
+	 * @see super{@link #submit(Task, TaskPriority)}
+	 */
+	@Override
+	public <T> void submit(Task<T> task, TaskPriority priority) {
+		submit(task, priority, null);
+	}
+
+	/**
+	 * Base implementation of super{@link #submit(Task, TaskPriority, Object)}
+	 * 
+	 * @see super{@link #submit(Task, TaskPriority, Object)}
+	 */
+	@Override
+	public <T> void submit(Task<T> task, TaskPriority priority, Object tag) {
+		if(priority == null){
+			throw new IllegalArgumentException("Priority cannot be null");
+		}
 		if(isRunning){
-			ManagedServiceTask<T> managedTask = new ManagedServiceTask<T>(task);
+			submittedCount.incrementAndGet();
+			if(task instanceof KeyedTask<?>){
+				Object key = ((KeyedTask<?>) task).getKey();
+				if(key != null){
+					task = coalesce(new InFlightKey(key, priority, tag), task);
+					if(task == null){
+						coalescedCount.incrementAndGet();
+						return;
+					}
+				}
+			}
+			ManagedServiceTask<T> managedTask = new ManagedServiceTask<T>(task, priority, tag);
 			addToActiveTasks(managedTask);
 			sessionThreadPool.execute(managedTask);
 		}
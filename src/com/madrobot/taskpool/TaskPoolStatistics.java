@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+/**
+ * Point in time snapshot of the task pool counters.
+ *
+ * @see TaskPoolManager#getStatistics()
+ */
+public final class TaskPoolStatistics {
+
+	private final long cancelledCount;
+	private final long coalescedCount;
+	private final long completedCount;
+	private final int runningCount;
+	private final long startedCount;
+	private final long submittedCount;
+	private final long totalQueueWaitNanos;
+
+	TaskPoolStatistics(long submittedCount, int runningCount, long completedCount, long cancelledCount, long coalescedCount, long startedCount, long totalQueueWaitNanos) {
+		this.submittedCount = submittedCount;
+		this.runningCount = runningCount;
+		this.completedCount = completedCount;
+		this.cancelledCount = cancelledCount;
+		this.coalescedCount = coalescedCount;
+		this.startedCount = startedCount;
+		this.totalQueueWaitNanos = totalQueueWaitNanos;
+	}
+
+	/**
+	 * Returns the average time, in milliseconds, a task waited in the queue
+	 * before a pool thread picked it up
+	 */
+	public double getAverageQueueWaitTime() {
+		if(startedCount == 0){
+			return 0;
+		}
+		return totalQueueWaitNanos / (startedCount * 1000000d);
+	}
+
+	/**
+	 * Returns the number of tasks that were successfully cancelled
+	 */
+	public long getCancelledCount() {
+		return cancelledCount;
+	}
+
+	/**
+	 * Returns the number of keyed tasks that joined an in-flight execution
+	 * instead of being executed
+	 * 
+	 * @see KeyedTask
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * Returns the number of tasks that ran to completion, normally or with an
+	 * exception
+	 */
+	public long getCompletedCount() {
+		return completedCount;
+	}
+
+	/**
+	 * Returns the number of tasks currently executing
+	 */
+	public int getRunningCount() {
+		return runningCount;
+	}
+
+	/**
+	 * Returns the number of tasks submitted to the pool
+	 */
+	public long getSubmittedCount() {
+		return submittedCount;
+	}
+
+	/**
+	 * Returns the cumulative time, in milliseconds, tasks spent waiting in the
+	 * queue
+	 */
+	public long getTotalQueueWaitTime() {
+		return totalQueueWaitNanos / 1000000L;
+	}
+
+	@Override
+	public String toString() {
+		return "TaskPoolStatistics [submitted=" + submittedCount + ", running=" + runningCount + ", completed=" + completedCount + ", cancelled=" + cancelledCount + ", coalesced=" + coalescedCount + ", averageQueueWait=" + getAverageQueueWaitTime() + "ms]";
+	}
+}
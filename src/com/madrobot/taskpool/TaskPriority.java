@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2011 MadRobot.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ * 
+ * Contributors:
+ *  Elton Kent - initial API and implementation
+ ******************************************************************************/
+package com.madrobot.taskpool;
+
+/**
+ * Priority lane a task is queued in.
+ * <p>
+ * Idle pool threads always drain the highest non-empty lane first, so UI
+ * critical work submitted as {@link #IMMEDIATE} is never stuck behind a
+ * backlog of {@link #BACKGROUND} downloads.
+ * </p>
+ * 
+ * @see TaskPoolManager#submit(Task, TaskPriority)
+ */
+public enum TaskPriority {
+	/**
+	 * Work the user is waiting on (UI updates, visible images)
+	 */
+	IMMEDIATE,
+	/**
+	 * Default lane
+	 */
+	NORMAL,
+	/**
+	 * Prefetching, large downloads and other deferrable work
+	 */
+	BACKGROUND;
+}
@@ -14,11 +14,25 @@ package com.madrobot.util;
 import com.madrobot.di.wizard.xml.io.StreamException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 
+/**
+ * Buffers the chars written to a {@link Writer}, or encodes them in UTF-8 directly into an {@link OutputStream}.
+ * <p>
+ * The buffer is passed on when it is full without flushing the underlying writer or stream, which is flushed by
+ * {@link #flush()} only.
+ * </p>
+ */
 public class QuickWriter {
 
     private char[] buffer;
+    /** UTF-8 encoding buffer, when writing to a stream */
+    private byte[] bytes;
+    private int bytesCount;
+    /** High surrogate ending the last chars encoded, completed by the next ones */
+    private char highSurrogate;
+    private final OutputStream out;
     private int pointer;
     private final Writer writer;
 
@@ -28,33 +42,130 @@ public class QuickWriter {
 
     public QuickWriter(Writer writer, int bufferSize) {
         this.writer = writer;
+        this.out = null;
         buffer = new char[bufferSize];
     }
 
+    /**
+     * Creates a writer encoding the chars in UTF-8 into a stream, without an intermediate Writer.
+     */
+    public QuickWriter(OutputStream out) {
+        this(out, 1024);
+    }
+
+    public QuickWriter(OutputStream out, int bufferSize) {
+        this.writer = null;
+        this.out = out;
+        buffer = new char[bufferSize];
+        bytes = new byte[Math.max(bufferSize * 3, 8192) + 4];
+    }
+
     public void close() {
         try {
-            writer.write(buffer, 0, pointer);
-            pointer = 0;
-            writer.close();
+            flushBuffer();
+            if (writer != null) {
+                writer.close();
+            } else {
+                out.write(bytes, 0, bytesCount);
+                bytesCount = 0;
+                if (highSurrogate != 0) {
+                    // Unpaired surrogate, replaced as an OutputStreamWriter does
+                    highSurrogate = 0;
+                    out.write('?');
+                }
+                out.close();
+            }
         } catch (IOException e) {
             throw new StreamException(e);
         }
     }
 
+    private void encode(char[] chars, int offset, int length) throws IOException {
+        byte[] bytes = this.bytes;
+        int limit = bytes.length - 4;
+        int n = bytesCount;
+        char high = highSurrogate;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (n > limit) {
+                out.write(bytes, 0, n);
+                n = 0;
+            }
+            // ASCII run, up to the end of the chars or of the bytes
+            int asciiEnd = Math.min(end, i + limit + 1 - n);
+            if (high == 0) {
+                while (i < asciiEnd && chars[i] < 0x80) {
+                    bytes[n++] = (byte) chars[i++];
+                }
+                if (i == asciiEnd) {
+                    continue;
+                }
+            }
+            char c = chars[i++];
+            if (high != 0) {
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    bytes[n++] = (byte) (0xf0 | (cp >> 18));
+                    bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | (cp & 0x3f));
+                    high = 0;
+                    continue;
+                }
+                bytes[n++] = '?';
+                high = 0;
+                if (n > limit) {
+                    out.write(bytes, 0, n);
+                    n = 0;
+                }
+            }
+            if (c < 0x80) {
+                bytes[n++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[n++] = (byte) (0xc0 | (c >> 6));
+                bytes[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                high = c;
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[n++] = '?';
+            } else {
+                bytes[n++] = (byte) (0xe0 | (c >> 12));
+                bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        highSurrogate = high;
+        bytesCount = n;
+    }
+
     public void flush() {
         try {
-            writer.write(buffer, 0, pointer);
-            pointer = 0;
-            writer.flush();
+            flushBuffer();
+            if (writer != null) {
+                writer.flush();
+            } else {
+                out.write(bytes, 0, bytesCount);
+                bytesCount = 0;
+                out.flush();
+            }
         } catch (IOException e) {
             throw new StreamException(e);
         }
     }
 
-    private void raw(char c) {
+    private void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.write(buffer, 0, pointer);
+        } else {
+            encode(buffer, 0, pointer);
+        }
+        pointer = 0;
+    }
+
+    private void passBuffer() {
         try {
-            writer.write(c);
-            writer.flush();
+            flushBuffer();
         } catch (IOException e) {
             throw new StreamException(e);
         }
@@ -62,8 +173,11 @@ public class QuickWriter {
 
     private void raw(char[] c) {
         try {
-            writer.write(c);
-            writer.flush();
+            if (writer != null) {
+                writer.write(c);
+            } else {
+                encode(c, 0, c.length);
+            }
         } catch (IOException e) {
             throw new StreamException(e);
         }
@@ -71,9 +185,9 @@ public class QuickWriter {
 
     public void write(char c) {
         if (pointer + 1 >= buffer.length) {
-            flush();
+            passBuffer();
             if (buffer.length == 0) {
-                raw(c);
+                raw(new char[] { c });
                 return;
             }
         }
@@ -83,7 +197,7 @@ public class QuickWriter {
     public void write(char[] c) {
         int len = c.length;
         if (pointer + len >= buffer.length) {
-            flush();
+            passBuffer();
             if (len > buffer.length) {
                 raw(c);
                 return;
@@ -94,15 +208,23 @@ public class QuickWriter {
     }
 
     public void write(String str) {
-        int len = str.length();
+        write(str, 0, str.length());
+    }
+
+    /**
+     * Writes the chars of a string from <code>start</code> to <code>end</code> (exclusive), without creating a
+     * substring.
+     */
+    public void write(String str, int start, int end) {
+        int len = end - start;
         if (pointer + len >= buffer.length) {
-            flush();
+            passBuffer();
             if (len > buffer.length) {
-                raw(str.toCharArray());
+                raw(str.substring(start, end).toCharArray());
                 return;
             }
         }
-        str.getChars(0, len, buffer, pointer);
+        str.getChars(start, end, buffer, pointer);
         pointer += len;
     }
 }